@@ -0,0 +1,96 @@
+package com.sus.fiap.consumer.api;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Uma mudança de tempo de espera entregue a {@code subscribers} conexões SSE da mesma unidade em um nó: do
+ * {@code publish} até o último evento serializado (a escrita no socket é simulada). O score é o tempo por mudança.
+ * <p>
+ * No setup, imprime o heap retido por assinante (emitter, estado de envio e entrada no registro), sem o custo da
+ * conexão no Tomcat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class TempoEsperaBroadcasterBenchmark {
+	private static final String JSON = "{\"unidadeAtendimento\":\"UPA1\",\"calculadoEm\":\"2026-01-01T00:00:00Z\","
+			+ "\"medicosEmAtendimento\":4,\"tempoMedioAtendimentoMin\":10,"
+			+ "\"emergencia\":{\"senhasAtivas\":2,\"senhasConsideradas\":2,\"tempoEstimadoMin\":5},"
+			+ "\"gestante\":{\"senhasAtivas\":3,\"senhasConsideradas\":5,\"tempoEstimadoMin\":13},"
+			+ "\"idoso\":{\"senhasAtivas\":10,\"senhasConsideradas\":15,\"tempoEstimadoMin\":38},"
+			+ "\"normal\":{\"senhasAtivas\":40,\"senhasConsideradas\":55,\"tempoEstimadoMin\":138}}";
+
+	@Param({"1000", "10000", "50000"})
+	public int subscribers;
+
+	private TempoEsperaBroadcaster broadcaster;
+	private volatile CountDownLatch entregues;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		broadcaster = new TempoEsperaBroadcaster(null, new SimpleMeterRegistry(), true, subscribers,
+				Duration.ofHours(1), Duration.ofSeconds(10)) {
+			@Override
+			SseEmitter newEmitter(long timeoutMillis) {
+				return new SseEmitter(timeoutMillis) {
+					@Override
+					public void send(SseEventBuilder builder) {
+						Set<ResponseBodyEmitter.DataWithMediaType> evento = builder.build();
+						if (!evento.isEmpty()) {
+							entregues.countDown();
+						}
+					}
+				};
+			}
+		};
+		long antes = usedHeap();
+		for (int i = 0; i < subscribers; i++) {
+			broadcaster.subscribe("UPA1", null);
+		}
+		long depois = usedHeap();
+		System.out.printf("%n%d assinantes: %d bytes de heap por assinante%n", subscribers, (depois - antes) / subscribers);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		broadcaster.shutdown();
+	}
+
+	@Benchmark
+	public void publish() throws InterruptedException {
+		entregues = new CountDownLatch(subscribers);
+		broadcaster.publish("UPA1", JSON);
+		entregues.await();
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,108 @@
+package com.sus.fiap.consumer.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transações curtas (pegar a conexão do tenant, uma consulta, commit, devolver) com tráfego misturado entre
+ * {@code tenants} schemas, {@value #THREADS} threads e pool de {@value #POOL_SIZE} conexões, contra um banco acessado
+ * pela rede (H2 em modo PostgreSQL via TCP local, no lugar do Postgres):
+ * <ul>
+ *   <li>{@code trackSchema=false}: {@code setSchema} ao pegar (padrão e tenant) e ao devolver, três round trips;</li>
+ *   <li>{@code trackSchema=true}: {@code setSchema} só quando a conexão está em outro schema.</li>
+ * </ul>
+ * O score é transações por segundo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(TenantConnectionBenchmark.THREADS)
+@Fork(1)
+public class TenantConnectionBenchmark {
+	static final int THREADS = 8;
+	private static final int POOL_SIZE = 4;
+
+	@Param({"false", "true"})
+	public boolean trackSchema;
+
+	@Param({"1", "3"})
+	public int tenants;
+
+	private Server server;
+	private HikariDataSource dataSource;
+	private MultiTenancyConfig.SchemaMultiTenantConnectionProvider provider;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:tenants;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setPassword("");
+		config.setMaximumPoolSize(POOL_SIZE);
+		dataSource = new HikariDataSource(config);
+		try (Connection connection = dataSource.getConnection(); Statement st = connection.createStatement()) {
+			for (int i = 1; i <= 3; i++) {
+				st.execute("CREATE SCHEMA \"und_atd" + i + "\"");
+				st.execute("CREATE TABLE \"und_atd" + i + "\".ATENDIMENTOS_UNIDADE (NR_SEQ_ATENDIMENTO BIGINT PRIMARY KEY,"
+						+ " COD_ESTADO_SENHA INT NOT NULL)");
+				st.execute("INSERT INTO \"und_atd" + i + "\".ATENDIMENTOS_UNIDADE VALUES (1, 1)");
+			}
+		}
+		provider = new MultiTenancyConfig.SchemaMultiTenantConnectionProvider(dataSource, "und_atd1", trackSchema, new SimpleMeterRegistry());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dataSource.close();
+		server.stop();
+	}
+
+	@Benchmark
+	public int transaction() throws SQLException {
+		String tenant = "und_atd" + (1 + ThreadLocalRandom.current().nextInt(tenants));
+		Connection connection = provider.getConnection(tenant);
+		try {
+			// como o Hibernate: auto-commit desligado só durante a transação
+			connection.setAutoCommit(false);
+			int estado;
+			try (PreparedStatement ps = connection.prepareStatement(
+					"SELECT COD_ESTADO_SENHA FROM ATENDIMENTOS_UNIDADE WHERE NR_SEQ_ATENDIMENTO = 1");
+					ResultSet rs = ps.executeQuery()) {
+				rs.next();
+				estado = rs.getInt(1);
+			}
+			connection.commit();
+			connection.setAutoCommit(true);
+			return estado;
+		} finally {
+			provider.releaseConnection(tenant, connection);
+		}
+	}
+}
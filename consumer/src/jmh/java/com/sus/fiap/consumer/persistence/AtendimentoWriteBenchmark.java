@@ -0,0 +1,169 @@
+package com.sus.fiap.consumer.persistence;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Caminho de escrita de uma senha (ATENDIMENTOS_UNIDADE + linha de ESTADO_ATENDIMENTO), em transações de
+ * {@value #ROWS} senhas, contra um banco acessado pela rede (H2 em modo PostgreSQL via TCP local, no lugar do Postgres):
+ * <ul>
+ *   <li>{@code identity}: INSERT com id IDENTITY (um round trip por linha para obter o id), EXISTS e INSERT do histórico;</li>
+ *   <li>{@code sequence}: um nextval por bloco de 50 ids, INSERTs em lote e histórico em lote com ON CONFLICT DO NOTHING.</li>
+ * </ul>
+ * O score é senhas gravadas por segundo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AtendimentoWriteBenchmark {
+	private static final int ROWS = 50;
+
+	@Param({"identity", "sequence"})
+	public String mode;
+
+	private Server server;
+	private Connection connection;
+	private long nrSenha;
+	private long nextId;
+	private long maxId;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+		connection = DriverManager.getConnection(
+				"jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:escrita;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+		try (Statement st = connection.createStatement()) {
+			st.execute("CREATE TABLE ATENDIMENTOS_UNIDADE (NR_SEQ_ATENDIMENTO BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+					+ " NR_SENHA_ATENDIMENTO INT NOT NULL, COD_CADASTRO_SUS_PACIENTE BIGINT NOT NULL,"
+					+ " COD_TIPO_PRIORIZACAO INT NOT NULL, COD_ESTADO_SENHA INT NOT NULL)");
+			st.execute("CREATE SEQUENCE ATENDIMENTOS_UNIDADE_SEQ START WITH " + ROWS + " INCREMENT BY " + ROWS);
+			st.execute("CREATE TABLE ESTADO_ATENDIMENTO (NR_SEQ_ATENDIMENTO BIGINT NOT NULL, COD_TIPO_ESTADO INT NOT NULL,"
+					+ " TIMESTAMP_ESTADO TIMESTAMP WITH TIME ZONE NOT NULL,"
+					+ " PRIMARY KEY (NR_SEQ_ATENDIMENTO, COD_TIPO_ESTADO, TIMESTAMP_ESTADO))");
+		}
+		connection.setAutoCommit(false);
+		nextId = 1;
+		maxId = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+		server.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void transaction() throws SQLException {
+		if ("sequence".equals(mode)) {
+			writeSequence();
+		} else {
+			writeIdentity();
+		}
+		connection.commit();
+	}
+
+	private void writeIdentity() throws SQLException {
+		OffsetDateTime agora = OffsetDateTime.now(ZoneOffset.UTC);
+		try (PreparedStatement insert = connection.prepareStatement(
+				"INSERT INTO ATENDIMENTOS_UNIDADE (NR_SENHA_ATENDIMENTO, COD_CADASTRO_SUS_PACIENTE, COD_TIPO_PRIORIZACAO, COD_ESTADO_SENHA)"
+						+ " VALUES (?, ?, 0, 1)", Statement.RETURN_GENERATED_KEYS);
+				PreparedStatement exists = connection.prepareStatement(
+						"SELECT 1 FROM ESTADO_ATENDIMENTO WHERE NR_SEQ_ATENDIMENTO = ? AND COD_TIPO_ESTADO = ? AND TIMESTAMP_ESTADO = ?");
+				PreparedStatement historico = connection.prepareStatement(
+						"INSERT INTO ESTADO_ATENDIMENTO (NR_SEQ_ATENDIMENTO, COD_TIPO_ESTADO, TIMESTAMP_ESTADO) VALUES (?, ?, ?)")) {
+			for (int i = 0; i < ROWS; i++) {
+				insert.setLong(1, ++nrSenha);
+				insert.setLong(2, nrSenha);
+				insert.executeUpdate();
+				long id;
+				try (ResultSet keys = insert.getGeneratedKeys()) {
+					keys.next();
+					id = keys.getLong(1);
+				}
+				exists.setLong(1, id);
+				exists.setInt(2, 1);
+				exists.setObject(3, agora);
+				try (ResultSet rs = exists.executeQuery()) {
+					if (rs.next()) {
+						continue;
+					}
+				}
+				historico.setLong(1, id);
+				historico.setInt(2, 1);
+				historico.setObject(3, agora);
+				historico.executeUpdate();
+			}
+		}
+	}
+
+	private void writeSequence() throws SQLException {
+		OffsetDateTime agora = OffsetDateTime.now(ZoneOffset.UTC);
+		long[] ids = new long[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			ids[i] = allocateId();
+		}
+		try (PreparedStatement insert = connection.prepareStatement(
+				"INSERT INTO ATENDIMENTOS_UNIDADE (NR_SEQ_ATENDIMENTO, NR_SENHA_ATENDIMENTO, COD_CADASTRO_SUS_PACIENTE, COD_TIPO_PRIORIZACAO, COD_ESTADO_SENHA)"
+						+ " VALUES (?, ?, ?, 0, 1)")) {
+			for (long id : ids) {
+				insert.setLong(1, id);
+				insert.setLong(2, ++nrSenha);
+				insert.setLong(3, nrSenha);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		try (PreparedStatement historico = connection.prepareStatement(
+				"INSERT INTO ESTADO_ATENDIMENTO (NR_SEQ_ATENDIMENTO, COD_TIPO_ESTADO, TIMESTAMP_ESTADO) VALUES (?, ?, ?) ON CONFLICT DO NOTHING")) {
+			for (long id : ids) {
+				historico.setLong(1, id);
+				historico.setInt(2, 1);
+				historico.setObject(3, agora);
+				historico.addBatch();
+			}
+			historico.executeBatch();
+		}
+	}
+
+	/**
+	 * Mesmo esquema do otimizador pooled do Hibernate: um nextval reserva [hi - 49, hi].
+	 */
+	private long allocateId() throws SQLException {
+		if (nextId > maxId) {
+			try (Statement st = connection.createStatement();
+					ResultSet rs = st.executeQuery("SELECT NEXT VALUE FOR ATENDIMENTOS_UNIDADE_SEQ")) {
+				rs.next();
+				maxId = rs.getLong(1);
+			}
+			nextId = maxId - ROWS + 1;
+		}
+		return nextId++;
+	}
+}
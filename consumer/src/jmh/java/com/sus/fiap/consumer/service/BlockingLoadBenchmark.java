@@ -0,0 +1,99 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Carga com I/O bloqueante simulado, no formato do {@code MetricsController}/listeners: cada operação é uma rajada
+ * de {@code requests} requisições simultâneas; 1 a cada {@code dbEvery} consulta o "banco" (5ms, limitado pelo
+ * {@link DatabaseConcurrencyLimiter} com pool de 10) e as demais só o "Redis" (1ms, sem limite).
+ * Compara o pool de threads de plataforma do Tomcat (200) com uma virtual thread por requisição.
+ * O tempo médio da rajada é a latência de cauda; {@code requests / tempo} é a vazão.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingLoadBenchmark {
+	private static final int POOL_SIZE = 10;
+	private static final int PLATFORM_THREADS = 200;
+	private static final long DB_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final long REDIS_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Param({"platform", "virtual"})
+	public String threads;
+
+	@Param({"200", "2000"})
+	public int requests;
+
+	@Param({"5", "1000"})
+	public int dbEvery;
+
+	private ExecutorService executor;
+	private DatabaseConcurrencyLimiter limiter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		executor = "virtual".equals(threads)
+				? Executors.newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(PLATFORM_THREADS);
+		limiter = new DatabaseConcurrencyLimiter(new SimpleMeterRegistry(), POOL_SIZE, Duration.ofMinutes(1));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public long burst() throws Exception {
+		List<Future<Long>> futures = new ArrayList<>(requests);
+		for (int i = 0; i < requests; i++) {
+			String tenant = "und_atd" + (i % 3 + 1);
+			boolean usesDb = i % dbEvery == 0;
+			futures.add(executor.submit(() -> request(tenant, usesDb)));
+		}
+		long total = 0;
+		for (Future<Long> future : futures) {
+			total += future.get();
+		}
+		return total;
+	}
+
+	private long request(String tenant, boolean usesDb) {
+		LockSupport.parkNanos(REDIS_NANOS);
+		if (!usesDb) {
+			return 1L;
+		}
+		return limiter.call(() -> TenantContext.callWithTenant(tenant, () -> {
+			LockSupport.parkNanos(DB_NANOS);
+			if (!tenant.equals(TenantContext.getCurrentTenant())) {
+				throw new IllegalStateException("tenant trocado: " + TenantContext.getCurrentTenant());
+			}
+			return 2L;
+		}));
+	}
+}
@@ -0,0 +1,60 @@
+package com.sus.fiap.consumer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sus.fiap.consumer.model.EventEnvelope;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Custo de desserializar uma mensagem Kafka nos dois formatos de envelope aceitos, a partir dos bytes do registro:
+ * {@code string} reproduz o StringDeserializer (bytes -> String -> parser); {@code bytes} lê direto do {@code byte[]}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventEnvelopeParserBenchmark {
+	private static final String NESTED = """
+			{"eventId":"2f6f5a3c-7ac4-4d0b-9c5a-1b4d832d8f12","type":"RETIRADA_DE_SENHA","occurredAt":"2026-02-13T12:10:00Z",\
+			"payload":{"unidadeAtendimento":"UPA1","nrSenhaAtendimento":17,"codCadastroSusPaciente":10,"timestamp":"2026-02-13T12:10:00Z"}}""";
+	private static final String FLATTENED = """
+			{"eventId":"b97b7628-c979-4434-8623-c1b619a08556","type":"RETIRADA_DE_SENHA","occurredAt":1771010745.973904,\
+			"topic":"healthcare.events","unidadeAtendimento":"UPA1","nrSenhaAtendimento":17,"codCadastroSusPaciente":10}""";
+
+	@Param({"nested", "flattened"})
+	public String format;
+
+	@Param({"string", "bytes"})
+	public String input;
+
+	private EventEnvelopeParser parser;
+	private byte[] value;
+	private boolean bytes;
+
+	@Setup
+	public void setUp() {
+		parser = new EventEnvelopeParser(new ObjectMapper());
+		value = ("nested".equals(format) ? NESTED : FLATTENED).getBytes(StandardCharsets.UTF_8);
+		bytes = "bytes".equals(input);
+	}
+
+	@Benchmark
+	public EventEnvelope parse() {
+		return bytes ? parser.parse(value) : parser.parse(new String(value, StandardCharsets.UTF_8));
+	}
+}
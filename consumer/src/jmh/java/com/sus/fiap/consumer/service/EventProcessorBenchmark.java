@@ -0,0 +1,172 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.CadastroSus;
+import com.sus.fiap.consumer.persistence.entity.Colaborador;
+import com.sus.fiap.consumer.persistence.entity.FuncoesColabUnidade;
+import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
+import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+import com.sus.fiap.consumer.persistence.repository.CadastroSusRepository;
+import com.sus.fiap.consumer.persistence.repository.ColaboradorFuncao;
+import com.sus.fiap.consumer.persistence.repository.ColaboradorRepository;
+import com.sus.fiap.consumer.persistence.repository.EstadoAtendimentoRepository;
+import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoEstadoSenhaRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoPriorizacaoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * Caminho de um evento dentro do {@link EventProcessor} (sem transação), com repositórios e Redis em memória.
+ * Mede o custo próprio do consumer: leitura do payload, regras, montagem de entidades e callbacks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventProcessorBenchmark {
+	private static final int EVENTOS = 1024;
+	private static final long COD_SUS = 10L;
+	private static final long NR_SEQ = 500L;
+	private static final long COD_MEDICO = 7L;
+
+	@Param({"RETIRADA_DE_SENHA", "ATENDIMENTO_FINALIZADO", "MEDICO_ENTRA_NO_PONTO"})
+	public String type;
+
+	private EventProcessor processor;
+	private MetricsRecomputeScheduler metricsRecomputeScheduler;
+	private EventEnvelope[] events;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		AtomicLong ids = new AtomicLong(1_000);
+		CadastroSus paciente = CadastroSus.builder()
+				.codCadastroSusPaciente(COD_SUS).nomePaciente("Paciente").idadePaciente(40).build();
+		AtendimentosUnidade atendimento = AtendimentosUnidade.builder()
+				.nrSeqAtendimento(NR_SEQ).nrSenhaAtendimento(1).paciente(paciente)
+				.tipoPriorizacao(TipoPriorizacao.builder().codTipoPriorizacao(0).build())
+				.estadoSenha(TipoEstadoSenha.builder().codTipoEstado(1).build())
+				.build();
+		Colaborador medico = Colaborador.builder()
+				.codIdColaborador(COD_MEDICO).nomeColaborador("Medico")
+				.funcao(FuncoesColabUnidade.builder().codIdFuncao(1).nomeFuncao("MEDICO").build())
+				.build();
+		ColaboradorRepository colaboradores = InMemoryRepositories.of(ColaboradorRepository.class,
+				Map.of(COD_MEDICO, new ColaboradorFuncao(COD_MEDICO, 1, "MEDICO")), id -> medico, e -> e);
+
+		ProcessedEventFilter filter = new ProcessedEventFilter(new StringRedisTemplate(), new SimpleMeterRegistry(),
+				false, Duration.ofDays(7), 7, 1, 0.01);
+		RedisIdempotencyService idempotency = new RedisIdempotencyService(new StringRedisTemplate(), filter, "check", Duration.ofMinutes(5)) {
+			@Override
+			public boolean isProcessed(UUID eventId) {
+				return false;
+			}
+
+			@Override
+			public void markProcessed(UUID eventId) {
+			}
+
+			@Override
+			public Long nextSequence(String key) {
+				return ids.incrementAndGet();
+			}
+		};
+		RedisQueueOutbox queue = new RedisQueueOutbox(null, null) {
+			@Override
+			public void enqueue(String unidadeAtendimento, AtendimentosUnidade atendimento) {
+			}
+
+			@Override
+			public void removeAll(String unidadeAtendimento, List<String> nrSeqAtendimentos, Long codCadastroSusPaciente) {
+			}
+		};
+		metricsRecomputeScheduler = new MetricsRecomputeScheduler(null, new SimpleMeterRegistry(), Duration.ZERO, Duration.ofMinutes(2)) {
+			@Override
+			public void markDirty(String unidadeAtendimento) {
+			}
+		};
+
+		AtendimentosUnidadeRepository atendimentos = InMemoryRepositories.of(AtendimentosUnidadeRepository.class,
+				Map.of(NR_SEQ, atendimento), id -> null, entity -> {
+					AtendimentosUnidade a = (AtendimentosUnidade) entity;
+					if (a.getNrSeqAtendimento() == null) {
+						a.setNrSeqAtendimento(ids.incrementAndGet());
+					}
+					return a;
+				});
+		PontoColaboradorRepository pontos = InMemoryRepositories.of(PontoColaboradorRepository.class, Map.of());
+		processor = new EventProcessor(
+				idempotency,
+				InMemoryRepositories.of(CadastroSusRepository.class, Map.of(COD_SUS, paciente), id -> paciente, e -> e),
+				new PatientProfileCache(new SimpleMeterRegistry(), 1024, Duration.ofHours(6)),
+				InMemoryRepositories.of(TipoPriorizacaoRepository.class, Map.of(),
+						id -> TipoPriorizacao.builder().codTipoPriorizacao((Integer) id).build(), e -> e),
+				InMemoryRepositories.of(TipoEstadoSenhaRepository.class, Map.of(),
+						id -> TipoEstadoSenha.builder().codTipoEstado((Integer) id).build(), e -> e),
+				atendimentos,
+				InMemoryRepositories.of(EstadoAtendimentoRepository.class, Map.of()),
+				colaboradores,
+				new ReferenceDataCache(colaboradores, new SimpleMeterRegistry(), 100, Duration.ofMinutes(10)),
+				pontos,
+				queue,
+				new UnidadeSchemaResolver(),
+				metricsRecomputeScheduler,
+				new QueueDepthTracker(atendimentos, pontos)
+		);
+
+		EventEnvelopeParser parser = new EventEnvelopeParser(new ObjectMapper());
+		events = new EventEnvelope[EVENTOS];
+		for (int i = 0; i < EVENTOS; i++) {
+			events[i] = parser.parse(json(i));
+		}
+		next = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		metricsRecomputeScheduler.shutdown();
+	}
+
+	@Benchmark
+	public void process() {
+		processor.process(events[next++ & (EVENTOS - 1)]);
+	}
+
+	private String json(int i) {
+		String payload = switch (type) {
+			case "RETIRADA_DE_SENHA" -> "\"unidadeAtendimento\":\"UPA1\",\"nrSenhaAtendimento\":" + (i + 1)
+					+ ",\"codCadastroSusPaciente\":" + COD_SUS;
+			case "ATENDIMENTO_FINALIZADO" -> "\"unidadeAtendimento\":\"UPA1\",\"nrSeqAtendimento\":\"" + NR_SEQ + "\"";
+			default -> "\"unidadeAtendimento\":\"UPA1\",\"codIdColaborador\":\"" + COD_MEDICO + "\"";
+		};
+		return "{\"eventId\":\"" + new UUID(0L, i) + "\",\"type\":\"" + type
+				+ "\",\"occurredAt\":\"2026-02-13T12:10:00Z\",\"payload\":{" + payload
+				+ ",\"timestamp\":\"2026-02-13T12:10:00Z\"}}";
+	}
+}
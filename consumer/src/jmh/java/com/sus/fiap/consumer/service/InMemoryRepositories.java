@@ -0,0 +1,63 @@
+package com.sus.fiap.consumer.service;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Repositórios Spring Data em memória (proxies dinâmicos) para medir o {@link EventProcessor} sem banco.
+ * Apenas {@code findById}, {@code getReferenceById} e {@code save} têm comportamento; as demais consultas
+ * devolvem vazio/zero conforme o tipo de retorno.
+ */
+final class InMemoryRepositories {
+	private InMemoryRepositories() {
+	}
+
+	static <R> R of(Class<R> repositoryType, Map<Object, Object> rows) {
+		return of(repositoryType, rows, id -> null, UnaryOperator.identity());
+	}
+
+	static <R> R of(
+			Class<R> repositoryType,
+			Map<Object, Object> rows,
+			Function<Object, Object> reference,
+			UnaryOperator<Object> onSave
+	) {
+		Object proxy = Proxy.newProxyInstance(
+				InMemoryRepositories.class.getClassLoader(),
+				new Class<?>[] {repositoryType},
+				(self, method, args) -> switch (method.getName()) {
+					case "findById", "findFuncaoById" -> Optional.ofNullable(rows.get(args[0]));
+					case "existsById" -> rows.containsKey(args[0]);
+					case "getReferenceById" -> reference.apply(args[0]);
+					case "save" -> onSave.apply(args[0]);
+					case "hashCode" -> System.identityHashCode(self);
+					case "equals" -> self == args[0];
+					case "toString" -> "InMemory" + repositoryType.getSimpleName();
+					default -> emptyOf(method.getReturnType());
+				});
+		return repositoryType.cast(proxy);
+	}
+
+	private static Object emptyOf(Class<?> type) {
+		if (type == Optional.class) {
+			return Optional.empty();
+		}
+		if (List.class.isAssignableFrom(type)) {
+			return List.of();
+		}
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,32 @@
+package com.sus.fiap.consumer.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cálculo do score da senha no ZSET da fila (todas as priorizações, ordem de chegada crescente).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisQueueServiceBenchmark {
+	private long nrSeq;
+
+	@Benchmark
+	public double scoreFor() {
+		long seq = ++nrSeq;
+		return RedisQueueService.scoreFor((int) seq & 3, seq);
+	}
+}
@@ -0,0 +1,35 @@
+package com.sus.fiap.consumer.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolução do schema (tenant) a partir da unidade, executada em todo evento.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnidadeSchemaResolverBenchmark {
+	@Param({"UPA1", " upa 12 ", "und_atd3"})
+	public String unidade;
+
+	private final UnidadeSchemaResolver resolver = new UnidadeSchemaResolver();
+
+	@Benchmark
+	public String resolveSchemaFromUnidade() {
+		return resolver.resolveSchemaFromUnidade(unidade);
+	}
+}
@@ -1,12 +1,22 @@
 package com.sus.fiap.consumer.api;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
 import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
+import com.sus.fiap.consumer.service.MetricsNearCache;
+import com.sus.fiap.consumer.service.RedisQueueService;
+import com.sus.fiap.consumer.service.RedisQueueService.ConsultaPosicao;
+import com.sus.fiap.consumer.service.RedisQueueService.Posicao;
+import com.sus.fiap.consumer.service.RedisQueueService.PosicaoPaciente;
 import com.sus.fiap.consumer.service.TenantContext;
 import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
 import org.springframework.beans.factory.annotation.Value;
@@ -18,25 +28,38 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/metrics")
 public class MetricsController {
 	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-	private static final long SCORE_BUCKET = 1_000_000L;
 	private static final int TEMPO_MEDIO_ATENDIMENTO_MIN = 10;
-	private static final int EST_ATENDIMENTO_FINALIZADO = 6;
-	private static final int EST_SENHA_EXPIRADA = 90;
-	private static final int EST_SENHA_CANCELADA = 91;
 
 	private final StringRedisTemplate redis;
 	private final UnidadeSchemaResolver unidadeSchemaResolver;
 	private final PontoColaboradorRepository pontoColaboradorRepository;
 	private final AtendimentosUnidadeRepository atendimentosUnidadeRepository;
+	private final DatabaseConcurrencyLimiter databaseLimiter;
+	private final RedisQueueService redisQueueService;
+	private final MetricsNearCache metricsNearCache;
+	private final TempoEsperaBroadcaster tempoEsperaBroadcaster;
+
+	@Value("${consumer.metrics.codsus-db-fallback:true}")
+	private boolean codSusDbFallback;
+
+	@Value("${consumer.metrics.medicos-db-fallback:true}")
+	private boolean medicosDbFallback = true;
+
+	@Value("${consumer.metrics.batch.max-items:500}")
+	private int batchMaxItems = 500;
 
 	@Value("${METRICS_API_KEY:}")
 	private String metricsApiKey;
@@ -48,12 +71,20 @@ public class MetricsController {
 			StringRedisTemplate redis,
 			UnidadeSchemaResolver unidadeSchemaResolver,
 			PontoColaboradorRepository pontoColaboradorRepository,
-			AtendimentosUnidadeRepository atendimentosUnidadeRepository
+			AtendimentosUnidadeRepository atendimentosUnidadeRepository,
+			DatabaseConcurrencyLimiter databaseLimiter,
+			RedisQueueService redisQueueService,
+			MetricsNearCache metricsNearCache,
+			TempoEsperaBroadcaster tempoEsperaBroadcaster
 	) {
 		this.redis = redis;
 		this.unidadeSchemaResolver = unidadeSchemaResolver;
 		this.pontoColaboradorRepository = pontoColaboradorRepository;
 		this.atendimentosUnidadeRepository = atendimentosUnidadeRepository;
+		this.databaseLimiter = databaseLimiter;
+		this.redisQueueService = redisQueueService;
+		this.metricsNearCache = metricsNearCache;
+		this.tempoEsperaBroadcaster = tempoEsperaBroadcaster;
 	}
 
 	@GetMapping(value = "/tempo-espera/{unidade}", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -67,13 +98,41 @@ public class MetricsController {
 		}
 
 		String unidadeNormalizada = normalizeUnidade(unidade);
-		String json = redis.opsForValue().get(key(unidadeNormalizada));
+		String json = metricsNearCache.get(key(unidadeNormalizada));
 		if (json == null || json.isBlank()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
 		return ResponseEntity.ok(json);
 	}
 
+	/**
+	 * Stream (Server-Sent Events) do JSON de {@code /tempo-espera/{unidade}}: o valor atual ao conectar e um evento
+	 * {@code tempo-espera} a cada mudança. 503 quando o nó já está no limite de conexões.
+	 */
+	@GetMapping(value = "/tempo-espera/{unidade}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public ResponseEntity<SseEmitter> tempoEsperaStream(
+			@PathVariable("unidade") String unidade,
+			@RequestHeader HttpHeaders headers
+	) {
+		ResponseEntity<String> auth = authorize(headers);
+		if (auth != null) {
+			return ResponseEntity.status(auth.getStatusCode()).build();
+		}
+		if (!tempoEsperaBroadcaster.isEnabled()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+
+		String unidadeNormalizada = normalizeUnidade(unidade);
+		SseEmitter emitter = tempoEsperaBroadcaster.subscribe(unidadeNormalizada, metricsNearCache.get(key(unidadeNormalizada)));
+		if (emitter == null) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+		}
+		return ResponseEntity.ok()
+				.header(HttpHeaders.CACHE_CONTROL, "no-cache")
+				.header("X-Accel-Buffering", "no")
+				.body(emitter);
+	}
+
 	@GetMapping(value = "/tempo-espera", produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<String> tempoEsperaPorTipo(
 			@RequestParam(name = "unidade", required = false) String unidade,
@@ -89,33 +148,18 @@ public class MetricsController {
 
 		String unidadeNormalizada = normalizeUnidade(unidade);
 
-		// Modo individual por paciente SUS: encontra o nrSeqAtendimento no banco e usa o score real no ZSET
+		// Modo individual por paciente SUS: senha ativa e posição real no ZSET em um round trip ao Redis
+		// (índice codSus → nrSeq mantido pelo RedisQueueService); o banco só é consultado se o paciente não está no índice
 		if (codCadastroSusPaciente != null) {
-			Long nrSeq = resolveNrSeqAtendimentoAtivo(unidadeNormalizada, codCadastroSusPaciente);
-			if (nrSeq == null) {
-				return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+			PosicaoPaciente posicao = redisQueueService.posicaoPaciente(unidadeNormalizada, codCadastroSusPaciente);
+			if (posicao == null && codSusDbFallback) {
+				posicao = posicaoPeloBanco(unidadeNormalizada, codCadastroSusPaciente);
 			}
-			String member = String.valueOf(nrSeq);
-			Double score = redis.opsForZSet().score(queueKey(unidadeNormalizada), member);
-			if (score == null) {
+			if (posicao == null || posicao.pessoasNaFrente() == null) {
 				return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 			}
-			long pessoasNaFrente = countAhead(unidadeNormalizada, score.doubleValue());
 			long medicos = countMedicosEmAtendimento(unidadeNormalizada);
-			if (medicos <= 0) {
-				return ResponseEntity.ok(
-						"{\"tempoEstimadoMin\":null,\"pessoasNaFrente\":" + pessoasNaFrente
-								+ ",\"medicosEmAtendimento\":" + medicos
-								+ ",\"nrSeqAtendimento\":" + nrSeq + "}"
-				);
-			}
-			long tempoEstimadoMin = (long) Math.ceil((pessoasNaFrente * (double) TEMPO_MEDIO_ATENDIMENTO_MIN) / (double) medicos);
-			return ResponseEntity.ok(
-					"{\"tempoEstimadoMin\":" + tempoEstimadoMin
-							+ ",\"pessoasNaFrente\":" + pessoasNaFrente
-							+ ",\"medicosEmAtendimento\":" + medicos
-							+ ",\"nrSeqAtendimento\":" + nrSeq + "}"
-			);
+			return ResponseEntity.ok(posicaoJson(false, posicao.pessoasNaFrente(), posicao.nrSeqAtendimento(), medicos));
 		}
 
 		int tipoInt = (tipo == null) ? -1 : tipo.intValue();
@@ -128,25 +172,15 @@ public class MetricsController {
 
 		// Modo individual: calcula com base em quantas pessoas estão na frente na fila (ZSET)
 		if (senha != null) {
-			int senhaNorm = normalizeSenha(senha.intValue());
 			long medicos = countMedicosEmAtendimento(unidadeNormalizada);
-			if (medicos <= 0) {
-				return ResponseEntity.ok(
-						"{\"tempoEstimadoMin\":null,\"pessoasNaFrente\":0,\"medicosEmAtendimento\":" + medicos + "}"
-				);
-			}
-			double score = scoreFor(tipoInt, senhaNorm);
-			long pessoasNaFrente = countAhead(unidadeNormalizada, score);
-			long tempoEstimadoMin = (long) Math.ceil((pessoasNaFrente * (double) TEMPO_MEDIO_ATENDIMENTO_MIN) / (double) medicos);
-			return ResponseEntity.ok(
-					"{\"tempoEstimadoMin\":" + tempoEstimadoMin
-							+ ",\"pessoasNaFrente\":" + pessoasNaFrente
-							+ ",\"medicosEmAtendimento\":" + medicos + "}"
-			);
+			// sem médico a posição não é consultada (ver writePosicao)
+			long pessoasNaFrente = medicos <= 0 ? 0L
+					: redisQueueService.pessoasNaFrenteDaSenha(unidadeNormalizada, tipoInt, senha.intValue());
+			return ResponseEntity.ok(posicaoJson(true, pessoasNaFrente, null, medicos));
 		}
 
 		// Modo antigo: devolve apenas o tempo estimado do JSON agregado salvo no Redis
-		String json = redis.opsForValue().get(key(unidadeNormalizada));
+		String json = metricsNearCache.get(key(unidadeNormalizada));
 		if (json == null || json.isBlank()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
@@ -171,6 +205,128 @@ public class MetricsController {
 		}
 	}
 
+	/**
+	 * Posições de várias senhas e/ou pacientes da mesma unidade (painéis e totens) com uma consulta ao Redis (um script)
+	 * e uma contagem de médicos. Corpo: {@code {"unidade":"UPA1","itens":[{"senha":50,"tipo":0},{"codSus":10}]}};
+	 * cada item é respondido como no GET individual, e a resposta é escrita item a item.
+	 * O paciente é localizado só pelo índice de senhas ativas (sem consultar o banco): fora dele, {@code "encontrado":false}.
+	 */
+	@PostMapping(value = "/tempo-espera/lote", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> tempoEsperaLote(
+			@RequestBody String body,
+			@RequestHeader HttpHeaders headers
+	) {
+		ResponseEntity<String> auth = authorize(headers);
+		if (auth != null) {
+			return ResponseEntity.status(auth.getStatusCode()).build();
+		}
+
+		JsonNode root;
+		try {
+			root = OBJECT_MAPPER.readTree(body);
+		} catch (IOException e) {
+			return badRequest("corpo JSON inválido");
+		}
+		JsonNode itens = root.path("itens");
+		if (!itens.isArray() || itens.isEmpty()) {
+			return badRequest("itens é obrigatório");
+		}
+		if (itens.size() > batchMaxItems) {
+			return badRequest("no máximo " + batchMaxItems + " itens por consulta");
+		}
+		List<ConsultaPosicao> consultas = new ArrayList<>(itens.size());
+		for (JsonNode item : itens) {
+			JsonNode codSus = item.get("codSus");
+			JsonNode senha = item.get("senha");
+			JsonNode tipo = item.get("tipo");
+			if (codSus != null && codSus.isIntegralNumber() && senha == null) {
+				consultas.add(ConsultaPosicao.porPaciente(codSus.longValue()));
+			} else if (senha != null && senha.isIntegralNumber() && codSus == null
+					&& tipo != null && tipo.isIntegralNumber() && tipoKey(tipo.intValue()) != null) {
+				consultas.add(ConsultaPosicao.porSenha(senha.intValue(), tipo.intValue()));
+			} else {
+				return badRequest("cada item deve ter codSus ou senha com tipo (0=Normal,1=Idoso,2=Gestante,3=Emergência)");
+			}
+		}
+
+		String unidadeNormalizada = normalizeUnidade(root.path("unidade").asText(null));
+		List<Posicao> posicoes = redisQueueService.posicoes(unidadeNormalizada, consultas);
+		long medicos = countMedicosEmAtendimento(unidadeNormalizada);
+		StreamingResponseBody stream = out -> {
+			try (JsonGenerator json = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+				json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				json.writeStartObject();
+				json.writeStringField("unidade", unidadeNormalizada);
+				json.writeNumberField("medicosEmAtendimento", medicos);
+				json.writeArrayFieldStart("itens");
+				for (int i = 0; i < consultas.size(); i++) {
+					ConsultaPosicao consulta = consultas.get(i);
+					Posicao posicao = posicoes.get(i);
+					json.writeStartObject();
+					if (consulta.codCadastroSusPaciente() != null) {
+						json.writeNumberField("codSus", consulta.codCadastroSusPaciente());
+					} else {
+						json.writeNumberField("senha", consulta.nrSenhaAtendimento());
+						json.writeNumberField("tipo", consulta.codTipoPriorizacao());
+					}
+					if (posicao.pessoasNaFrente() == null) {
+						json.writeBooleanField("encontrado", false);
+					} else if (consulta.codCadastroSusPaciente() != null) {
+						writePosicao(json, false, posicao.pessoasNaFrente(), posicao.nrSeqAtendimento(), medicos);
+					} else {
+						writePosicao(json, true, posicao.pessoasNaFrente(), null, medicos);
+					}
+					json.writeEndObject();
+				}
+				json.writeEndArray();
+				json.writeEndObject();
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(stream);
+	}
+
+	/**
+	 * Resposta do GET individual por senha ou por paciente: os campos de {@link #writePosicao} e a contagem de médicos.
+	 */
+	private static String posicaoJson(boolean porSenha, long pessoasNaFrente, Long nrSeqAtendimento, long medicos) {
+		StringWriter out = new StringWriter(128);
+		try (JsonGenerator json = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+			json.writeStartObject();
+			writePosicao(json, porSenha, pessoasNaFrente, nrSeqAtendimento, medicos);
+			json.writeNumberField("medicosEmAtendimento", medicos);
+			json.writeEndObject();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Campos de uma posição, iguais no GET individual e em cada item do lote. Sem médico em atendimento o tempo é
+	 * {@code null}; no modo por senha {@code pessoasNaFrente} vem 0 nesse caso (contrato original do endpoint), no
+	 * modo por paciente vem a posição real.
+	 */
+	private static void writePosicao(JsonGenerator json, boolean porSenha, long pessoasNaFrente, Long nrSeqAtendimento,
+			long medicos) throws IOException {
+		if (medicos <= 0) {
+			json.writeNullField("tempoEstimadoMin");
+		} else {
+			json.writeNumberField("tempoEstimadoMin",
+					(long) Math.ceil((pessoasNaFrente * (double) TEMPO_MEDIO_ATENDIMENTO_MIN) / (double) medicos));
+		}
+		json.writeNumberField("pessoasNaFrente", porSenha && medicos <= 0 ? 0L : pessoasNaFrente);
+		if (nrSeqAtendimento != null) {
+			json.writeNumberField("nrSeqAtendimento", nrSeqAtendimento);
+		}
+	}
+
+	private static ResponseEntity<StreamingResponseBody> badRequest(String error) {
+		byte[] body = ("{\"error\":\"" + error + "\"}").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+		return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(out -> out.write(body));
+	}
+
 	private static String key(String unidadeAtendimento) {
 		return "metrics:tempoAtendimentoMedio:" + unidadeAtendimento;
 	}
@@ -179,71 +335,44 @@ public class MetricsController {
 		return "queue:zset:" + unidadeAtendimento;
 	}
 
+	/**
+	 * Pelo conjunto {@code ponto:abertos:<schema>} no Redis; o banco só é consultado enquanto o conjunto não foi
+	 * sincronizado pelo {@code PontoReconciler} (a menos que desligado).
+	 */
 	private long countMedicosEmAtendimento(String unidadeNormalizada) {
 		String tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(unidadeNormalizada);
-		TenantContext.setCurrentTenant(tenant);
-		try {
-			return pontoColaboradorRepository.countByHorarioSaidaIsNull();
-		} finally {
-			TenantContext.clear();
+		long medicos = redisQueueService.medicosEmAtendimento(tenant);
+		if (medicos >= 0 || !medicosDbFallback) {
+			return Math.max(0L, medicos);
 		}
+		return databaseLimiter.call(() -> TenantContext.callWithTenant(tenant,
+				pontoColaboradorRepository::countByHorarioSaidaIsNull));
 	}
 
-	private Long resolveNrSeqAtendimentoAtivo(String unidadeNormalizada, Long codCadastroSusPaciente) {
-		if (codCadastroSusPaciente == null) {
-			return null;
-		}
-		java.util.List<Integer> estadosFinais = java.util.List.of(
-				EST_ATENDIMENTO_FINALIZADO,
-				EST_SENHA_EXPIRADA,
-				EST_SENHA_CANCELADA
-		);
+	/**
+	 * Caminho anterior ao índice de senhas ativas no Redis (senhas criadas antes dele): senha ativa no banco e score no ZSET.
+	 */
+	private PosicaoPaciente posicaoPeloBanco(String unidadeNormalizada, long codCadastroSusPaciente) {
 		String tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(unidadeNormalizada);
-		TenantContext.setCurrentTenant(tenant);
-		try {
-			var lista = atendimentosUnidadeRepository
-					.findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(
-							codCadastroSusPaciente,
-							estadosFinais
-					);
-			if (lista == null || lista.isEmpty()) {
-				return null;
-			}
-			var primeiro = lista.get(0);
-			return primeiro == null ? null : primeiro.getNrSeqAtendimento();
-		} finally {
-			TenantContext.clear();
+		var lista = databaseLimiter.call(() -> TenantContext.callWithTenant(tenant, () -> atendimentosUnidadeRepository
+				.findAtivosByPaciente(codCadastroSusPaciente)));
+		if (lista == null || lista.isEmpty()) {
+			return null;
 		}
+		long nrSeq = lista.get(0).nrSeqAtendimento();
+		Double score = redis.opsForZSet().score(queueKey(unidadeNormalizada), String.valueOf(nrSeq));
+		return new PosicaoPaciente(nrSeq, score == null ? null : countAhead(unidadeNormalizada, score.doubleValue()));
 	}
 
 	private long countAhead(String unidadeNormalizada, double score) {
 		ZSetOperations<String, String> zset = redis.opsForZSet();
-		// ZCOUNT é inclusivo; como o score é inteiro, usar (score - 0.5) funciona como "< score".
-		double maxExclusive = score - 0.5d;
+		// ZCOUNT é inclusivo; como o score é inteiro (e exato: < 2^53), usar (score - 1) funciona como "< score".
+		// (score - 0.5 não serve: acima de 2^52 o double não tem meio e arredondaria para o próprio score)
+		double maxExclusive = score - 1d;
 		Long count = zset.count(queueKey(unidadeNormalizada), -Double.MAX_VALUE, maxExclusive);
 		return count == null ? 0L : count.longValue();
 	}
 
-	private static double scoreFor(int tipoInt, int senhaNorm) {
-		int rank = switch (tipoInt) {
-			case 3 -> 0; // emergência
-			case 2 -> 1; // gestante
-			case 1 -> 2; // idoso
-			case 0 -> 3; // normal
-			default -> 3;
-		};
-		long score = (rank * SCORE_BUCKET) + (long) senhaNorm;
-		return (double) score;
-	}
-
-	private static int normalizeSenha(int nrSenhaAtendimento) {
-		if (nrSenhaAtendimento <= 0) {
-			return 1;
-		}
-		int mod = (nrSenhaAtendimento - 1) % 999;
-		return mod + 1;
-	}
-
 	private ResponseEntity<String> authorize(HttpHeaders headers) {
 		if (metricsApiKey != null && !metricsApiKey.isBlank()) {
 			String provided = headers.getFirst(metricsApiKeyHeader);
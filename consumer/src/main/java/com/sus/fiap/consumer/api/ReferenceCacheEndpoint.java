@@ -0,0 +1,44 @@
+package com.sus.fiap.consumer.api;
+
+import java.util.Map;
+
+import com.sus.fiap.consumer.service.ReferenceDataCache;
+import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code /actuator/referencecache}: tamanho do cache de colaboradores e invalidação após alterações
+ * feitas por fora (troca de função, cadastro corrigido). {@code DELETE /actuator/referencecache} limpa tudo;
+ * {@code DELETE /actuator/referencecache/UPA1} limpa só a unidade.
+ */
+@Component
+@Endpoint(id = "referencecache")
+public class ReferenceCacheEndpoint {
+	private final ReferenceDataCache referenceDataCache;
+	private final UnidadeSchemaResolver unidadeSchemaResolver;
+
+	public ReferenceCacheEndpoint(ReferenceDataCache referenceDataCache, UnidadeSchemaResolver unidadeSchemaResolver) {
+		this.referenceDataCache = referenceDataCache;
+		this.unidadeSchemaResolver = unidadeSchemaResolver;
+	}
+
+	@ReadOperation
+	public Map<String, Object> size() {
+		return Map.of("colaboradores", referenceDataCache.size());
+	}
+
+	@DeleteOperation
+	public void invalidateAll() {
+		referenceDataCache.invalidateAll();
+	}
+
+	@DeleteOperation
+	public void invalidateUnidade(@Selector String unidade) {
+		referenceDataCache.invalidateTenant(unidadeSchemaResolver.resolveSchemaFromUnidade(unidade));
+	}
+}
@@ -0,0 +1,256 @@
+package com.sus.fiap.consumer.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sus.fiap.consumer.service.TempoAtendimentoRedisService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Distribui por Server-Sent Events as mudanças de {@code metrics:tempoAtendimentoMedio:<unidade>}.
+ * <p>
+ * O consumer publica o JSON no canal {@link TempoAtendimentoRedisService#CHANNEL} só quando o valor muda; cada nó da API
+ * mantém uma única inscrição no canal e repassa a mensagem aos assinantes locais da unidade.
+ * <p>
+ * Cada assinante guarda no máximo um evento pendente: um valor novo substitui o que ainda não foi enviado (só o mais
+ * recente interessa ao painel), então a memória por conexão não cresce com um cliente lento. O envio roda em virtual
+ * thread, fora da thread do Redis; se um envio está parado há mais de {@code slow-timeout} quando chega o próximo valor,
+ * o assinante é desconectado (o EventSource do navegador reconecta e recebe o valor atual).
+ * No máximo {@code max-subscribers} conexões por nó (503 acima disso).
+ * Métricas: {@code consumer.metrics.stream.subscribers}, {@code consumer.metrics.stream.events{result=sent|coalesced}}
+ * e {@code consumer.metrics.stream.dropped{reason=slow|error}}.
+ */
+@Component
+public class TempoEsperaBroadcaster implements MessageListener {
+	private static final Logger log = LoggerFactory.getLogger(TempoEsperaBroadcaster.class);
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private final RedisConnectionFactory connectionFactory;
+	private final boolean enabled;
+	private final int maxSubscribers;
+	private final long timeoutMillis;
+	private final long slowTimeoutNanos;
+	private final Map<String, Set<Assinante>> assinantes = new ConcurrentHashMap<>();
+	private final AtomicInteger total = new AtomicInteger();
+	private final ExecutorService senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-tempo-espera-", 0).factory());
+	private final Counter sent;
+	private final Counter coalesced;
+	private final Counter droppedSlow;
+	private final Counter droppedError;
+	private volatile RedisMessageListenerContainer container;
+
+	public TempoEsperaBroadcaster(
+			RedisConnectionFactory connectionFactory,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.metrics.stream.enabled:true}") boolean enabled,
+			@Value("${consumer.metrics.stream.max-subscribers:5000}") int maxSubscribers,
+			@Value("${consumer.metrics.stream.timeout:30m}") Duration timeout,
+			@Value("${consumer.metrics.stream.slow-timeout:10s}") Duration slowTimeout
+	) {
+		this.connectionFactory = connectionFactory;
+		this.enabled = enabled;
+		this.maxSubscribers = maxSubscribers;
+		this.timeoutMillis = timeout.toMillis();
+		this.slowTimeoutNanos = slowTimeout.toNanos();
+		Gauge.builder("consumer.metrics.stream.subscribers", total, AtomicInteger::get).register(meterRegistry);
+		this.sent = Counter.builder("consumer.metrics.stream.events").tag("result", "sent").register(meterRegistry);
+		this.coalesced = Counter.builder("consumer.metrics.stream.events").tag("result", "coalesced").register(meterRegistry);
+		this.droppedSlow = Counter.builder("consumer.metrics.stream.dropped").tag("reason", "slow").register(meterRegistry);
+		this.droppedError = Counter.builder("consumer.metrics.stream.dropped").tag("reason", "error").register(meterRegistry);
+	}
+
+	/**
+	 * Inscreve o nó no canal de mudanças.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (!enabled || connectionFactory == null) {
+			return;
+		}
+		RedisMessageListenerContainer novo = new RedisMessageListenerContainer();
+		novo.setConnectionFactory(connectionFactory);
+		novo.addMessageListener(this, new ChannelTopic(TempoAtendimentoRedisService.CHANNEL));
+		novo.afterPropertiesSet();
+		novo.start();
+		container = novo;
+		log.info("Stream de tempo de espera inscrito no canal {}", TempoAtendimentoRedisService.CHANNEL);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Nova conexão para a unidade; {@code atual} (o valor no Redis, se houver) é o primeiro evento.
+	 * Devolve {@code null} se o nó já está no limite de conexões.
+	 */
+	public SseEmitter subscribe(String unidade, String atual) {
+		if (total.incrementAndGet() > maxSubscribers) {
+			total.decrementAndGet();
+			return null;
+		}
+		SseEmitter emitter = newEmitter(timeoutMillis);
+		Assinante assinante = new Assinante(unidade, emitter);
+		// compute (e não computeIfAbsent + add): o remove() pode estar descartando o conjunto vazio da unidade
+		assinantes.compute(unidade, (u, set) -> {
+			Set<Assinante> daUnidade = set == null ? ConcurrentHashMap.newKeySet() : set;
+			daUnidade.add(assinante);
+			return daUnidade;
+		});
+		emitter.onCompletion(() -> remove(assinante));
+		emitter.onTimeout(() -> remove(assinante));
+		emitter.onError(e -> remove(assinante));
+		if (atual != null && !atual.isBlank()) {
+			assinante.offer(atual);
+		}
+		return emitter;
+	}
+
+	SseEmitter newEmitter(long timeoutMillis) {
+		return new SseEmitter(timeoutMillis);
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		String json = new String(message.getBody(), StandardCharsets.UTF_8);
+		try {
+			String unidade = OBJECT_MAPPER.readTree(json).path("unidadeAtendimento").asText(null);
+			if (unidade != null) {
+				publish(unidade, json);
+			}
+		} catch (IOException e) {
+			log.warn("Mensagem inválida no canal {}: {}", TempoAtendimentoRedisService.CHANNEL, e.toString());
+		}
+	}
+
+	/**
+	 * Entrega o valor aos assinantes locais da unidade (não bloqueia: só agenda os envios).
+	 */
+	public void publish(String unidade, String json) {
+		Set<Assinante> daUnidade = assinantes.get(unidade);
+		if (daUnidade == null) {
+			return;
+		}
+		for (Assinante assinante : daUnidade) {
+			assinante.offer(json);
+		}
+	}
+
+	public int subscribers() {
+		return total.get();
+	}
+
+	private void remove(Assinante assinante) {
+		if (!assinante.encerrado.compareAndSet(false, true)) {
+			return;
+		}
+		total.decrementAndGet();
+		assinantes.computeIfPresent(assinante.unidade, (u, set) -> {
+			set.remove(assinante);
+			return set.isEmpty() ? null : set;
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		RedisMessageListenerContainer atual = container;
+		container = null;
+		if (atual != null) {
+			try {
+				atual.destroy();
+			} catch (Exception e) {
+				log.warn("Falha ao encerrar a inscrição no canal {}: {}", TempoAtendimentoRedisService.CHANNEL, e.toString());
+			}
+		}
+		for (Set<Assinante> daUnidade : assinantes.values()) {
+			for (Assinante assinante : daUnidade) {
+				assinante.emitter.complete();
+			}
+		}
+		senders.shutdownNow();
+	}
+
+	private final class Assinante {
+		private final String unidade;
+		private final SseEmitter emitter;
+		// no máximo um evento à espera; o mais novo substitui o anterior
+		private final AtomicReference<String> pendente = new AtomicReference<>();
+		private final AtomicBoolean enviando = new AtomicBoolean();
+		private final AtomicBoolean encerrado = new AtomicBoolean();
+		private volatile long enviandoDesde;
+
+		private Assinante(String unidade, SseEmitter emitter) {
+			this.unidade = unidade;
+			this.emitter = emitter;
+		}
+
+		private void offer(String json) {
+			if (encerrado.get()) {
+				return;
+			}
+			if (enviando.get() && System.nanoTime() - enviandoDesde > slowTimeoutNanos) {
+				droppedSlow.increment();
+				remove(this);
+				// complete() espera o lock de escrita que o envio parado segura: fora da thread do Redis
+				senders.execute(emitter::complete);
+				return;
+			}
+			if (pendente.getAndSet(json) != null) {
+				coalesced.increment();
+			}
+			if (enviando.compareAndSet(false, true)) {
+				enviandoDesde = System.nanoTime();
+				senders.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			while (true) {
+				String json = pendente.getAndSet(null);
+				if (json == null) {
+					enviando.set(false);
+					// um offer entre o getAndSet e o set(false) não agendou envio: continua daqui
+					if (pendente.get() == null || !enviando.compareAndSet(false, true)) {
+						return;
+					}
+					continue;
+				}
+				enviandoDesde = System.nanoTime();
+				try {
+					emitter.send(SseEmitter.event().name("tempo-espera").data(json, MediaType.APPLICATION_JSON));
+					sent.increment();
+				} catch (IOException | IllegalStateException e) {
+					droppedError.increment();
+					remove(this);
+					return;
+				}
+			}
+		}
+	}
+}
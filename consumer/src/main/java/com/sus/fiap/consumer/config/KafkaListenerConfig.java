@@ -0,0 +1,115 @@
+package com.sus.fiap.consumer.config;
+
+import java.time.Duration;
+import java.util.Collection;
+
+import com.sus.fiap.consumer.kafka.HealthcareEventsDispatchListener;
+import com.sus.fiap.consumer.service.EventInFlightException;
+import com.sus.fiap.consumer.service.ProcessedEventFilter;
+import com.sus.fiap.consumer.service.QueueDepthTracker;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.kafka.autoconfigure.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+@Configuration
+public class KafkaListenerConfig {
+	public static final String BATCH_CONTAINER_FACTORY = "batchKafkaListenerContainerFactory";
+	public static final String DISPATCH_CONTAINER_FACTORY = "dispatchKafkaListenerContainerFactory";
+
+	/**
+	 * Container em modo lote (app.kafka.listener.mode=batch).
+	 * Tamanho do lote e espera por dados seguem spring.kafka.consumer.max-poll-records / fetch-min-size / fetch-max-wait.
+	 */
+	@Bean(name = BATCH_CONTAINER_FACTORY)
+	@ConditionalOnProperty(name = "app.kafka.listener.mode", havingValue = "batch")
+	public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+			ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+			ConsumerFactory<Object, Object> consumerFactory,
+			ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> kafkaContainerCustomizer
+	) {
+		ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		configurer.configure(factory, consumerFactory);
+		kafkaContainerCustomizer.ifAvailable(factory::setContainerCustomizer);
+		factory.setBatchListener(true);
+		return factory;
+	}
+
+	/**
+	 * Container em modo dispatch (app.kafka.listener.mode=dispatch): o listener confirma os offsets por conta própria
+	 * (AckMode.MANUAL sem acknowledge) e o evento de idle garante o commit dos concluídos quando não chegam registros.
+	 */
+	@Bean(name = DISPATCH_CONTAINER_FACTORY)
+	@ConditionalOnProperty(name = "app.kafka.listener.mode", havingValue = "dispatch")
+	public ConcurrentKafkaListenerContainerFactory<Object, Object> dispatchKafkaListenerContainerFactory(
+			ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+			ConsumerFactory<Object, Object> consumerFactory,
+			ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> kafkaContainerCustomizer,
+			@Value("${app.kafka.dispatch.commit-interval:1s}") Duration commitInterval
+	) {
+		ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		configurer.configure(factory, consumerFactory);
+		kafkaContainerCustomizer.ifAvailable(factory::setContainerCustomizer);
+		factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+		factory.getContainerProperties().setIdleEventInterval(commitInterval.toMillis());
+		return factory;
+	}
+
+	/**
+	 * Error handler dos modos single e batch: falhas comuns mantêm o padrão (10 tentativas sem espera e o registro é
+	 * descartado); um evento reservado por outra transação em andamento ({@link EventInFlightException}, modo claim)
+	 * é tentado de novo a cada {@code in-flight-retry-interval}, sem limite, até a reserva ser confirmada, liberada ou
+	 * expirar ({@code claim-ttl}), para o offset nunca ser confirmado com o evento sem processar.
+	 */
+	@Bean
+	public DefaultErrorHandler kafkaErrorHandler(
+			@Value("${consumer.idempotency.in-flight-retry-interval:1s}") Duration inFlightRetryInterval
+	) {
+		DefaultErrorHandler handler = new DefaultErrorHandler();
+		handler.setBackOffFunction((record, e) -> EventInFlightException.isCause(e)
+				? new FixedBackOff(inFlightRetryInterval.toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS)
+				: null);
+		return handler;
+	}
+
+	/**
+	 * A cada atribuição de partições o pré-filtro de idempotência volta a consultar o Redis até se
+	 * ressincronizar: eventos dessas partições podem ter sido processados por outra instância.
+	 * Pelo mesmo motivo os contadores de fila em memória são recarregados do banco no próximo uso.
+	 * No modo dispatch, os offsets já concluídos são confirmados antes da revogação.
+	 */
+	@Bean
+	public ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> kafkaContainerCustomizer(
+			ProcessedEventFilter processedEventFilter,
+			QueueDepthTracker queueDepthTracker,
+			ObjectProvider<HealthcareEventsDispatchListener> dispatchListener
+	) {
+		return container -> container.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+			@Override
+			public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+				dispatchListener.ifAvailable(listener -> listener.onPartitionsRevoked(consumer, partitions));
+			}
+
+			@Override
+			public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+				if (!partitions.isEmpty()) {
+					processedEventFilter.resync();
+					queueDepthTracker.invalidate();
+				}
+			}
+		});
+	}
+}
@@ -2,20 +2,35 @@ package com.sus.fiap.consumer.config;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
 import com.sus.fiap.consumer.service.TenantContext;
+import com.zaxxer.hikari.HikariDataSource;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
 import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class MultiTenancyConfig {
+	private static final Logger log = LoggerFactory.getLogger(MultiTenancyConfig.class);
 	private static final String DEFAULT_TENANT = "und_atd1";
 
 	@Bean
@@ -35,8 +50,17 @@ public class MultiTenancyConfig {
 	}
 
 	@Bean
-	public MultiTenantConnectionProvider multiTenantConnectionProvider(DataSource dataSource) {
-		return new SchemaMultiTenantConnectionProvider(dataSource, DEFAULT_TENANT);
+	public MultiTenantConnectionProvider multiTenantConnectionProvider(
+			DataSource dataSource,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.db.schema-tracking.enabled:true}") boolean trackSchema
+	) {
+		// o Hikari com schema configurado volta a conexão para ele na devolução, sem passar por aqui
+		if (trackSchema && dataSource instanceof HikariDataSource hikari && hikari.getSchema() != null) {
+			log.warn("consumer.db.schema-tracking desligado: spring.datasource.hikari.schema={} é restaurado pelo pool", hikari.getSchema());
+			trackSchema = false;
+		}
+		return new SchemaMultiTenantConnectionProvider(dataSource, DEFAULT_TENANT, trackSchema, meterRegistry);
 	}
 
 	@Bean
@@ -50,20 +74,39 @@ public class MultiTenancyConfig {
 		};
 	}
 
+	/**
+	 * Uma conexão do pool (compartilhado entre os schemas) posicionada no schema do tenant.
+	 * Com {@code trackSchema}, o schema em que cada conexão física está fica registrado aqui e o {@code setSchema}
+	 * (um {@code SET search_path} no PostgreSQL, um round trip) só é enviado quando o tenant pedido é outro; a devolução
+	 * ao pool não volta mais para o schema padrão, então quem pega a conexão direto do {@link DataSource}
+	 * (migração, descoberta de schemas) deve qualificar as tabelas, como já faz.
+	 * O registro só vale para trocas feitas com auto-commit: dentro de uma transação o {@code SET} é desfeito por um
+	 * rollback, então nesse caso a troca é feita e o registro descartado. Sem {@code trackSchema}, o comportamento
+	 * anterior: {@code setSchema} ao pegar (padrão e tenant) e ao devolver.
+	 * Métricas por tenant: {@code consumer.db.connection.acquire{tenant}} (espera pelo pool),
+	 * {@code consumer.db.connection.active{tenant}} e {@code consumer.db.schema.switch{tenant,result=skipped|switched}}.
+	 */
 	static class SchemaMultiTenantConnectionProvider implements MultiTenantConnectionProvider {
 		private final DataSource dataSource;
 		private final String defaultTenant;
+		private final boolean trackSchema;
+		private final MeterRegistry meterRegistry;
+		// conexão física -> schema atual; a entrada some quando o pool descarta a conexão
+		private final Map<Connection, String> schemas = Collections.synchronizedMap(new WeakHashMap<>());
+		private final Map<String, TenantMeters> meters = new ConcurrentHashMap<>();
 
-		SchemaMultiTenantConnectionProvider(DataSource dataSource, String defaultTenant) {
+		SchemaMultiTenantConnectionProvider(DataSource dataSource, String defaultTenant, boolean trackSchema, MeterRegistry meterRegistry) {
 			this.dataSource = dataSource;
 			this.defaultTenant = defaultTenant;
+			this.trackSchema = trackSchema;
+			this.meterRegistry = meterRegistry;
 		}
 
 		@Override
 		public Connection getAnyConnection() throws SQLException {
 			Connection connection = dataSource.getConnection();
 			try {
-				connection.setSchema(defaultTenant);
+				switchSchema(connection, defaultTenant, tenantMeters(defaultTenant));
 			} catch (Exception ignored) {
 				// Best-effort
 			}
@@ -77,25 +120,61 @@ public class MultiTenancyConfig {
 
 		@Override
 		public Connection getConnection(Object tenantIdentifier) throws SQLException {
-			Connection connection = getAnyConnection();
 			String tenant = tenantIdentifier == null ? defaultTenant : tenantIdentifier.toString();
 			if (tenant == null || tenant.isBlank()) {
 				tenant = defaultTenant;
 			}
-			connection.setSchema(tenant);
+			TenantMeters tenantMeters = tenantMeters(tenant);
+			long inicio = System.nanoTime();
+			Connection connection = trackSchema ? dataSource.getConnection() : getAnyConnection();
+			tenantMeters.acquire.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+			try {
+				switchSchema(connection, tenant, tenantMeters);
+			} catch (SQLException | RuntimeException e) {
+				connection.close();
+				throw e;
+			}
+			tenantMeters.active.incrementAndGet();
 			return connection;
 		}
 
 		@Override
 		public void releaseConnection(Object tenantIdentifier, Connection connection) throws SQLException {
-			try {
-				connection.setSchema(defaultTenant);
-			} catch (Exception ignored) {
-				// Best-effort
+			String tenant = tenantIdentifier == null || tenantIdentifier.toString().isBlank() ? defaultTenant : tenantIdentifier.toString();
+			tenantMeters(tenant).active.decrementAndGet();
+			if (!trackSchema) {
+				try {
+					connection.setSchema(defaultTenant);
+				} catch (Exception ignored) {
+					// Best-effort
+				}
 			}
 			releaseAnyConnection(connection);
 		}
 
+		private void switchSchema(Connection connection, String tenant, TenantMeters tenantMeters) throws SQLException {
+			if (!trackSchema) {
+				connection.setSchema(tenant);
+				tenantMeters.switched.increment();
+				return;
+			}
+			Connection fisica = connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+			if (tenant.equals(schemas.get(fisica))) {
+				tenantMeters.skipped.increment();
+				return;
+			}
+			schemas.remove(fisica);
+			connection.setSchema(tenant);
+			tenantMeters.switched.increment();
+			if (connection.getAutoCommit()) {
+				schemas.put(fisica, tenant);
+			}
+		}
+
+		private TenantMeters tenantMeters(String tenant) {
+			return meters.computeIfAbsent(tenant, t -> new TenantMeters(meterRegistry, t));
+		}
+
 		@Override
 		public boolean supportsAggressiveRelease() {
 			return false;
@@ -114,4 +193,18 @@ public class MultiTenancyConfig {
 			throw new IllegalArgumentException("Não é possível desempacotar para: " + unwrapType);
 		}
 	}
+
+	private static final class TenantMeters {
+		private final Timer acquire;
+		private final AtomicInteger active = new AtomicInteger();
+		private final Counter skipped;
+		private final Counter switched;
+
+		private TenantMeters(MeterRegistry meterRegistry, String tenant) {
+			this.acquire = Timer.builder("consumer.db.connection.acquire").tag("tenant", tenant).register(meterRegistry);
+			Gauge.builder("consumer.db.connection.active", active, AtomicInteger::get).tag("tenant", tenant).register(meterRegistry);
+			this.skipped = Counter.builder("consumer.db.schema.switch").tag("tenant", tenant).tag("result", "skipped").register(meterRegistry);
+			this.switched = Counter.builder("consumer.db.schema.switch").tag("tenant", tenant).tag("result", "switched").register(meterRegistry);
+		}
+	}
 }
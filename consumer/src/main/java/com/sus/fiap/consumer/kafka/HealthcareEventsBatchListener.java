@@ -0,0 +1,141 @@
+package com.sus.fiap.consumer.kafka;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sus.fiap.consumer.config.KafkaListenerConfig;
+import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
+import com.sus.fiap.consumer.service.EventEnvelopeParser;
+import com.sus.fiap.consumer.service.EventProcessor;
+import com.sus.fiap.consumer.service.TenantContext;
+import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener em modo lote: agrupa os registros do poll por unidade (schema) e processa cada grupo
+ * em uma única transação. Se o grupo falhar, cai para o processamento registro a registro,
+ * isolando a mensagem problemática sem reprocessar o lote inteiro.
+ */
+@Component
+@ConditionalOnProperty(name = "app.kafka.listener.mode", havingValue = "batch")
+public class HealthcareEventsBatchListener {
+	private static final Logger log = LoggerFactory.getLogger(HealthcareEventsBatchListener.class);
+
+	private final EventEnvelopeParser parser;
+	private final EventProcessor processor;
+	private final UnidadeSchemaResolver unidadeSchemaResolver;
+	private final DatabaseConcurrencyLimiter databaseLimiter;
+	private final Timer batchTimer;
+	private final Counter processedCounter;
+	private final Counter ignoredCounter;
+	private final Counter fallbackCounter;
+
+	public HealthcareEventsBatchListener(
+			EventEnvelopeParser parser,
+			EventProcessor processor,
+			UnidadeSchemaResolver unidadeSchemaResolver,
+			DatabaseConcurrencyLimiter databaseLimiter,
+			MeterRegistry meterRegistry
+	) {
+		this.parser = parser;
+		this.processor = processor;
+		this.unidadeSchemaResolver = unidadeSchemaResolver;
+		this.databaseLimiter = databaseLimiter;
+		this.batchTimer = Timer.builder("consumer.kafka.batch").tag("mode", "batch").register(meterRegistry);
+		this.processedCounter = Counter.builder("consumer.kafka.records").tag("mode", "batch").tag("outcome", "processed").register(meterRegistry);
+		this.ignoredCounter = Counter.builder("consumer.kafka.records").tag("mode", "batch").tag("outcome", "ignored").register(meterRegistry);
+		this.fallbackCounter = Counter.builder("consumer.kafka.batch.fallback").register(meterRegistry);
+	}
+
+	@KafkaListener(topics = "${app.kafka.topic.events}", containerFactory = KafkaListenerConfig.BATCH_CONTAINER_FACTORY)
+	public void onBatch(List<ConsumerRecord<String, Object>> records) {
+		Timer.Sample sample = Timer.start();
+		try {
+			Map<String, List<IndexedEvent>> porTenant = new LinkedHashMap<>();
+			for (int i = 0; i < records.size(); i++) {
+				ConsumerRecord<String, Object> record = records.get(i);
+				try {
+					EventEnvelope event = parser.parseValue(record.value());
+					String tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(event.payload().unidadeAtendimento());
+					porTenant.computeIfAbsent(tenant, t -> new ArrayList<>()).add(new IndexedEvent(i, record.key(), event));
+				} catch (IllegalArgumentException e) {
+					logInvalid(record.key(), e);
+					ignoredCounter.increment();
+				}
+			}
+
+			int firstFailed = -1;
+			Exception firstFailure = null;
+			for (Map.Entry<String, List<IndexedEvent>> grupo : porTenant.entrySet()) {
+				try {
+					// só os aplicados: já processados e repetidos no lote não contam, como no modo single
+					processedCounter.increment(processGroup(grupo.getKey(), grupo.getValue()));
+				} catch (Exception e) {
+					log.warn("Falha no lote da unidade; reprocessando registro a registro: tenant={}, registros={}, erro={}",
+							grupo.getKey(), grupo.getValue().size(), e.getMessage());
+					fallbackCounter.increment();
+					for (IndexedEvent indexed : grupo.getValue()) {
+						try {
+							processSingle(grupo.getKey(), indexed.event());
+							processedCounter.increment();
+						} catch (IllegalArgumentException invalid) {
+							logInvalid(indexed.key(), invalid);
+							ignoredCounter.increment();
+						} catch (Exception failure) {
+							log.error("Falha ao processar mensagem Kafka: key={}", indexed.key(), failure);
+							if (firstFailed < 0 || indexed.index() < firstFailed) {
+								firstFailed = indexed.index();
+								firstFailure = failure;
+							}
+						}
+					}
+				}
+			}
+
+			if (firstFailed >= 0) {
+				// Offsets anteriores são confirmados; o container reapresenta a partir do registro que falhou.
+				// Os registros posteriores já processados são descartados pela idempotência.
+				throw new BatchListenerFailedException("Falha ao processar lote Kafka", firstFailure, firstFailed);
+			}
+		} finally {
+			sample.stop(batchTimer);
+		}
+	}
+
+	private int processGroup(String tenant, List<IndexedEvent> grupo) {
+		List<EventEnvelope> events = new ArrayList<>(grupo.size());
+		for (IndexedEvent indexed : grupo) {
+			events.add(indexed.event());
+		}
+		return databaseLimiter.call(() -> TenantContext.callWithTenant(tenant, () -> processor.processBatch(events)));
+	}
+
+	private void processSingle(String tenant, EventEnvelope event) {
+		databaseLimiter.run(() -> TenantContext.runWithTenant(tenant, () -> processor.process(event)));
+	}
+
+	private static void logInvalid(String key, IllegalArgumentException e) {
+		String cause = (e.getCause() == null || e.getCause().getMessage() == null) ? null : e.getCause().getMessage();
+		if (cause == null || cause.isBlank()) {
+			log.warn("Ignorando mensagem Kafka inválida: key={}, erro={}", key, e.getMessage());
+		} else {
+			log.warn("Ignorando mensagem Kafka inválida: key={}, erro={}, causa={}", key, e.getMessage(), cause);
+		}
+	}
+
+	private record IndexedEvent(int index, String key, EventEnvelope event) {
+	}
+}
@@ -0,0 +1,276 @@
+package com.sus.fiap.consumer.kafka;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sus.fiap.consumer.config.KafkaListenerConfig;
+import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
+import com.sus.fiap.consumer.service.EventInFlightException;
+import com.sus.fiap.consumer.service.EventEnvelopeParser;
+import com.sus.fiap.consumer.service.EventProcessor;
+import com.sus.fiap.consumer.service.TenantContext;
+import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener em modo dispatch: a thread do consumer só decodifica o envelope e entrega o evento à lane da unidade
+ * (schema); cada lane processa seus eventos em ordem em uma virtual thread, e unidades diferentes rodam em paralelo.
+ * <p>
+ * A ordem é garantida por unidade e não por paciente/atendimento: a mesma senha muda de chave ao longo da vida
+ * (retirada usa o paciente, os demais eventos usam nrSeqAtendimento) e a regra de "uma senha ativa por paciente"
+ * e os contadores da fila dependem da ordem dos eventos da unidade.
+ * <p>
+ * Offsets são confirmados manualmente só até o último registro contíguo concluído de cada partição
+ * ({@link PartitionOffsetTracker}). Se a lane de uma unidade enche, apenas a partição do registro é pausada e
+ * rebobinada (seek) até a lane esvaziar; as demais partições seguem sendo consumidas.
+ */
+@Component
+@ConditionalOnProperty(name = "app.kafka.listener.mode", havingValue = "dispatch")
+public class HealthcareEventsDispatchListener {
+	public static final String LISTENER_ID = "healthcare-events-dispatch";
+
+	private static final Logger log = LoggerFactory.getLogger(HealthcareEventsDispatchListener.class);
+
+	private final EventEnvelopeParser parser;
+	private final EventProcessor processor;
+	private final UnidadeSchemaResolver unidadeSchemaResolver;
+	private final DatabaseConcurrencyLimiter databaseLimiter;
+	private final KafkaListenerEndpointRegistry registry;
+	private final TenantLanes lanes;
+	private final PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+	// partições rebobinadas: registros a partir do offset são ignorados até serem relidos após a retomada
+	private final Map<TopicPartition, Long> rebobinadas = new HashMap<>();
+	private final long commitIntervalMillis;
+	private final int maxAttempts;
+	private final Duration retryBackoff;
+	private final Duration revokeTimeout;
+	private final Timer recordTimer;
+	private final Counter processedCounter;
+	private final Counter ignoredCounter;
+	private final Counter failedCounter;
+	private final Counter pausedCounter;
+	private final Counter revokedCounter;
+	private long lastCommitAt;
+
+	public HealthcareEventsDispatchListener(
+			EventEnvelopeParser parser,
+			EventProcessor processor,
+			UnidadeSchemaResolver unidadeSchemaResolver,
+			DatabaseConcurrencyLimiter databaseLimiter,
+			KafkaListenerEndpointRegistry registry,
+			MeterRegistry meterRegistry,
+			@Value("${app.kafka.dispatch.lane-capacity:1000}") int laneCapacity,
+			@Value("${app.kafka.dispatch.max-concurrency:8}") int maxConcurrency,
+			@Value("${app.kafka.dispatch.commit-interval:1s}") Duration commitInterval,
+			@Value("${app.kafka.dispatch.max-attempts:10}") int maxAttempts,
+			@Value("${app.kafka.dispatch.retry-backoff:500ms}") Duration retryBackoff,
+			@Value("${app.kafka.dispatch.revoke-timeout:10s}") Duration revokeTimeout
+	) {
+		this.parser = parser;
+		this.processor = processor;
+		this.unidadeSchemaResolver = unidadeSchemaResolver;
+		this.databaseLimiter = databaseLimiter;
+		this.registry = registry;
+		this.lanes = new TenantLanes(laneCapacity, maxConcurrency);
+		this.commitIntervalMillis = commitInterval.toMillis();
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.retryBackoff = retryBackoff;
+		this.revokeTimeout = revokeTimeout;
+		this.recordTimer = Timer.builder("consumer.kafka.batch").tag("mode", "dispatch").register(meterRegistry);
+		this.processedCounter = Counter.builder("consumer.kafka.records").tag("mode", "dispatch").tag("outcome", "processed").register(meterRegistry);
+		this.ignoredCounter = Counter.builder("consumer.kafka.records").tag("mode", "dispatch").tag("outcome", "ignored").register(meterRegistry);
+		this.failedCounter = Counter.builder("consumer.kafka.records").tag("mode", "dispatch").tag("outcome", "failed").register(meterRegistry);
+		this.pausedCounter = Counter.builder("consumer.kafka.dispatch.paused").register(meterRegistry);
+		this.revokedCounter = Counter.builder("consumer.kafka.records").tag("mode", "dispatch").tag("outcome", "revoked").register(meterRegistry);
+		Gauge.builder("consumer.kafka.dispatch.pending", lanes, TenantLanes::pending).register(meterRegistry);
+	}
+
+	@KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "${app.kafka.topic.events}",
+			containerFactory = KafkaListenerConfig.DISPATCH_CONTAINER_FACTORY)
+	public void onMessage(ConsumerRecord<String, Object> record, Consumer<?, ?> consumer) {
+		TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+		Long retomarEm = rebobinadas.get(partition);
+		if (retomarEm != null) {
+			if (record.offset() > retomarEm) {
+				return;
+			}
+			rebobinadas.remove(partition);
+		}
+
+		EventEnvelope event;
+		String tenant;
+		try {
+			event = parser.parseValue(record.value());
+			tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(event.payload().unidadeAtendimento());
+		} catch (IllegalArgumentException e) {
+			logInvalid(record.key(), e);
+			ignoredCounter.increment();
+			tracker.register(partition, record.offset()).complete();
+			commitIfDue(consumer);
+			return;
+		}
+
+		PartitionOffsetTracker.Completion completion = tracker.register(partition, record.offset());
+		String key = record.key();
+		if (!lanes.trySubmit(tenant, () -> run(tenant, key, event, completion))) {
+			tracker.discardLast(partition);
+			pause(partition, record.offset(), tenant, consumer);
+		}
+		commitIfDue(consumer);
+	}
+
+	/**
+	 * Sem registros novos, os offsets concluídos continuam sendo confirmados no intervalo de idle do container.
+	 */
+	@EventListener
+	public void onIdle(ListenerContainerIdleEvent event) {
+		if (event.getListenerId() != null && event.getListenerId().startsWith(LISTENER_ID)) {
+			commitIfDue(event.getConsumer());
+		}
+	}
+
+	/**
+	 * Chamado pelo rebalance listener (thread do consumer) antes de as partições serem revogadas.
+	 * As tarefas das partições ainda nas lanes deixam de ser executadas (o novo dono relê os registros a partir do
+	 * offset confirmado); as que já estão executando têm até {@code revoke-timeout} para terminar e entrar no commit.
+	 */
+	public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+		try {
+			if (!tracker.awaitRevoked(partitions, revokeTimeout)) {
+				log.warn("Eventos de partições revogadas ainda em execução após {}; serão relidos pelo novo dono: {}",
+						revokeTimeout, partitions);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Map<TopicPartition, OffsetAndMetadata> offsets = tracker.drainCommittable();
+		if (!offsets.isEmpty()) {
+			try {
+				consumer.commitSync(offsets);
+			} catch (RuntimeException e) {
+				log.warn("Falha ao confirmar offsets de partições revogadas: {}", offsets, e);
+			}
+		}
+		tracker.revoke(partitions);
+		partitions.forEach(rebobinadas::remove);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		lanes.close();
+	}
+
+	private void run(String tenant, String key, EventEnvelope event, PartitionOffsetTracker.Completion completion) {
+		Timer.Sample sample = Timer.start();
+		try {
+			for (int attempt = 1; ; attempt++) {
+				// partição revogada: o novo dono relê o registro a partir do offset confirmado
+				if (!completion.begin()) {
+					log.debug("Descartando evento de partição revogada: key={}, eventId={}", key, event.eventId());
+					revokedCounter.increment();
+					return;
+				}
+				boolean concluido = true;
+				try {
+					databaseLimiter.run(() -> TenantContext.runWithTenant(tenant, () -> processor.process(event)));
+					processedCounter.increment();
+				} catch (IllegalArgumentException e) {
+					logInvalid(key, e);
+					ignoredCounter.increment();
+				} catch (EventInFlightException e) {
+					// reservado por outra transação (modo claim): espera ela terminar ou a reserva expirar, sem
+					// gastar tentativas, para não descartar o evento e confirmar o offset
+					log.debug("Evento em processamento em outra transação; aguardando: key={}, eventId={}", key, e.getEventId());
+					attempt--;
+					concluido = false;
+				} catch (Exception e) {
+					if (attempt >= maxAttempts) {
+						// mesmo comportamento do error handler padrão dos outros modos: desiste e segue a partição
+						log.error("Falha ao processar mensagem Kafka; descartando após {} tentativas: key={}", attempt, key, e);
+						failedCounter.increment();
+					} else {
+						log.warn("Falha ao processar mensagem Kafka; nova tentativa {}/{}: key={}, erro={}",
+								attempt + 1, maxAttempts, key, e.getMessage());
+						concluido = false;
+					}
+				} finally {
+					// concluído antes do end(): a revogação que espera este registro já confirma o offset dele
+					if (concluido) {
+						completion.complete();
+					}
+					completion.end();
+				}
+				if (concluido) {
+					return;
+				}
+				Thread.sleep(retryBackoff);
+			}
+		} catch (InterruptedException e) {
+			// desligando: o offset não é confirmado e o registro será relido
+			Thread.currentThread().interrupt();
+		} finally {
+			sample.stop(recordTimer);
+		}
+	}
+
+	private void pause(TopicPartition partition, long offset, String tenant, Consumer<?, ?> consumer) {
+		consumer.seek(partition, offset);
+		rebobinadas.put(partition, offset);
+		pausedCounter.increment();
+		MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+		if (container == null) {
+			return;
+		}
+		log.info("Lane cheia; pausando partição até a unidade esvaziar: partition={}, offset={}, tenant={}", partition, offset, tenant);
+		container.pausePartition(partition);
+		lanes.whenHasRoom(tenant, () -> container.resumePartition(partition));
+	}
+
+	private void commitIfDue(Consumer<?, ?> consumer) {
+		long now = System.currentTimeMillis();
+		if (now - lastCommitAt < commitIntervalMillis) {
+			return;
+		}
+		lastCommitAt = now;
+		Map<TopicPartition, OffsetAndMetadata> offsets = tracker.drainCommittable();
+		if (offsets.isEmpty()) {
+			return;
+		}
+		consumer.commitAsync(offsets, (committed, e) -> {
+			if (e != null) {
+				log.warn("Falha ao confirmar offsets (serão relidos e descartados pela idempotência): {}", committed, e);
+			}
+		});
+	}
+
+	private static void logInvalid(String key, IllegalArgumentException e) {
+		String cause = (e.getCause() == null || e.getCause().getMessage() == null) ? null : e.getCause().getMessage();
+		if (cause == null || cause.isBlank()) {
+			log.warn("Ignorando mensagem Kafka inválida: key={}, erro={}", key, e.getMessage());
+		} else {
+			log.warn("Ignorando mensagem Kafka inválida: key={}, erro={}, causa={}", key, e.getMessage(), cause);
+		}
+	}
+}
@@ -1,51 +1,64 @@
 package com.sus.fiap.consumer.kafka;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
 import com.sus.fiap.consumer.service.EventEnvelopeParser;
 import com.sus.fiap.consumer.service.EventProcessor;
 import com.sus.fiap.consumer.service.TenantContext;
 import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnProperty(name = "app.kafka.listener.mode", havingValue = "single", matchIfMissing = true)
 public class HealthcareEventsListener {
 	private static final Logger log = LoggerFactory.getLogger(HealthcareEventsListener.class);
 
 	private final EventEnvelopeParser parser;
 	private final EventProcessor processor;
 	private final UnidadeSchemaResolver unidadeSchemaResolver;
+	private final DatabaseConcurrencyLimiter databaseLimiter;
+	private final Timer recordTimer;
+	private final Counter processedCounter;
+	private final Counter ignoredCounter;
 
-	public HealthcareEventsListener(EventEnvelopeParser parser, EventProcessor processor, UnidadeSchemaResolver unidadeSchemaResolver) {
+	public HealthcareEventsListener(
+			EventEnvelopeParser parser,
+			EventProcessor processor,
+			UnidadeSchemaResolver unidadeSchemaResolver,
+			DatabaseConcurrencyLimiter databaseLimiter,
+			MeterRegistry meterRegistry
+	) {
 		this.parser = parser;
 		this.processor = processor;
 		this.unidadeSchemaResolver = unidadeSchemaResolver;
+		this.databaseLimiter = databaseLimiter;
+		this.recordTimer = Timer.builder("consumer.kafka.batch").tag("mode", "single").register(meterRegistry);
+		this.processedCounter = Counter.builder("consumer.kafka.records").tag("mode", "single").tag("outcome", "processed").register(meterRegistry);
+		this.ignoredCounter = Counter.builder("consumer.kafka.records").tag("mode", "single").tag("outcome", "ignored").register(meterRegistry);
 	}
 
 	@KafkaListener(topics = "${app.kafka.topic.events}")
-	public void onMessage(
-			@Payload String value,
-			@Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key
-	) {
+	public void onMessage(ConsumerRecord<String, Object> record) {
+		String key = record.key();
+		Timer.Sample sample = Timer.start();
 		try {
-			EventEnvelope event = parser.parse(value);
+			EventEnvelope event = parser.parseValue(record.value());
 			log.info("Evento recebido: type={}, eventId={}, key={}", event.type(), event.eventId(), key);
-			String unidadeAtendimento = optionalText(event.payload(), "unidadeAtendimento");
+			String unidadeAtendimento = event.payload().unidadeAtendimento();
 			String tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(unidadeAtendimento);
-			TenantContext.setCurrentTenant(tenant);
-			try {
-				processor.process(event);
-			} finally {
-				TenantContext.clear();
-			}
+			databaseLimiter.run(() -> TenantContext.runWithTenant(tenant, () -> processor.process(event)));
+			processedCounter.increment();
 		} catch (IllegalArgumentException e) {
+			ignoredCounter.increment();
 			String cause = (e.getCause() == null || e.getCause().getMessage() == null) ? null : e.getCause().getMessage();
 			if (cause == null || cause.isBlank()) {
 				log.warn("Ignorando mensagem Kafka inválida: key={}, erro={}", key, e.getMessage());
@@ -55,18 +68,8 @@ public class HealthcareEventsListener {
 		} catch (Exception e) {
 			log.error("Falha ao processar mensagem Kafka: key={}", key, e);
 			throw e;
+		} finally {
+			sample.stop(recordTimer);
 		}
 	}
-
-	private static String optionalText(JsonNode payload, String field) {
-		if (payload == null) {
-			return null;
-		}
-		JsonNode node = payload.get(field);
-		if (node == null || node.isNull()) {
-			return null;
-		}
-		String text = node.asText();
-		return (text == null || text.isBlank()) ? null : text;
-	}
 }
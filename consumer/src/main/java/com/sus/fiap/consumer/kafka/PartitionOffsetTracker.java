@@ -0,0 +1,176 @@
+package com.sus.fiap.consumer.kafka;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Offsets despachados e ainda não confirmados, por partição, na ordem de entrega.
+ * Os registros podem terminar fora de ordem (unidades diferentes), mas só o prefixo contíguo já concluído
+ * é liberado para commit: um offset nunca é confirmado antes de todos os anteriores da mesma partição.
+ * <p>
+ * Cada atribuição da partição é uma geração: ao ser revogada, as tarefas dela que ainda estão nas lanes são
+ * recusadas por {@link Completion#begin()} (o novo dono relê os registros a partir do offset confirmado) e
+ * {@link #awaitRevoked} espera, com limite, as que já estão executando.
+ * <p>
+ * {@link #register}, {@link #discardLast}, {@link #drainCommittable}, {@link #awaitRevoked} e {@link #revoke} rodam
+ * apenas na thread do consumer; os métodos de {@link Completion} podem ser chamados de qualquer thread.
+ */
+public final class PartitionOffsetTracker {
+	private final Map<TopicPartition, Generation> pendentes = new HashMap<>();
+
+	public Completion register(TopicPartition partition, long offset) {
+		Generation geracao = pendentes.computeIfAbsent(partition, p -> new Generation());
+		Entry entry = new Entry(geracao, offset);
+		geracao.fila.addLast(entry);
+		return entry;
+	}
+
+	/**
+	 * Desfaz o último {@link #register} da partição (registro que não chegou a ser despachado).
+	 */
+	public void discardLast(TopicPartition partition) {
+		Generation geracao = pendentes.get(partition);
+		if (geracao != null) {
+			geracao.fila.pollLast();
+		}
+	}
+
+	/**
+	 * Remove o prefixo concluído de cada partição.
+	 * @return próximo offset a confirmar (último concluído + 1) das partições que avançaram
+	 */
+	public Map<TopicPartition, OffsetAndMetadata> drainCommittable() {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+		for (Map.Entry<TopicPartition, Generation> partition : pendentes.entrySet()) {
+			ArrayDeque<Entry> fila = partition.getValue().fila;
+			long next = -1;
+			while (!fila.isEmpty() && fila.peekFirst().done) {
+				next = fila.pollFirst().offset + 1;
+			}
+			if (next >= 0) {
+				offsets.put(partition.getKey(), new OffsetAndMetadata(next));
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * Marca as partições como revogadas (nenhuma tarefa delas começa depois disso) e espera as que estão executando
+	 * terminarem, até {@code timeout} no total.
+	 * @return false se alguma ainda estava executando ao fim do prazo
+	 */
+	public boolean awaitRevoked(Collection<TopicPartition> partitions, Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		boolean todas = true;
+		for (TopicPartition partition : partitions) {
+			Generation geracao = pendentes.get(partition);
+			if (geracao != null && !geracao.revokeAndAwait(deadline)) {
+				todas = false;
+			}
+		}
+		return todas;
+	}
+
+	/**
+	 * Esquece partições revogadas; registros ainda não concluídos delas serão relidos pelo novo dono.
+	 */
+	public void revoke(Collection<TopicPartition> partitions) {
+		for (TopicPartition partition : partitions) {
+			Generation geracao = pendentes.remove(partition);
+			if (geracao != null) {
+				geracao.revoke();
+			}
+		}
+	}
+
+	public int pending() {
+		int total = 0;
+		for (Generation geracao : pendentes.values()) {
+			total += geracao.fila.size();
+		}
+		return total;
+	}
+
+	public interface Completion {
+		/**
+		 * Início de uma tentativa de processar o registro.
+		 * @return false se a partição foi revogada: o registro não deve ser processado aqui
+		 */
+		boolean begin();
+
+		/**
+		 * Fim da tentativa iniciada por {@link #begin()} (sempre chamado, com ou sem sucesso).
+		 */
+		void end();
+
+		void complete();
+	}
+
+	private static final class Generation {
+		private final ArrayDeque<Entry> fila = new ArrayDeque<>();
+		private boolean revoked;
+		private int running;
+
+		private synchronized boolean begin() {
+			if (revoked) {
+				return false;
+			}
+			running++;
+			return true;
+		}
+
+		private synchronized void end() {
+			if (--running == 0) {
+				notifyAll();
+			}
+		}
+
+		private synchronized void revoke() {
+			revoked = true;
+		}
+
+		private synchronized boolean revokeAndAwait(long deadline) throws InterruptedException {
+			revoked = true;
+			while (running > 0) {
+				long restante = deadline - System.nanoTime();
+				if (restante <= 0) {
+					return false;
+				}
+				wait(Math.max(1L, restante / 1_000_000L));
+			}
+			return true;
+		}
+	}
+
+	private static final class Entry implements Completion {
+		private final Generation geracao;
+		private final long offset;
+		private volatile boolean done;
+
+		private Entry(Generation geracao, long offset) {
+			this.geracao = geracao;
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean begin() {
+			return geracao.begin();
+		}
+
+		@Override
+		public void end() {
+			geracao.end();
+		}
+
+		@Override
+		public void complete() {
+			done = true;
+		}
+	}
+}
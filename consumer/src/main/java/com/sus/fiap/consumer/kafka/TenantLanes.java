@@ -0,0 +1,113 @@
+package com.sus.fiap.consumer.kafka;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uma fila (lane) por tenant, cada uma drenada em ordem por uma virtual thread própria.
+ * Tenants diferentes executam em paralelo, limitados a {@code maxConcurrency} tarefas simultâneas no total;
+ * dentro do mesmo tenant a ordem de submissão é preservada.
+ * A fila é limitada: {@link #trySubmit} devolve false quando está cheia e {@link #whenHasRoom} avisa quando
+ * ela volta a ter espaço (metade da capacidade).
+ */
+public final class TenantLanes implements AutoCloseable {
+	private static final Logger log = LoggerFactory.getLogger(TenantLanes.class);
+
+	private final int capacity;
+	private final Semaphore permits;
+	private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+	private volatile boolean closed;
+
+	public TenantLanes(int capacity, int maxConcurrency) {
+		if (capacity < 1 || maxConcurrency < 1) {
+			throw new IllegalArgumentException("capacity e maxConcurrency devem ser positivos");
+		}
+		this.capacity = capacity;
+		this.permits = new Semaphore(maxConcurrency);
+	}
+
+	public boolean trySubmit(String tenant, Runnable task) {
+		if (closed) {
+			return false;
+		}
+		return lane(tenant).queue.offer(task);
+	}
+
+	/**
+	 * Executa {@code callback} (uma vez) quando a lane do tenant tiver espaço; imediatamente se já tiver.
+	 */
+	public void whenHasRoom(String tenant, Runnable callback) {
+		Lane lane = lane(tenant);
+		lane.waiters.add(callback);
+		if (lane.hasRoom()) {
+			lane.notifyWaiters();
+		}
+	}
+
+	public int pending() {
+		int total = 0;
+		for (Lane lane : lanes.values()) {
+			total += lane.queue.size();
+		}
+		return total;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		lanes.values().forEach(lane -> lane.worker.interrupt());
+	}
+
+	private Lane lane(String tenant) {
+		return lanes.computeIfAbsent(tenant, Lane::new);
+	}
+
+	private final class Lane {
+		private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(capacity);
+		private final ConcurrentLinkedQueue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+		private final Thread worker;
+
+		private Lane(String tenant) {
+			this.worker = Thread.ofVirtual().name("dispatch-" + tenant).start(this::run);
+		}
+
+		private void run() {
+			try {
+				while (!closed) {
+					Runnable task = queue.take();
+					permits.acquire();
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						log.error("Falha não tratada na lane: {}", Thread.currentThread().getName(), e);
+					} finally {
+						permits.release();
+					}
+					if (hasRoom()) {
+						notifyWaiters();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private boolean hasRoom() {
+			return queue.size() <= capacity / 2;
+		}
+
+		private void notifyWaiters() {
+			Runnable waiter;
+			while ((waiter = waiters.poll()) != null) {
+				waiter.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.sus.fiap.consumer.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot do atendimento gravado em {@code atendimento:<unidade>:<nrSeq>}.
+ * Em JSON os nomes são os dos componentes (formato original). Em hash só entram os campos que não estão na chave,
+ * com nomes de uma letra ({@link #HASH_SENHA}, ...), para o Redis guardar em listpack/ziplist; campos nulos são omitidos.
+ */
+public record AtendimentoSnapshot(
+		String unidadeAtendimento,
+		Long nrSeqAtendimento,
+		Integer nrSenhaAtendimento,
+		Long codCadastroSusPaciente,
+		Integer codTipoPriorizacao,
+		Integer codEstadoSenha
+) {
+	public static final String HASH_SENHA = "s";
+	public static final String HASH_PACIENTE = "p";
+	public static final String HASH_PRIORIZACAO = "t";
+	public static final String HASH_ESTADO = "e";
+
+	/**
+	 * Pares campo/valor para {@code HSET}.
+	 */
+	public List<String> toHashFields() {
+		List<String> fields = new ArrayList<>(8);
+		add(fields, HASH_SENHA, nrSenhaAtendimento);
+		add(fields, HASH_PACIENTE, codCadastroSusPaciente);
+		add(fields, HASH_PRIORIZACAO, codTipoPriorizacao);
+		add(fields, HASH_ESTADO, codEstadoSenha);
+		return fields;
+	}
+
+	public static AtendimentoSnapshot fromHash(String unidadeAtendimento, long nrSeqAtendimento, Map<String, String> hash) {
+		return new AtendimentoSnapshot(
+				unidadeAtendimento,
+				nrSeqAtendimento,
+				integer(hash.get(HASH_SENHA)),
+				hash.get(HASH_PACIENTE) == null ? null : Long.valueOf(hash.get(HASH_PACIENTE)),
+				integer(hash.get(HASH_PRIORIZACAO)),
+				integer(hash.get(HASH_ESTADO))
+		);
+	}
+
+	private static void add(List<String> fields, String name, Number value) {
+		if (value != null) {
+			fields.add(name);
+			fields.add(value.toString());
+		}
+	}
+
+	private static Integer integer(String value) {
+		return value == null ? null : Integer.valueOf(value);
+	}
+}
@@ -0,0 +1,17 @@
+package com.sus.fiap.consumer.model;
+
+import java.time.Instant;
+
+/**
+ * Campos de payload conhecidos pelo consumer, já decodificados pelo {@code EventEnvelopeParser}.
+ * Campos ausentes (ou vazios) ficam {@code null}; cada handler valida os que são obrigatórios para o seu tipo de evento.
+ */
+public record EventPayload(
+		String unidadeAtendimento,
+		Long nrSenhaAtendimento,
+		Long codCadastroSusPaciente,
+		Long nrSeqAtendimento,
+		Long codIdColaborador,
+		Instant timestamp
+) {
+}
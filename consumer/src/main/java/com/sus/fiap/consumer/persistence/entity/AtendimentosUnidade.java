@@ -8,6 +8,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 import lombok.AllArgsConstructor;
@@ -24,8 +25,17 @@ import lombok.Setter;
 @AllArgsConstructor
 @Builder
 public class AtendimentosUnidade {
+	public static final String ID_SEQUENCE = "ATENDIMENTOS_UNIDADE_SEQ";
+	public static final int ID_ALLOCATION_SIZE = 50;
+
+	/**
+	 * Sequence com alocação em blocos de {@value #ID_ALLOCATION_SIZE} (otimizador pooled): os ids são atribuídos
+	 * sem round trip no persist e os INSERTs podem ir em lote. A sequence de cada schema é criada/alinhada
+	 * com o maior id existente por {@code AtendimentosSchemaMigration}.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "atendimentos_unidade_seq")
+	@SequenceGenerator(name = "atendimentos_unidade_seq", sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
 	@Column(name = "NR_SEQ_ATENDIMENTO", nullable = false)
 	private Long nrSeqAtendimento;
 
@@ -0,0 +1,78 @@
+package com.sus.fiap.consumer.persistence.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Mutação da fila no Redis gravada na mesma transação da mudança da senha e aplicada depois pelo
+ * {@code RedisOutboxRelay}, na ordem de {@code ID}. Cada linha é uma senha: o snapshot completo no {@code ENQUEUE}
+ * e só o necessário para a remoção no {@code REMOVE}. As linhas de ponto ({@code PONTO_ABERTO}/{@code PONTO_FECHADO})
+ * levam o schema em {@code UNIDADE_ATENDIMENTO} e o colaborador em {@code COD_ID_COLABORADOR}, sem nrSeq.
+ * Em cada schema {@code und_atdX} fora o padrão a tabela é criada por {@code AtendimentosSchemaMigration}.
+ */
+@Entity
+@Table(name = "REDIS_OUTBOX")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RedisOutbox {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "ID", nullable = false)
+	private Long id;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "OPERACAO", nullable = false, length = 16)
+	private Operacao operacao;
+
+	@Column(name = "UNIDADE_ATENDIMENTO", nullable = false)
+	private String unidadeAtendimento;
+
+	@Column(name = "NR_SEQ_ATENDIMENTO")
+	private Long nrSeqAtendimento;
+
+	@Column(name = "NR_SENHA_ATENDIMENTO")
+	private Integer nrSenhaAtendimento;
+
+	@Column(name = "COD_CADASTRO_SUS_PACIENTE")
+	private Long codCadastroSusPaciente;
+
+	@Column(name = "COD_TIPO_PRIORIZACAO")
+	private Integer codTipoPriorizacao;
+
+	@Column(name = "COD_ESTADO_SENHA")
+	private Integer codEstadoSenha;
+
+	@Column(name = "COD_ID_COLABORADOR")
+	private Long codIdColaborador;
+
+	@Column(name = "CRIADO_EM", nullable = false)
+	private Instant criadoEm;
+
+	public enum Operacao {
+		/** ZADD na fila, índice de senhas ativas e snapshot */
+		ENQUEUE,
+		/** ZREM da fila, snapshot e (se ainda apontar para a senha) índice de senhas ativas */
+		REMOVE,
+		/** SADD do médico no conjunto de pontos abertos do schema */
+		PONTO_ABERTO,
+		/** SREM do médico do conjunto de pontos abertos do schema */
+		PONTO_FECHADO
+	}
+}
@@ -0,0 +1,192 @@
+package com.sus.fiap.consumer.persistence.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prepara {@code ATENDIMENTOS_UNIDADE} em cada schema {@code und_atdX} (somente PostgreSQL); o {@code ddl-auto}
+ * só enxerga o schema padrão.
+ * <ul>
+ *   <li>Sequence: cria se faltar, garante o incremento do allocationSize e, se o próximo bloco alocado colidir com o
+ *   maior id da tabela (bases que usavam IDENTITY), avança a sequence para depois dele.</li>
+ *   <li>Índices parciais das senhas ativas: por paciente, que cobre {@code findAtivosByPaciente} (index-only scan),
+ *   e por nrSeq, que cobre a varredura por keyset do reconciliador da fila ({@code findAtivosDepoisDe}).
+ *   A criação bloqueia escritas na tabela enquanto o índice é montado; em tabelas grandes crie antes, com
+ *   {@code CREATE INDEX CONCURRENTLY} e o mesmo nome, e aqui ele é apenas reconhecido.</li>
+ *   <li>Tabela {@code REDIS_OUTBOX} (mutações da fila pendentes de aplicar no Redis), com as mesmas colunas que o
+ *   {@code ddl-auto} gera no schema padrão. Tabelas de versões anteriores recebem as operações de ponto: coluna do
+ *   colaborador, nrSeq opcional e o CHECK das operações refeito (o {@code ddl-auto update} não altera restrições).</li>
+ * </ul>
+ * Roda antes dos listeners (depende do EntityManagerFactory) sob advisory lock, para instâncias subindo juntas.
+ */
+@Component
+public class AtendimentosSchemaMigration implements InitializingBean {
+	private static final Logger log = LoggerFactory.getLogger(AtendimentosSchemaMigration.class);
+
+	private static final String TABLE = "atendimentos_unidade";
+	private static final String SEQUENCE = AtendimentosUnidade.ID_SEQUENCE.toLowerCase(Locale.ROOT);
+	private static final int STEP = AtendimentosUnidade.ID_ALLOCATION_SIZE;
+	private static final String INDEX_PACIENTE_ATIVO = "ix_atendimentos_paciente_ativo";
+	// Mesmo predicado (literal) da consulta; os estados finais 6, 90 e 91 ficam de fora
+	private static final String INDEX_PACIENTE_ATIVO_DEF = "(cod_cadastro_sus_paciente, nr_seq_atendimento)"
+			+ " INCLUDE (nr_senha_atendimento, cod_estado_senha) WHERE cod_estado_senha NOT IN (6, 90, 91)";
+	private static final String INDEX_ATIVO = "ix_atendimentos_ativo";
+	private static final String INDEX_ATIVO_DEF = "(nr_seq_atendimento)"
+			+ " INCLUDE (cod_tipo_priorizacao) WHERE cod_estado_senha NOT IN (6, 90, 91)";
+	private static final String OUTBOX_TABLE = "redis_outbox";
+	private static final String OUTBOX_OPERACOES = "('ENQUEUE', 'REMOVE', 'PONTO_ABERTO', 'PONTO_FECHADO')";
+	// nome que o PostgreSQL dá ao CHECK da coluna (aqui e no ddl-auto)
+	private static final String OUTBOX_OPERACAO_CHECK = "redis_outbox_operacao_check";
+	private static final String OUTBOX_COLUMNS = "(id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+			+ " operacao varchar(16) NOT NULL CHECK (operacao IN " + OUTBOX_OPERACOES + "),"
+			+ " unidade_atendimento varchar(255) NOT NULL,"
+			+ " nr_seq_atendimento bigint,"
+			+ " nr_senha_atendimento integer,"
+			+ " cod_cadastro_sus_paciente bigint,"
+			+ " cod_tipo_priorizacao integer,"
+			+ " cod_estado_senha integer,"
+			+ " cod_id_colaborador bigint,"
+			+ " criado_em timestamp(6) with time zone NOT NULL)";
+
+	private final DataSource dataSource;
+	private final boolean enabled;
+
+	public AtendimentosSchemaMigration(
+			DataSource dataSource,
+			EntityManagerFactory entityManagerFactory,
+			@Value("${consumer.db.schema-migration.enabled:true}") boolean enabled
+	) {
+		// entityManagerFactory: só para rodar depois do ddl-auto
+		this.dataSource = dataSource;
+		this.enabled = enabled;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws SQLException {
+		if (!enabled) {
+			return;
+		}
+		try (Connection connection = dataSource.getConnection()) {
+			String produto = connection.getMetaData().getDatabaseProductName();
+			if (!"PostgreSQL".equalsIgnoreCase(produto)) {
+				log.debug("Migração do schema de atendimentos ignorada: banco {}", produto);
+				return;
+			}
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				try (Statement st = connection.createStatement()) {
+					st.execute("SELECT pg_advisory_xact_lock(hashtext('" + SEQUENCE + "'))");
+				}
+				for (String schema : tenantSchemas(connection)) {
+					migrateSequence(connection, schema);
+					createIndexes(connection, schema);
+					createOutbox(connection, schema);
+				}
+				connection.commit();
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	private static List<String> tenantSchemas(Connection connection) throws SQLException {
+		List<String> schemas = new ArrayList<>();
+		try (PreparedStatement ps = connection.prepareStatement(
+				"SELECT table_schema FROM information_schema.tables WHERE table_name = ? AND table_schema LIKE 'und\\_atd%' ORDER BY 1")) {
+			ps.setString(1, TABLE);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					schemas.add(rs.getString(1));
+				}
+			}
+		}
+		return schemas;
+	}
+
+	private static void migrateSequence(Connection connection, String schema) throws SQLException {
+		String seq = quote(schema) + "." + SEQUENCE;
+		try (Statement st = connection.createStatement()) {
+			st.execute("CREATE SEQUENCE IF NOT EXISTS " + seq + " INCREMENT BY " + STEP);
+			st.execute("ALTER SEQUENCE " + seq + " INCREMENT BY " + STEP);
+		}
+		// próximo nextval = last_value (+ STEP se já chamado); o otimizador pooled usa [nextval - STEP + 1, nextval]
+		String sql = "SELECT setval('" + seq.replace("'", "''") + "', m.max_id + " + STEP + ", false), m.max_id"
+				+ " FROM (SELECT COALESCE(MAX(nr_seq_atendimento), 0) AS max_id FROM " + quote(schema) + "." + TABLE + ") m, " + seq + " s"
+				+ " WHERE (CASE WHEN s.is_called THEN s.last_value + " + STEP + " ELSE s.last_value END) - " + (STEP - 1) + " <= m.max_id";
+		try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+			if (rs.next()) {
+				log.info("Sequence de atendimentos alinhada: schema={}, maiorId={}, proximoBloco={}",
+						schema, rs.getLong(2), rs.getLong(2) + 1);
+			}
+		}
+	}
+
+	private static void createIndexes(Connection connection, String schema) throws SQLException {
+		createIndex(connection, schema, INDEX_PACIENTE_ATIVO, INDEX_PACIENTE_ATIVO_DEF);
+		createIndex(connection, schema, INDEX_ATIVO, INDEX_ATIVO_DEF);
+	}
+
+	private static void createIndex(Connection connection, String schema, String name, String definition) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+			ps.setString(1, quote(schema) + "." + name);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next() && rs.getBoolean(1)) {
+					return;
+				}
+			}
+		}
+		try (Statement st = connection.createStatement()) {
+			st.execute("CREATE INDEX IF NOT EXISTS " + name + " ON " + quote(schema) + "." + TABLE + " " + definition);
+		}
+		log.info("Índice de senhas ativas criado: schema={}, indice={}", schema, name);
+	}
+
+	private static void createOutbox(Connection connection, String schema) throws SQLException {
+		String table = quote(schema) + "." + OUTBOX_TABLE;
+		try (Statement st = connection.createStatement()) {
+			st.execute("CREATE TABLE IF NOT EXISTS " + table + " " + OUTBOX_COLUMNS);
+		}
+		try (PreparedStatement ps = connection.prepareStatement("SELECT pg_get_constraintdef(c.oid) LIKE '%PONTO_FECHADO%'"
+				+ " FROM pg_constraint c WHERE c.conrelid = to_regclass(?) AND c.conname = ?")) {
+			ps.setString(1, table);
+			ps.setString(2, OUTBOX_OPERACAO_CHECK);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next() && rs.getBoolean(1)) {
+					return;
+				}
+			}
+		}
+		try (Statement st = connection.createStatement()) {
+			st.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS cod_id_colaborador bigint,"
+					+ " ALTER COLUMN nr_seq_atendimento DROP NOT NULL,"
+					+ " DROP CONSTRAINT IF EXISTS " + OUTBOX_OPERACAO_CHECK + ","
+					+ " ADD CONSTRAINT " + OUTBOX_OPERACAO_CHECK + " CHECK (operacao IN " + OUTBOX_OPERACOES + ")");
+		}
+		log.info("Outbox do Redis com operações de ponto: schema={}", schema);
+	}
+
+	private static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,7 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+/**
+ * Senha ativa do paciente só com as colunas usadas nas regras de retirada (sem entidade nem associações lazy).
+ */
+public record AtendimentoAtivo(Long nrSeqAtendimento, Integer nrSenhaAtendimento, Integer codEstadoSenha) {
+}
@@ -0,0 +1,7 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+/**
+ * Projeção de uma senha ativa com o necessário para calcular o score na fila do Redis.
+ */
+public record AtendimentoFila(Long nrSeqAtendimento, Integer codTipoPriorizacao) {
+}
@@ -2,20 +2,45 @@ package com.sus.fiap.consumer.persistence.repository;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface AtendimentosUnidadeRepository extends JpaRepository<AtendimentosUnidade, Long> {
-	Optional<AtendimentosUnidade> findByNrSenhaAtendimentoAndPacienteCodCadastroSusPaciente(Integer nrSenhaAtendimento, Long codCadastroSusPaciente);
+	/**
+	 * Senhas ativas do paciente, da mais antiga para a mais nova, em uma consulta.
+	 * Os estados finais (6, 90, 91) vão como literais para o planner casar com o índice parcial
+	 * {@code IX_ATENDIMENTOS_PACIENTE_ATIVO} (criado por {@code AtendimentosSchemaMigration}) e fazer index-only scan.
+	 */
+	@Query("select new com.sus.fiap.consumer.persistence.repository.AtendimentoAtivo(a.nrSeqAtendimento, a.nrSenhaAtendimento, a.estadoSenha.codTipoEstado)"
+			+ " from AtendimentosUnidade a where a.paciente.codCadastroSusPaciente = :codCadastroSusPaciente"
+			+ " and a.estadoSenha.codTipoEstado not in (6, 90, 91) order by a.nrSeqAtendimento")
+	List<AtendimentoAtivo> findAtivosByPaciente(@Param("codCadastroSusPaciente") Long codCadastroSusPaciente);
 
-	boolean existsByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotIn(Long codCadastroSusPaciente, Collection<Integer> estadosFinais);
+	/**
+	 * Página (keyset) das senhas ativas da unidade com {@code nrSeqAtendimento > depoisDe}, em ordem de nrSeq.
+	 * Coberta pelo índice parcial {@code IX_ATENDIMENTOS_ATIVO} (criado por {@code AtendimentosSchemaMigration}).
+	 */
+	@Query("select new com.sus.fiap.consumer.persistence.repository.AtendimentoFila(a.nrSeqAtendimento, a.tipoPriorizacao.codTipoPriorizacao)"
+			+ " from AtendimentosUnidade a where a.estadoSenha.codTipoEstado not in (6, 90, 91) and a.nrSeqAtendimento > :depoisDe"
+			+ " order by a.nrSeqAtendimento")
+	List<AtendimentoFila> findAtivosDepoisDe(@Param("depoisDe") long depoisDe, Limit limit);
+
+	/**
+	 * Carrega as senhas com lock compartilhado ({@code FOR SHARE} no PostgreSQL): espera transações que as estejam
+	 * alterando e impede alterações até o fim da transação corrente.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_READ)
+	@Query("select a from AtendimentosUnidade a where a.nrSeqAtendimento in :ids")
+	List<AtendimentosUnidade> findAllByIdForShare(@Param("ids") Collection<Long> ids);
 
-	List<AtendimentosUnidade> findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(
-			Long codCadastroSusPaciente,
-			Collection<Integer> estadosFinais);
+	boolean existsByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotIn(Long codCadastroSusPaciente, Collection<Integer> estadosFinais);
 
 	long countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(
 			Collection<Integer> estadosFinais,
@@ -0,0 +1,17 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+import java.util.Locale;
+
+/**
+ * Colaborador com a função já resolvida (uma consulta, sem lazy load de {@code FUNCOES_COLAB_UNIDADE}).
+ */
+public record ColaboradorFuncao(Long codIdColaborador, Integer codIdFuncao, String nomeFuncao) {
+
+	public boolean isMedico() {
+		if (nomeFuncao == null) {
+			return false;
+		}
+		String nome = nomeFuncao.trim().toUpperCase(Locale.ROOT);
+		return nome.equals("MEDICO") || nome.equals("MÉDICO");
+	}
+}
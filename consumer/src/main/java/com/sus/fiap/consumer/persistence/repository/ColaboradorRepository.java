@@ -1,8 +1,16 @@
 package com.sus.fiap.consumer.persistence.repository;
 
+import java.util.Optional;
+
 import com.sus.fiap.consumer.persistence.entity.Colaborador;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ColaboradorRepository extends JpaRepository<Colaborador, Long> {
+
+	@Query("select new com.sus.fiap.consumer.persistence.repository.ColaboradorFuncao(c.codIdColaborador, f.codIdFuncao, f.nomeFuncao)"
+			+ " from Colaborador c left join c.funcao f where c.codIdColaborador = :codIdColaborador")
+	Optional<ColaboradorFuncao> findFuncaoById(@Param("codIdColaborador") Long codIdColaborador);
 }
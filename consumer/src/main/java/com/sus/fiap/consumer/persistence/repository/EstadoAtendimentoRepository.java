@@ -5,5 +5,5 @@ import com.sus.fiap.consumer.persistence.entity.EstadoAtendimentoId;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface EstadoAtendimentoRepository extends JpaRepository<EstadoAtendimento, EstadoAtendimentoId> {
+public interface EstadoAtendimentoRepository extends JpaRepository<EstadoAtendimento, EstadoAtendimentoId>, EstadoAtendimentoRepositoryCustom {
 }
@@ -0,0 +1,12 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+import com.sus.fiap.consumer.persistence.entity.EstadoAtendimentoId;
+
+public interface EstadoAtendimentoRepositoryCustom {
+	/**
+	 * Grava a linha de histórico com {@code INSERT ... ON CONFLICT DO NOTHING} (sem consultar antes).
+	 * Dentro de uma transação as linhas são acumuladas e enviadas em um único lote JDBC no commit,
+	 * depois do flush dos atendimentos.
+	 */
+	void insertIgnoringDuplicates(EstadoAtendimentoId id);
+}
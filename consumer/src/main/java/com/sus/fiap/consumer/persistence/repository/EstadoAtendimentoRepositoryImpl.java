@@ -0,0 +1,71 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sus.fiap.consumer.persistence.entity.EstadoAtendimentoId;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class EstadoAtendimentoRepositoryImpl implements EstadoAtendimentoRepositoryCustom {
+	private static final String INSERT_SQL = "INSERT INTO ESTADO_ATENDIMENTO (NR_SEQ_ATENDIMENTO, COD_TIPO_ESTADO, TIMESTAMP_ESTADO)"
+			+ " VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+
+	private final EntityManager entityManager;
+
+	EstadoAtendimentoRepositoryImpl(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	@Override
+	public void insertIgnoringDuplicates(EstadoAtendimentoId id) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			write(List.of(id));
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		List<EstadoAtendimentoId> pendentes = (List<EstadoAtendimentoId>) TransactionSynchronizationManager.getResource(this);
+		if (pendentes == null) {
+			List<EstadoAtendimentoId> novos = new ArrayList<>();
+			TransactionSynchronizationManager.bindResource(this, novos);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					// os atendimentos pendentes na sessão precisam existir antes do histórico
+					entityManager.flush();
+					write(novos);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(EstadoAtendimentoRepositoryImpl.this);
+				}
+			});
+			pendentes = novos;
+		}
+		pendentes.add(id);
+	}
+
+	private void write(List<EstadoAtendimentoId> ids) {
+		if (ids.isEmpty()) {
+			return;
+		}
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+				for (EstadoAtendimentoId id : ids) {
+					ps.setLong(1, id.getNrSeqAtendimento());
+					ps.setInt(2, id.getCodTipoEstado());
+					ps.setObject(3, OffsetDateTime.ofInstant(id.getTimestampEstado(), ZoneOffset.UTC));
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+		});
+	}
+}
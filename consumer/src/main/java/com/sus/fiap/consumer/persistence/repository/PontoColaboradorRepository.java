@@ -1,13 +1,32 @@
 package com.sus.fiap.consumer.persistence.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import com.sus.fiap.consumer.persistence.entity.PontoColaborador;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface PontoColaboradorRepository extends JpaRepository<PontoColaborador, Integer> {
 	Optional<PontoColaborador> findFirstByColaboradorCodIdColaboradorAndHorarioSaidaIsNullOrderByHorarioEntradaDesc(Long codIdColaborador);
 
 	long countByHorarioSaidaIsNull();
+
+	/**
+	 * Colaboradores com ponto aberto (reconciliação de {@code ponto:abertos:<schema>}).
+	 */
+	@Query("select distinct p.colaborador.codIdColaborador from PontoColaborador p where p.horarioSaida is null")
+	List<Long> findColaboradoresComPontoAberto();
+
+	/**
+	 * Dos colaboradores informados, os que têm ponto aberto, com lock compartilhado: espera uma saída em andamento.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_READ)
+	@Query("select p from PontoColaborador p where p.colaborador.codIdColaborador in :ids and p.horarioSaida is null")
+	List<PontoColaborador> findAbertosByColaboradorForShare(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,19 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+import java.util.List;
+
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface RedisOutboxRepository extends JpaRepository<RedisOutbox, Long>, RedisOutboxRepositoryCustom {
+	List<RedisOutbox> findByOrderByIdAsc(Limit limit);
+
+	/**
+	 * Advisory lock (PostgreSQL) do relay no schema atual até o fim da transação; {@code false} se outra instância já o tem.
+	 */
+	@Query(value = "SELECT pg_try_advisory_xact_lock(hashtext(current_schema() || '.redis_outbox'))", nativeQuery = true)
+	boolean tryLockRelay();
+}
@@ -0,0 +1,11 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+
+public interface RedisOutboxRepositoryCustom {
+	/**
+	 * Dentro de uma transação, acumula a linha e grava todas de uma vez (um INSERT em lote) antes do commit;
+	 * fora de transação grava na hora. O {@code ID} (identity) segue a ordem das chamadas.
+	 */
+	void append(RedisOutbox entry);
+}
@@ -0,0 +1,86 @@
+package com.sus.fiap.consumer.persistence.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class RedisOutboxRepositoryImpl implements RedisOutboxRepositoryCustom {
+	private static final String INSERT_SQL = "INSERT INTO REDIS_OUTBOX (OPERACAO, UNIDADE_ATENDIMENTO, NR_SEQ_ATENDIMENTO,"
+			+ " NR_SENHA_ATENDIMENTO, COD_CADASTRO_SUS_PACIENTE, COD_TIPO_PRIORIZACAO, COD_ESTADO_SENHA, COD_ID_COLABORADOR, CRIADO_EM)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final EntityManager entityManager;
+
+	RedisOutboxRepositoryImpl(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	@Override
+	public void append(RedisOutbox entry) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			write(List.of(entry));
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		List<RedisOutbox> pendentes = (List<RedisOutbox>) TransactionSynchronizationManager.getResource(this);
+		if (pendentes == null) {
+			List<RedisOutbox> novos = new ArrayList<>();
+			TransactionSynchronizationManager.bindResource(this, novos);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					write(novos);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(RedisOutboxRepositoryImpl.this);
+				}
+			});
+			pendentes = novos;
+		}
+		pendentes.add(entry);
+	}
+
+	private void write(List<RedisOutbox> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+				for (RedisOutbox entry : entries) {
+					ps.setString(1, entry.getOperacao().name());
+					ps.setString(2, entry.getUnidadeAtendimento());
+					setNullable(ps, 3, entry.getNrSeqAtendimento(), Types.BIGINT);
+					setNullable(ps, 4, entry.getNrSenhaAtendimento(), Types.INTEGER);
+					setNullable(ps, 5, entry.getCodCadastroSusPaciente(), Types.BIGINT);
+					setNullable(ps, 6, entry.getCodTipoPriorizacao(), Types.INTEGER);
+					setNullable(ps, 7, entry.getCodEstadoSenha(), Types.INTEGER);
+					setNullable(ps, 8, entry.getCodIdColaborador(), Types.BIGINT);
+					ps.setObject(9, OffsetDateTime.ofInstant(entry.getCriadoEm(), ZoneOffset.UTC));
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+		});
+	}
+
+	private static void setNullable(PreparedStatement ps, int index, Number value, int sqlType) throws SQLException {
+		if (value == null) {
+			ps.setNull(index, sqlType);
+		} else {
+			ps.setObject(index, value, sqlType);
+		}
+	}
+}
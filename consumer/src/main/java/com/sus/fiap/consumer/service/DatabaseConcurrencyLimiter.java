@@ -0,0 +1,89 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limita quantas threads usam o banco ao mesmo tempo ao tamanho do pool de conexões.
+ * Com virtual threads o número de threads deixa de ser o limite natural: sem isto, centenas de requisições ou
+ * registros esperariam dentro do Hikari até o {@code connection-timeout}. Aqui a espera é uma fila justa do semáforo,
+ * que não prende a thread carregadora da virtual thread.
+ * Reentrante por thread: um bloco aninhado na mesma thread reutiliza a permissão já obtida.
+ */
+@Component
+public class DatabaseConcurrencyLimiter {
+	private final Semaphore permits;
+	private final int maxConcurrency;
+	private final long acquireTimeoutMillis;
+	private final ThreadLocal<Boolean> holding = new ThreadLocal<>();
+	private final Counter rejected;
+
+	public DatabaseConcurrencyLimiter(
+			MeterRegistry meterRegistry,
+			@Value("${consumer.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+			@Value("${consumer.db.acquire-timeout:30s}") Duration acquireTimeout
+	) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("consumer.db.max-concurrency deve ser >= 1: " + maxConcurrency);
+		}
+		this.permits = new Semaphore(maxConcurrency, true);
+		this.maxConcurrency = maxConcurrency;
+		this.acquireTimeoutMillis = acquireTimeout.toMillis();
+		Gauge.builder("consumer.db.concurrency.in-use", this, l -> l.maxConcurrency - l.permits.availablePermits()).register(meterRegistry);
+		Gauge.builder("consumer.db.concurrency.waiting", permits, Semaphore::getQueueLength).register(meterRegistry);
+		this.rejected = Counter.builder("consumer.db.concurrency.rejected").register(meterRegistry);
+	}
+
+	public void run(Runnable action) {
+		call(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Executa {@code action} com uma permissão de acesso ao banco.
+	 * @throws CannotGetJdbcConnectionException se a permissão não for obtida dentro de {@code consumer.db.acquire-timeout}
+	 */
+	public <T> T call(Supplier<T> action) {
+		if (holding.get() != null) {
+			return action.get();
+		}
+		acquire();
+		holding.set(Boolean.TRUE);
+		try {
+			return action.get();
+		} finally {
+			holding.remove();
+			permits.release();
+		}
+	}
+
+	public int maxConcurrency() {
+		return maxConcurrency;
+	}
+
+	private void acquire() {
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CannotGetJdbcConnectionException("Interrompido aguardando permissão de acesso ao banco");
+		}
+		if (!acquired) {
+			rejected.increment();
+			throw new CannotGetJdbcConnectionException("Sem permissão de acesso ao banco após " + acquireTimeoutMillis
+					+ "ms (consumer.db.max-concurrency=" + maxConcurrency + ")");
+		}
+	}
+}
@@ -1,52 +1,191 @@
 package com.sus.fiap.consumer.service;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.UUID;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.model.EventPayload;
 import com.sus.fiap.consumer.model.EventType;
 
 import org.springframework.stereotype.Component;
 
+/**
+ * Decodifica o envelope em uma única passada de tokens ({@link JsonParser}), sem montar árvore {@code JsonNode}.
+ * Apenas os campos conhecidos do payload são lidos; os demais são descartados com {@code skipChildren}.
+ */
 @Component
 public class EventEnvelopeParser {
-	private final ObjectMapper objectMapper;
+	// multiplicador para converter uma fração de N dígitos (índice) em nanossegundos
+	private static final int[] NANO_SCALE = {0, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+
+	private final JsonFactory jsonFactory;
 
 	public EventEnvelopeParser(ObjectMapper objectMapper) {
-		this.objectMapper = objectMapper;
+		this.jsonFactory = objectMapper.getFactory();
+	}
+
+	/**
+	 * Valor do registro Kafka conforme o {@code value-deserializer} configurado: {@code byte[]} (padrão),
+	 * {@link ByteBuffer} ou {@link String}.
+	 */
+	public EventEnvelope parseValue(Object value) {
+		return switch (value) {
+			case byte[] bytes -> parse(bytes);
+			case ByteBuffer buffer -> parse(buffer);
+			case String text -> parse(text);
+			case null -> throw new IllegalArgumentException("Evento Kafka inválido (envelope): mensagem vazia");
+			default -> throw new IllegalArgumentException(
+					"Evento Kafka inválido (envelope): tipo de valor não suportado " + value.getClass().getName());
+		};
 	}
 
 	public EventEnvelope parse(String rawJson) {
-		try {
-			JsonNode root = objectMapper.readTree(rawJson);
-			UUID eventId = UUID.fromString(requiredText(root, "eventId"));
-			EventType type = EventType.valueOf(requiredText(root, "type"));
-			Instant occurredAt = parseInstantRequired(root, "occurredAt");
-			JsonNode payload = normalizePayload(root);
-			return new EventEnvelope(eventId, type, occurredAt, payload);
+		try (JsonParser parser = jsonFactory.createParser(rawJson)) {
+			return readEnvelope(parser);
 		} catch (Exception e) {
-			String reason = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
-			throw new IllegalArgumentException("Evento Kafka inválido (envelope): " + reason, e);
+			throw invalid(e);
 		}
 	}
 
-	private static Instant parseInstantRequired(JsonNode node, String field) {
-		JsonNode child = node.get(field);
-		if (child == null || child.isNull()) {
-			throw new IllegalArgumentException("Campo obrigatório ausente: " + field);
+	/**
+	 * Lê direto dos bytes UTF-8 do registro, sem materializar a mensagem como {@link String}.
+	 */
+	public EventEnvelope parse(byte[] rawJson) {
+		try (JsonParser parser = jsonFactory.createParser(rawJson)) {
+			return readEnvelope(parser);
+		} catch (Exception e) {
+			throw invalid(e);
 		}
-		if (child.isNumber()) {
-			return instantFromEpochNumber(child.asDouble());
+	}
+
+	public EventEnvelope parse(ByteBuffer rawJson) {
+		if (!rawJson.hasArray()) {
+			byte[] copy = new byte[rawJson.remaining()];
+			rawJson.duplicate().get(copy);
+			return parse(copy);
 		}
-		String text = child.asText();
-		if (text == null || text.isBlank()) {
-			throw new IllegalArgumentException("Campo obrigatório ausente: " + field);
+		try (JsonParser parser = jsonFactory.createParser(
+				rawJson.array(), rawJson.arrayOffset() + rawJson.position(), rawJson.remaining())) {
+			return readEnvelope(parser);
+		} catch (Exception e) {
+			throw invalid(e);
+		}
+	}
+
+	private static IllegalArgumentException invalid(Exception e) {
+		String reason = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+		return new IllegalArgumentException("Evento Kafka inválido (envelope): " + reason, e);
+	}
+
+	/**
+	 * Suporta 2 formatos:
+	 * 1) Envelope padrão com `payload` (objeto).
+	 * 2) Envelope "flattened" (sem `payload`), onde campos adicionais no root são tratados como payload.
+	 */
+	private static EventEnvelope readEnvelope(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IllegalArgumentException("Envelope deve ser um objeto JSON");
+		}
+		String eventId = null;
+		String type = null;
+		Instant occurredAt = null;
+		PayloadFields root = new PayloadFields();
+		PayloadFields nested = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.currentName();
+			JsonToken token = parser.nextToken();
+			switch (field) {
+				case "eventId" -> eventId = text(parser);
+				case "type" -> type = text(parser);
+				case "occurredAt" -> occurredAt = instant(parser);
+				case "payload" -> {
+					if (token == JsonToken.START_OBJECT) {
+						nested = new PayloadFields();
+						readPayloadObject(parser, nested);
+					} else if (token != JsonToken.VALUE_NULL) {
+						// payload presente, mas não é objeto: nenhum campo conhecido
+						parser.skipChildren();
+						nested = new PayloadFields();
+					}
+				}
+				default -> root.read(field, parser);
+			}
+		}
+
+		UUID id = UUID.fromString(required(eventId, "eventId"));
+		EventType eventType = EventType.valueOf(required(type, "type"));
+		if (occurredAt == null) {
+			throw new IllegalArgumentException("Campo obrigatório ausente: occurredAt");
+		}
+		EventPayload payload = nested != null ? nested.toPayload() : root.toPayload();
+		return new EventEnvelope(id, eventType, occurredAt, payload);
+	}
+
+	private static void readPayloadObject(JsonParser parser, PayloadFields fields) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.currentName();
+			parser.nextToken();
+			fields.read(field, parser);
+		}
+	}
+
+	/**
+	 * Valor escalar como texto; objetos/arrays são descartados e vazios viram {@code null}.
+	 */
+	private static String text(JsonParser parser) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return null;
+		}
+		if (token == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		String text = parser.getText();
+		return (text == null || text.isBlank()) ? null : text;
+	}
+
+	private static Long longValue(JsonParser parser, String field) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			return parser.getLongValue();
+		}
+		if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+			return (long) parser.getDoubleValue();
+		}
+		String text = text(parser);
+		if (text == null) {
+			return null;
 		}
 		try {
-			return Instant.parse(text);
+			return Long.parseLong(text.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Campo numérico inválido no payload: " + field, e);
+		}
+	}
+
+	private static Instant instant(JsonParser parser) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+			return instantFromEpochNumber(parser.getDoubleValue());
+		}
+		String text = text(parser);
+		if (text == null) {
+			return null;
+		}
+		try {
+			Instant utc = parseUtcIsoInstant(text);
+			return utc != null ? utc : Instant.parse(text);
 		} catch (Exception ignored) {
 			// aceita epoch em string (inclusive notação científica)
 			double epoch = Double.parseDouble(text);
@@ -70,38 +209,86 @@ public class EventEnvelopeParser {
 	}
 
 	/**
-	 * Suporta 2 formatos:
-	 * 1) Envelope padrão com `payload` (objeto).
-	 * 2) Envelope "flattened" (sem `payload`), onde campos adicionais no root são tratados como payload.
+	 * Caminho rápido para o formato que os producers usam ({@code yyyy-MM-ddTHH:mm:ss[.fração]Z}), sem passar pelo
+	 * {@code DateTimeFormatter}. Retorna {@code null} para qualquer outro formato (tratado por {@link Instant#parse}).
 	 */
-	private JsonNode normalizePayload(JsonNode root) {
-		JsonNode payload = root.get("payload");
-		if (payload != null && !payload.isNull()) {
-			return payload;
-		}
-
-		ObjectNode objectPayload = objectMapper.createObjectNode();
-		if (root != null && root.isObject()) {
-			root.fields().forEachRemaining(entry -> {
-				String key = entry.getKey();
-				if ("eventId".equals(key) || "type".equals(key) || "occurredAt".equals(key) || "payload".equals(key)) {
-					return;
-				}
-				// Campos auxiliares que alguns producers enviam no root (não fazem parte do payload do domínio)
-				if ("topic".equals(key) || "key".equals(key)) {
-					return;
-				}
-				objectPayload.set(key, entry.getValue());
-			});
+	private static Instant parseUtcIsoInstant(String text) {
+		int n = text.length();
+		if (n < 20 || n > 30 || text.charAt(n - 1) != 'Z' || text.charAt(4) != '-' || text.charAt(7) != '-'
+				|| text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+			return null;
+		}
+		int year = digits(text, 0, 4);
+		int month = digits(text, 5, 7);
+		int day = digits(text, 8, 10);
+		int hour = digits(text, 11, 13);
+		int minute = digits(text, 14, 16);
+		int second = digits(text, 17, 19);
+		if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+			return null;
+		}
+		int nanos = 0;
+		if (n > 20) {
+			int fractionDigits = n - 21;
+			if (text.charAt(19) != '.' || fractionDigits < 1) {
+				return null;
+			}
+			int fraction = digits(text, 20, n - 1);
+			if (fraction < 0) {
+				return null;
+			}
+			nanos = fraction * NANO_SCALE[fractionDigits];
+		}
+		try {
+			return LocalDateTime.of(year, month, day, hour, minute, second, nanos).toInstant(ZoneOffset.UTC);
+		} catch (DateTimeException e) {
+			return null;
+		}
+	}
+
+	private static int digits(String text, int from, int to) {
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			int d = text.charAt(i) - '0';
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			value = value * 10 + d;
 		}
-		return objectPayload;
+		return value;
 	}
 
-	private static String requiredText(JsonNode node, String field) {
-		JsonNode child = node.get(field);
-		if (child == null || child.isNull() || child.asText().isBlank()) {
+	private static String required(String value, String field) {
+		if (value == null) {
 			throw new IllegalArgumentException("Campo obrigatório ausente: " + field);
 		}
-		return child.asText();
+		return value;
+	}
+
+	private static final class PayloadFields {
+		private String unidadeAtendimento;
+		private Long nrSenhaAtendimento;
+		private Long codCadastroSusPaciente;
+		private Long nrSeqAtendimento;
+		private Long codIdColaborador;
+		private Instant timestamp;
+
+		void read(String field, JsonParser parser) throws IOException {
+			switch (field) {
+				case "unidadeAtendimento" -> unidadeAtendimento = text(parser);
+				case "nrSenhaAtendimento" -> nrSenhaAtendimento = longValue(parser, field);
+				case "codCadastroSusPaciente" -> codCadastroSusPaciente = longValue(parser, field);
+				case "nrSeqAtendimento" -> nrSeqAtendimento = longValue(parser, field);
+				case "codIdColaborador" -> codIdColaborador = longValue(parser, field);
+				case "timestamp" -> timestamp = instant(parser);
+				// demais campos (inclusive `topic`/`key` que alguns producers enviam no root) não fazem parte do payload
+				default -> parser.skipChildren();
+			}
+		}
+
+		EventPayload toPayload() {
+			return new EventPayload(unidadeAtendimento, nrSenhaAtendimento, codCadastroSusPaciente,
+					nrSeqAtendimento, codIdColaborador, timestamp);
+		}
 	}
 }
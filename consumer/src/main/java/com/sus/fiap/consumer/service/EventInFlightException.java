@@ -0,0 +1,35 @@
+package com.sus.fiap.consumer.service;
+
+import java.util.UUID;
+
+/**
+ * O evento está reservado (modo "claim") por uma transação que ainda não terminou. O offset não pode ser confirmado:
+ * o registro é tentado de novo até a reserva virar marca de processado, ser liberada no rollback ou expirar.
+ */
+public class EventInFlightException extends RuntimeException {
+	private final UUID eventId;
+
+	public EventInFlightException(UUID eventId) {
+		super("Evento reservado por outra transação em andamento: " + eventId);
+		this.eventId = eventId;
+	}
+
+	public UUID getEventId() {
+		return eventId;
+	}
+
+	/**
+	 * Procura a exceção na cadeia de causas (o container do Kafka embrulha a exceção do listener).
+	 */
+	public static boolean isCause(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof EventInFlightException) {
+				return true;
+			}
+			if (t.getCause() == t) {
+				return false;
+			}
+		}
+		return false;
+	}
+}
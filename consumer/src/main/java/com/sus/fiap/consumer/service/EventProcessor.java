@@ -3,15 +3,23 @@ package com.sus.fiap.consumer.service;
 import java.time.Instant;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.model.EventPayload;
+import com.sus.fiap.consumer.model.EventType;
 
 import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
 import com.sus.fiap.consumer.persistence.entity.CadastroSus;
-import com.sus.fiap.consumer.persistence.entity.EstadoAtendimento;
 import com.sus.fiap.consumer.persistence.entity.EstadoAtendimentoId;
 import com.sus.fiap.consumer.persistence.entity.PontoColaborador;
+import com.sus.fiap.consumer.persistence.repository.AtendimentoAtivo;
 import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
 import com.sus.fiap.consumer.persistence.repository.CadastroSusRepository;
 import com.sus.fiap.consumer.persistence.repository.ColaboradorRepository;
@@ -49,46 +57,55 @@ public class EventProcessor {
 
 	private final RedisIdempotencyService idempotencyService;
 	private final CadastroSusRepository cadastroSusRepository;
+	private final PatientProfileCache patientProfileCache;
 	private final TipoPriorizacaoRepository tipoPriorizacaoRepository;
 	private final TipoEstadoSenhaRepository tipoEstadoSenhaRepository;
 	private final AtendimentosUnidadeRepository atendimentosUnidadeRepository;
 	private final EstadoAtendimentoRepository estadoAtendimentoRepository;
 	private final ColaboradorRepository colaboradorRepository;
+	private final ReferenceDataCache referenceDataCache;
 	private final PontoColaboradorRepository pontoColaboradorRepository;
-	private final RedisQueueService redisQueueService;
+	private final RedisQueueOutbox redisQueueOutbox;
 	private final UnidadeSchemaResolver unidadeSchemaResolver;
-	private final TempoAtendimentoRedisService tempoAtendimentoRedisService;
+	private final MetricsRecomputeScheduler metricsRecomputeScheduler;
+	private final QueueDepthTracker queueDepthTracker;
 
 	public EventProcessor(
 			RedisIdempotencyService idempotencyService,
 			CadastroSusRepository cadastroSusRepository,
+			PatientProfileCache patientProfileCache,
 			TipoPriorizacaoRepository tipoPriorizacaoRepository,
 			TipoEstadoSenhaRepository tipoEstadoSenhaRepository,
 			AtendimentosUnidadeRepository atendimentosUnidadeRepository,
 			EstadoAtendimentoRepository estadoAtendimentoRepository,
 			ColaboradorRepository colaboradorRepository,
+			ReferenceDataCache referenceDataCache,
 			PontoColaboradorRepository pontoColaboradorRepository,
-			RedisQueueService redisQueueService,
+			RedisQueueOutbox redisQueueOutbox,
 			UnidadeSchemaResolver unidadeSchemaResolver,
-			TempoAtendimentoRedisService tempoAtendimentoRedisService
+			MetricsRecomputeScheduler metricsRecomputeScheduler,
+			QueueDepthTracker queueDepthTracker
 	) {
 		this.idempotencyService = idempotencyService;
 		this.cadastroSusRepository = cadastroSusRepository;
+		this.patientProfileCache = patientProfileCache;
 		this.tipoPriorizacaoRepository = tipoPriorizacaoRepository;
 		this.tipoEstadoSenhaRepository = tipoEstadoSenhaRepository;
 		this.atendimentosUnidadeRepository = atendimentosUnidadeRepository;
 		this.estadoAtendimentoRepository = estadoAtendimentoRepository;
 		this.colaboradorRepository = colaboradorRepository;
+		this.referenceDataCache = referenceDataCache;
 		this.pontoColaboradorRepository = pontoColaboradorRepository;
-		this.redisQueueService = redisQueueService;
+		this.redisQueueOutbox = redisQueueOutbox;
 		this.unidadeSchemaResolver = unidadeSchemaResolver;
-		this.tempoAtendimentoRedisService = tempoAtendimentoRedisService;
+		this.metricsRecomputeScheduler = metricsRecomputeScheduler;
+		this.queueDepthTracker = queueDepthTracker;
 	}
 
 	@Transactional
 	public void process(EventEnvelope event) {
 		if (TenantContext.getCurrentTenant() == null) {
-			String unidadeAtendimento = optionalText(event.payload(), "unidadeAtendimento");
+			String unidadeAtendimento = event.payload().unidadeAtendimento();
 			String tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(unidadeAtendimento);
 			TenantContext.setCurrentTenant(tenant);
 		}
@@ -105,15 +122,106 @@ public class EventProcessor {
 		}
 
 		try {
-		if (idempotencyService.isProcessed(event.eventId())) {
+		if (idempotencyService.isClaimFirst()) {
+			RedisIdempotencyService.Claim claim = idempotencyService.tryClaim(event.eventId());
+			if (claim == RedisIdempotencyService.Claim.PROCESSED) {
+				log.debug("Evento já processado (idempotência redis): {}", event.eventId());
+				return;
+			}
+			if (claim == RedisIdempotencyService.Claim.IN_FLIGHT) {
+				// sem retorno normal: o offset não pode ser confirmado enquanto a outra transação não termina
+				throw new EventInFlightException(event.eventId());
+			}
+			runAfterRollback(() -> idempotencyService.releaseClaims(List.of(event.eventId())));
+		} else if (idempotencyService.isProcessed(event.eventId())) {
 			log.debug("Evento já processado (idempotência redis): {}", event.eventId());
 			return;
 		}
 
 		String unidadeForMetrics = resolveUnidadeForMetrics(event.payload());
-		boolean forceMetricsUpdate = event.type() == com.sus.fiap.consumer.model.EventType.MEDICO_ENTRA_NO_PONTO
-				|| event.type() == com.sus.fiap.consumer.model.EventType.MEDICO_SAI_DO_PONTO
-				|| event.type() == com.sus.fiap.consumer.model.EventType.ATENDIMENTO_FINALIZADO;
+		boolean atualizarMetricas = apply(event);
+
+		runAfterCommit(() -> idempotencyService.markProcessed(event.eventId()));
+		if (atualizarMetricas) {
+			runAfterCommit(() -> metricsRecomputeScheduler.markDirty(unidadeForMetrics));
+		}
+		} finally {
+			if (clearInFinally) {
+				TenantContext.clear();
+			}
+		}
+	}
+
+	/**
+	 * Processa um lote de eventos de uma MESMA unidade (tenant) em uma única transação.
+	 * O chamador deve definir o {@link TenantContext} antes da chamada, pois a sessão do Hibernate
+	 * é aberta (e o schema resolvido) no início da transação.
+	 * Eventos repetidos dentro do lote são processados uma única vez e a métrica de cada unidade
+	 * é recalculada uma vez por lote (após o commit).
+	 * @return quantos eventos foram aplicados (sem os já processados e os repetidos no lote)
+	 */
+	@Transactional
+	public int processBatch(List<EventEnvelope> events) {
+		if (TenantContext.getCurrentTenant() == null) {
+			throw new IllegalStateException("TenantContext deve ser definido antes de processar um lote");
+		}
+
+		Set<UUID> ids = new LinkedHashSet<>();
+		for (EventEnvelope event : events) {
+			ids.add(event.eventId());
+		}
+		// Um único round trip ao Redis para o lote inteiro (MGET ou pipeline de SET NX)
+		Set<UUID> pendentes;
+		if (idempotencyService.isClaimFirst()) {
+			Map<UUID, RedisIdempotencyService.Claim> claims = idempotencyService.claimAll(ids);
+			pendentes = new HashSet<>();
+			UUID emAndamento = null;
+			for (Map.Entry<UUID, RedisIdempotencyService.Claim> claim : claims.entrySet()) {
+				if (claim.getValue() == RedisIdempotencyService.Claim.CLAIMED) {
+					pendentes.add(claim.getKey());
+				} else if (claim.getValue() == RedisIdempotencyService.Claim.IN_FLIGHT && emAndamento == null) {
+					emAndamento = claim.getKey();
+				}
+			}
+			Set<UUID> reservados = Set.copyOf(pendentes);
+			runAfterRollback(() -> idempotencyService.releaseClaims(reservados));
+			if (emAndamento != null) {
+				// o rollback libera as reservas deste lote; o listener refaz registro a registro
+				throw new EventInFlightException(emAndamento);
+			}
+		} else {
+			pendentes = new HashSet<>(idempotencyService.filterUnprocessed(ids));
+		}
+
+		List<UUID> processados = new ArrayList<>(pendentes.size());
+		Set<String> unidadesParaMetricas = new LinkedHashSet<>();
+		for (EventEnvelope event : events) {
+			if (!pendentes.remove(event.eventId())) {
+				log.debug("Evento já processado ou repetido no lote: {}", event.eventId());
+				continue;
+			}
+			String unidadeForMetrics = resolveUnidadeForMetrics(event.payload());
+			if (apply(event)) {
+				unidadesParaMetricas.add(unidadeForMetrics);
+			}
+			processados.add(event.eventId());
+		}
+
+		runAfterCommit(() -> idempotencyService.markProcessedAll(processados));
+		for (String unidade : unidadesParaMetricas) {
+			runAfterCommit(() -> metricsRecomputeScheduler.markDirty(unidade));
+		}
+		return processados.size();
+	}
+
+	/**
+	 * Aplica o efeito do evento no banco/Redis.
+	 * @return true quando a métrica de tempo de espera da unidade precisa ser recalculada
+	 */
+	private boolean apply(EventEnvelope event) {
+		boolean forceMetricsUpdate = event.type() == EventType.MEDICO_ENTRA_NO_PONTO
+				|| event.type() == EventType.MEDICO_SAI_DO_PONTO
+				|| event.type() == EventType.ATENDIMENTO_FINALIZADO;
 
 		boolean dirty = switch (event.type()) {
 			case MEDICO_ENTRA_NO_PONTO -> handleMedicoEntraNoPonto(event.payload(), event.occurredAt());
@@ -127,20 +235,11 @@ public class EventProcessor {
 				yield false;
 			}
 		};
-
-		runAfterCommit(() -> idempotencyService.markProcessed(event.eventId()));
-		if (dirty || forceMetricsUpdate) {
-			runAfterCommit(() -> tempoAtendimentoRedisService.updateTempoMedioPorTipo(unidadeForMetrics));
-		}
-		} finally {
-			if (clearInFinally) {
-				TenantContext.clear();
-			}
-		}
+		return dirty || forceMetricsUpdate;
 	}
 
-	private String resolveUnidadeForMetrics(JsonNode payload) {
-		String unidade = optionalText(payload, "unidadeAtendimento");
+	private String resolveUnidadeForMetrics(EventPayload payload) {
+		String unidade = payload.unidadeAtendimento();
 		if (unidade != null) {
 			return unidade;
 		}
@@ -158,18 +257,6 @@ public class EventProcessor {
 		return "UPA1";
 	}
 
-	private static String optionalText(JsonNode payload, String field) {
-		if (payload == null) {
-			return null;
-		}
-		JsonNode node = payload.get(field);
-		if (node == null || node.isNull()) {
-			return null;
-		}
-		String text = node.asText();
-		return (text == null || text.isBlank()) ? null : text;
-	}
-
 	private static void runAfterCommit(Runnable action) {
 		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
 			action.run();
@@ -183,22 +270,34 @@ public class EventProcessor {
 		});
 	}
 
-	private boolean handleMedicoEntraNoPonto(JsonNode payload, Instant occurredAt) {
-		long codIdColaborador = Long.parseLong(requiredText(payload, "codIdColaborador"));
+	private static void runAfterRollback(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					action.run();
+				}
+			}
+		});
+	}
+
+	private boolean handleMedicoEntraNoPonto(EventPayload payload, Instant occurredAt) {
+		long codIdColaborador = required(payload.codIdColaborador(), "codIdColaborador");
 		Instant eventTime = payloadTimestampOr(payload, occurredAt);
 		LocalTime horarioEntrada = eventTime.atOffset(ZoneOffset.UTC).toLocalTime();
 
-		var colaboradorOpt = colaboradorRepository.findById(codIdColaborador);
+		var colaboradorOpt = referenceDataCache.colaborador(TenantContext.getCurrentTenant(), codIdColaborador);
 		if (colaboradorOpt.isEmpty()) {
 			log.warn("Colaborador não encontrado para registrar ponto: codIdColaborador={}", codIdColaborador);
 			return false;
 		}
 		var colaborador = colaboradorOpt.get();
-		if (!isMedico(colaborador)) {
-			String funcao = colaborador.getFuncao() == null ? null : colaborador.getFuncao().getNomeFuncao();
-			Integer codFuncao = colaborador.getFuncao() == null ? null : colaborador.getFuncao().getCodIdFuncao();
+		if (!colaborador.isMedico()) {
 			log.warn("Colaborador não é médico; ponto não será registrado: codIdColaborador={}, codFuncao={}, funcao={}",
-					codIdColaborador, codFuncao, funcao);
+					codIdColaborador, colaborador.codIdFuncao(), colaborador.nomeFuncao());
 			return false;
 		}
 
@@ -214,29 +313,31 @@ public class EventProcessor {
 		Integer nrSeqHorario = nextSeqHorario();
 		PontoColaborador ponto = PontoColaborador.builder()
 				.nrSeqHorario(nrSeqHorario)
-				.colaborador(colaborador)
+				.colaborador(colaboradorRepository.getReferenceById(codIdColaborador))
 				.horarioEntrada(horarioEntrada)
 				.horarioSaida(null)
 				.build();
 		pontoColaboradorRepository.save(ponto);
+		String tenant = TenantContext.getCurrentTenant();
+		redisQueueOutbox.pontoAberto(tenant, codIdColaborador);
+		runAfterCommit(() -> queueDepthTracker.pontoAberto(tenant));
 		return true;
 	}
 
-	private boolean handleMedicoSaiDoPonto(JsonNode payload, Instant occurredAt) {
-		long codIdColaborador = Long.parseLong(requiredText(payload, "codIdColaborador"));
+	private boolean handleMedicoSaiDoPonto(EventPayload payload, Instant occurredAt) {
+		long codIdColaborador = required(payload.codIdColaborador(), "codIdColaborador");
 		Instant eventTime = payloadTimestampOr(payload, occurredAt);
 		LocalTime horarioSaida = eventTime.atOffset(ZoneOffset.UTC).toLocalTime();
 
-		var colaboradorOpt = colaboradorRepository.findById(codIdColaborador);
+		var colaboradorOpt = referenceDataCache.colaborador(TenantContext.getCurrentTenant(), codIdColaborador);
 		if (colaboradorOpt.isEmpty()) {
 			log.warn("Colaborador não encontrado para registrar saída do ponto: codIdColaborador={}", codIdColaborador);
 			return false;
 		}
-		if (!isMedico(colaboradorOpt.get())) {
-			String funcao = colaboradorOpt.get().getFuncao() == null ? null : colaboradorOpt.get().getFuncao().getNomeFuncao();
-			Integer codFuncao = colaboradorOpt.get().getFuncao() == null ? null : colaboradorOpt.get().getFuncao().getCodIdFuncao();
+		var colaborador = colaboradorOpt.get();
+		if (!colaborador.isMedico()) {
 			log.warn("Colaborador não é médico; saída do ponto não será registrada: codIdColaborador={}, codFuncao={}, funcao={}",
-					codIdColaborador, codFuncao, funcao);
+					codIdColaborador, colaborador.codIdFuncao(), colaborador.nomeFuncao());
 			return false;
 		}
 
@@ -249,35 +350,54 @@ public class EventProcessor {
 		PontoColaborador ponto = pontoOpt.get();
 		ponto.setHorarioSaida(horarioSaida);
 		pontoColaboradorRepository.save(ponto);
+		String tenant = TenantContext.getCurrentTenant();
+		redisQueueOutbox.pontoFechado(tenant, codIdColaborador);
+		runAfterCommit(() -> queueDepthTracker.pontoFechado(tenant));
 		return true;
 	}
 
-	private boolean handleRetiradaSenha(JsonNode payload, Instant occurredAt) {
-		String unidade = requiredText(payload, "unidadeAtendimento");
-		int nrSenhaAtendimentoRaw = (int) requiredLong(payload, "nrSenhaAtendimento");
+	private boolean handleRetiradaSenha(EventPayload payload, Instant occurredAt) {
+		String unidade = required(payload.unidadeAtendimento(), "unidadeAtendimento");
+		int nrSenhaAtendimentoRaw = required(payload.nrSenhaAtendimento(), "nrSenhaAtendimento").intValue();
 		int nrSenhaAtendimento = normalizeSenha(nrSenhaAtendimentoRaw);
-		long codCadastroSusPaciente = requiredLong(payload, "codCadastroSusPaciente");
+		long codCadastroSusPaciente = required(payload.codCadastroSusPaciente(), "codCadastroSusPaciente");
 		Instant eventTime = payloadTimestampOr(payload, occurredAt);
 
-		CadastroSus paciente = cadastroSusRepository.findById(codCadastroSusPaciente)
-				.orElse(null);
-		if (paciente == null) {
-			log.warn("Paciente não encontrado no CADASTRO_SUS: codCadastroSusPaciente={}", codCadastroSusPaciente);
-			return false;
+		// Paciente conhecido: perfil (idade/gestante) do cache e apenas uma referência para a FK, sem carregar CADASTRO_SUS
+		String tenant = TenantContext.getCurrentTenant();
+		int perfil = patientProfileCache.get(tenant, codCadastroSusPaciente);
+		CadastroSus paciente;
+		if (perfil == PatientProfileCache.MISS) {
+			paciente = cadastroSusRepository.findById(codCadastroSusPaciente)
+					.orElse(null);
+			if (paciente == null) {
+				log.warn("Paciente não encontrado no CADASTRO_SUS: codCadastroSusPaciente={}", codCadastroSusPaciente);
+				return false;
+			}
+			perfil = patientProfileCache.put(tenant, codCadastroSusPaciente, paciente.getIdadePaciente(), paciente.isGestante());
+		} else {
+			// sem checagem de existência: um CADASTRO_SUS removido enquanto o perfil está em cache (no máximo o TTL)
+			// só aparece como violação da FK no flush. O rollback tira o paciente do cache e a nova tentativa volta
+			// a ler o banco, caindo no "Paciente não encontrado" acima.
+			paciente = cadastroSusRepository.getReferenceById(codCadastroSusPaciente);
+			runAfterRollback(() -> patientProfileCache.invalidate(tenant, codCadastroSusPaciente));
 		}
 
 		// Regra: se o paciente pegar mais de uma senha no mesmo período, manter apenas a primeira ativa e cancelar todas as posteriores.
 		// Inclui a retirada atual: persistimos a senha atual já como CANCELADA para manter rastreabilidade.
-		var estadosFinais = java.util.List.of(EST_ATENDIMENTO_FINALIZADO, EST_SENHA_EXPIRADA, EST_SENHA_CANCELADA);
-		var ativos = atendimentosUnidadeRepository
-				.findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(
-						codCadastroSusPaciente, estadosFinais);
+		// Uma única consulta por projeção (índice parcial das senhas ativas); a regra antiga de "mesma senha ainda ativa"
+		// já está coberta aqui, pois uma senha ativa do paciente sempre aparece nesta lista.
+		List<AtendimentoAtivo> ativos = atendimentosUnidadeRepository.findAtivosByPaciente(codCadastroSusPaciente);
 		if (!ativos.isEmpty()) {
-			for (int i = 1; i < ativos.size(); i++) {
-				cancelarAtendimento(ativos.get(i), unidade, eventTime);
+			if (ativos.size() > 1) {
+				List<Long> posteriores = ativos.subList(1, ativos.size()).stream().map(AtendimentoAtivo::nrSeqAtendimento).toList();
+				for (AtendimentosUnidade posterior : atendimentosUnidadeRepository.findAllById(posteriores)) {
+					cancelarAtendimento(posterior, eventTime);
+				}
+				redisQueueOutbox.removeAll(unidade, posteriores.stream().map(String::valueOf).toList(), codCadastroSusPaciente);
 			}
 
-			PriorizacaoEstado pe = inferirPriorizacaoEstado(paciente);
+			PriorizacaoEstado pe = inferirPriorizacaoEstado(perfil);
 			var tipoPriorizacao = tipoPriorizacaoRepository.getReferenceById(pe.codTipoPriorizacao);
 			var estadoCancelada = tipoEstadoSenhaRepository.getReferenceById(EST_SENHA_CANCELADA);
 
@@ -290,25 +410,13 @@ public class EventProcessor {
 			novaSenhaCancelada = atendimentosUnidadeRepository.save(novaSenhaCancelada);
 			salvarEstadoAtendimento(novaSenhaCancelada.getNrSeqAtendimento(), EST_SENHA_CANCELADA, eventTime);
 
-			log.info("Senha posterior cancelada automaticamente (paciente ja possui senha ativa): codCadastroSusPaciente={}, nrSenhaAtendimento={}",
-					codCadastroSusPaciente, nrSenhaAtendimento);
+			AtendimentoAtivo ativo = ativos.get(0);
+			log.info("Senha posterior cancelada automaticamente (paciente ja possui senha ativa): codCadastroSusPaciente={}, nrSenhaAtendimento={}, nrSeqAtendimentoAtivo={}, nrSenhaAtendimentoAtivo={}",
+					codCadastroSusPaciente, nrSenhaAtendimento, ativo.nrSeqAtendimento(), ativo.nrSenhaAtendimento());
 			return true;
 		}
 
-		// Regra: não permitir duplicar a mesma senha para o mesmo paciente enquanto ativa
-		var sameSenha = atendimentosUnidadeRepository
-				.findByNrSenhaAtendimentoAndPacienteCodCadastroSusPaciente(nrSenhaAtendimento, codCadastroSusPaciente)
-				.orElse(null);
-		if (sameSenha != null) {
-			Integer estado = sameSenha.getEstadoSenha() == null ? null : sameSenha.getEstadoSenha().getCodTipoEstado();
-			if (estado == null || (estado != EST_ATENDIMENTO_FINALIZADO && estado != EST_SENHA_EXPIRADA && estado != EST_SENHA_CANCELADA)) {
-				log.info("Retirada de senha ignorada (senha já existe e não está finalizada): codCadastroSusPaciente={}, nrSenhaAtendimento={}, nrSeqAtendimentoExistente={}",
-						codCadastroSusPaciente, nrSenhaAtendimento, sameSenha.getNrSeqAtendimento());
-				return false;
-			}
-		}
-
-		PriorizacaoEstado pe = inferirPriorizacaoEstado(paciente);
+		PriorizacaoEstado pe = inferirPriorizacaoEstado(perfil);
 		var tipoPriorizacao = tipoPriorizacaoRepository.getReferenceById(pe.codTipoPriorizacao);
 		var tipoEstado = tipoEstadoSenhaRepository.getReferenceById(pe.codTipoEstado);
 
@@ -321,8 +429,8 @@ public class EventProcessor {
 		atendimento = atendimentosUnidadeRepository.save(atendimento);
 
 		salvarEstadoAtendimento(atendimento.getNrSeqAtendimento(), pe.codTipoEstado, eventTime);
-		redisQueueService.enqueue(unidade, atendimento);
-		redisQueueService.saveAtendimentoSnapshot(unidade, atendimento);
+		runAfterCommit(() -> queueDepthTracker.ticketAtivado(tenant, pe.codTipoPriorizacao));
+		redisQueueOutbox.enqueue(unidade, atendimento);
 		return true;
 	}
 
@@ -334,20 +442,9 @@ public class EventProcessor {
 		return mod + 1;
 	}
 
-	private static boolean isMedico(com.sus.fiap.consumer.persistence.entity.Colaborador colaborador) {
-		if (colaborador == null || colaborador.getFuncao() == null) {
-			return false;
-		}
-		String nomeFuncao = colaborador.getFuncao().getNomeFuncao();
-		if (nomeFuncao == null) {
-			return false;
-		}
-		return nomeFuncao.trim().equalsIgnoreCase("MEDICO") || nomeFuncao.trim().equalsIgnoreCase("MÉDICO");
-	}
-
-	private boolean handleAtendimentoTerminal(JsonNode payload, int codTipoEstado, Instant occurredAt) {
-		String unidade = requiredText(payload, "unidadeAtendimento");
-		long nrSeqAtendimento = Long.parseLong(requiredText(payload, "nrSeqAtendimento"));
+	private boolean handleAtendimentoTerminal(EventPayload payload, int codTipoEstado, Instant occurredAt) {
+		String unidade = required(payload.unidadeAtendimento(), "unidadeAtendimento");
+		long nrSeqAtendimento = required(payload.nrSeqAtendimento(), "nrSeqAtendimento");
 		Instant eventTime = payloadTimestampOr(payload, occurredAt);
 
 		AtendimentosUnidade atendimento = atendimentosUnidadeRepository.findById(nrSeqAtendimento)
@@ -357,17 +454,23 @@ public class EventProcessor {
 			return false;
 		}
 
+		Integer estadoAnterior = codEstado(atendimento);
+		Integer priorizacao = codPriorizacao(atendimento);
 		atendimento.setEstadoSenha(tipoEstadoSenhaRepository.getReferenceById(codTipoEstado));
 		atendimentosUnidadeRepository.save(atendimento);
 
 		salvarEstadoAtendimento(nrSeqAtendimento, codTipoEstado, eventTime);
-		redisQueueService.remove(unidade, String.valueOf(nrSeqAtendimento));
+		if (isEstadoAtivo(estadoAnterior)) {
+			String tenant = TenantContext.getCurrentTenant();
+			runAfterCommit(() -> queueDepthTracker.ticketEncerrado(tenant, priorizacao));
+		}
+		redisQueueOutbox.remove(unidade, String.valueOf(nrSeqAtendimento), codPaciente(atendimento));
 		return true;
 	}
 
-	private boolean handleSenhaPriorizada(JsonNode payload, Instant occurredAt) {
-		String unidade = requiredText(payload, "unidadeAtendimento");
-		long nrSeqAtendimento = Long.parseLong(requiredText(payload, "nrSeqAtendimento"));
+	private boolean handleSenhaPriorizada(EventPayload payload, Instant occurredAt) {
+		String unidade = required(payload.unidadeAtendimento(), "unidadeAtendimento");
+		long nrSeqAtendimento = required(payload.nrSeqAtendimento(), "nrSeqAtendimento");
 		Instant eventTime = payloadTimestampOr(payload, occurredAt);
 
 		AtendimentosUnidade atendimento = atendimentosUnidadeRepository.findById(nrSeqAtendimento)
@@ -377,38 +480,65 @@ public class EventProcessor {
 			return false;
 		}
 
+		Integer estadoAnterior = codEstado(atendimento);
+		Integer priorizacaoAnterior = codPriorizacao(atendimento);
 		atendimento.setTipoPriorizacao(tipoPriorizacaoRepository.getReferenceById(PRIORIZACAO_EMERGENCIA));
 		atendimento.setEstadoSenha(tipoEstadoSenhaRepository.getReferenceById(EST_SENHA_PRIORIZADA_EMERGENCIA));
 		atendimento = atendimentosUnidadeRepository.save(atendimento);
 
 		salvarEstadoAtendimento(nrSeqAtendimento, EST_SENHA_PRIORIZADA_EMERGENCIA, eventTime);
+		String tenant = TenantContext.getCurrentTenant();
+		if (isEstadoAtivo(estadoAnterior)) {
+			runAfterCommit(() -> queueDepthTracker.ticketRepriorizado(tenant, priorizacaoAnterior, PRIORIZACAO_EMERGENCIA));
+		} else {
+			runAfterCommit(() -> queueDepthTracker.ticketAtivado(tenant, PRIORIZACAO_EMERGENCIA));
+		}
 
-		redisQueueService.enqueue(unidade, atendimento);
-		redisQueueService.saveAtendimentoSnapshot(unidade, atendimento);
+		redisQueueOutbox.enqueue(unidade, atendimento);
 		return true;
 	}
 
-	private void cancelarAtendimento(AtendimentosUnidade atendimento, String unidade, Instant eventTime) {
+	private void cancelarAtendimento(AtendimentosUnidade atendimento, Instant eventTime) {
+		Integer estadoAnterior = codEstado(atendimento);
+		Integer priorizacao = codPriorizacao(atendimento);
 		atendimento.setEstadoSenha(tipoEstadoSenhaRepository.getReferenceById(EST_SENHA_CANCELADA));
 		atendimentosUnidadeRepository.save(atendimento);
 		salvarEstadoAtendimento(atendimento.getNrSeqAtendimento(), EST_SENHA_CANCELADA, eventTime);
-		redisQueueService.remove(unidade, String.valueOf(atendimento.getNrSeqAtendimento()));
+		if (isEstadoAtivo(estadoAnterior)) {
+			String tenant = TenantContext.getCurrentTenant();
+			runAfterCommit(() -> queueDepthTracker.ticketEncerrado(tenant, priorizacao));
+		}
+	}
+
+	private static Integer codEstado(AtendimentosUnidade atendimento) {
+		return atendimento.getEstadoSenha() == null ? null : atendimento.getEstadoSenha().getCodTipoEstado();
+	}
+
+	private static Long codPaciente(AtendimentosUnidade atendimento) {
+		return atendimento.getPaciente() == null ? null : atendimento.getPaciente().getCodCadastroSusPaciente();
+	}
+
+	private static Integer codPriorizacao(AtendimentosUnidade atendimento) {
+		return atendimento.getTipoPriorizacao() == null ? null : atendimento.getTipoPriorizacao().getCodTipoPriorizacao();
+	}
+
+	private static boolean isEstadoAtivo(Integer codTipoEstado) {
+		return codTipoEstado != null
+				&& codTipoEstado != EST_ATENDIMENTO_FINALIZADO
+				&& codTipoEstado != EST_SENHA_EXPIRADA
+				&& codTipoEstado != EST_SENHA_CANCELADA;
 	}
 
 	private void salvarEstadoAtendimento(Long nrSeqAtendimento, Integer codTipoEstado, Instant timestamp) {
-		EstadoAtendimentoId id = new EstadoAtendimentoId(nrSeqAtendimento, codTipoEstado, timestamp);
-		if (estadoAtendimentoRepository.existsById(id)) {
-			return;
-		}
-		estadoAtendimentoRepository.save(EstadoAtendimento.builder().id(id).build());
+		// reprocessamento do mesmo estado cai no ON CONFLICT DO NOTHING; sem consulta prévia
+		estadoAtendimentoRepository.insertIgnoringDuplicates(new EstadoAtendimentoId(nrSeqAtendimento, codTipoEstado, timestamp));
 	}
 
-	private PriorizacaoEstado inferirPriorizacaoEstado(CadastroSus paciente) {
-		Integer idade = paciente.getIdadePaciente() == null ? 0 : paciente.getIdadePaciente();
-		if (paciente.isGestante()) {
+	private PriorizacaoEstado inferirPriorizacaoEstado(int perfil) {
+		if (PatientProfileCache.gestante(perfil)) {
 			return new PriorizacaoEstado(PRIORIZACAO_GESTANTE, EST_SENHA_PRIORIZADA_GESTANTE);
 		}
-		if (idade >= 60) {
+		if (PatientProfileCache.idade(perfil) >= 60) {
 			return new PriorizacaoEstado(PRIORIZACAO_IDOSO, EST_SENHA_PRIORIZADA_IDOSO);
 		}
 		return new PriorizacaoEstado(PRIORIZACAO_NORMAL, EST_SENHA_NORMAL_CRIADA);
@@ -436,49 +566,14 @@ public class EventProcessor {
 		}
 	}
 
-	private static Instant payloadTimestampOr(JsonNode payload, Instant fallback) {
-		JsonNode ts = payload.get("timestamp");
-		if (ts == null || ts.isNull()) {
-			return fallback;
-		}
-		if (ts.isNumber()) {
-			return instantFromEpochNumber(ts.asDouble());
-		}
-		String text = ts.asText();
-		if (text == null || text.isBlank()) {
-			return fallback;
-		}
-		try {
-			return Instant.parse(text);
-		} catch (Exception ignored) {
-			double epoch = Double.parseDouble(text);
-			return instantFromEpochNumber(epoch);
-		}
-	}
-
-	private static Instant instantFromEpochNumber(double epoch) {
-		if (epoch < 100_000_000_000d) {
-			long seconds = (long) epoch;
-			long nanos = (long) ((epoch - seconds) * 1_000_000_000d);
-			return Instant.ofEpochSecond(seconds, nanos);
-		}
-		long millis = (long) epoch;
-		return Instant.ofEpochMilli(millis);
-	}
-
-	private static String requiredText(JsonNode payload, String field) {
-		JsonNode node = payload.get(field);
-		if (node == null || node.isNull() || node.asText().isBlank()) {
-			throw new IllegalArgumentException("Campo obrigatório ausente no payload: " + field);
-		}
-		return node.asText();
+	private static Instant payloadTimestampOr(EventPayload payload, Instant fallback) {
+		return payload.timestamp() == null ? fallback : payload.timestamp();
 	}
 
-	private static long requiredLong(JsonNode payload, String field) {
-		JsonNode node = payload.get(field);
-		if (node == null || node.isNull()) {
+	private static <T> T required(T value, String field) {
+		if (value == null) {
 			throw new IllegalArgumentException("Campo obrigatório ausente no payload: " + field);
 		}
-		return node.asLong();
+		return value;
 	}
 }
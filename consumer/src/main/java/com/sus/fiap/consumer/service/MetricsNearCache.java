@@ -0,0 +1,235 @@
+package com.sus.fiap.consumer.service;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cache local das métricas agregadas ({@code metrics:tempoAtendimentoMedio:<unidade>}) lidas pela API a cada requisição.
+ * O valor muda poucas vezes por minuto; os apps consultam milhares de vezes por segundo.
+ * <p>
+ * Com {@code tracking}, uma conexão própria (RESP3) liga o client-side caching do Redis em modo broadcast para o
+ * prefixo das métricas ({@code CLIENT TRACKING on BCAST PREFIX ...}): toda escrita, expiração ou remoção de uma chave
+ * do prefixo chega como mensagem {@code invalidate} e a entrada local é descartada. Assim a entrada vale até mudar
+ * (limitada a {@code max-age}, por segurança). Sem tracking (Redis sem RESP3, Sentinel/Cluster, falha ao conectar) ou
+ * com a conexão caída, a entrada vale só {@code ttl}. Ao reconectar o tracking é religado e o cache, esvaziado.
+ * <p>
+ * Uma invalidação que chega durante uma leitura impede que o valor lido fique no cache. Ausência (404) também é
+ * guardada, inclusive de chaves que nunca serão escritas (a unidade vem da URL): por isso o cache é limitado a
+ * {@value #MAX_ENTRIES} chaves, com despejo das menos usadas, e toda entrada expira em {@code max-age}.
+ * Métricas: {@code consumer.metrics.near-cache{result=hit|miss}} e {@code consumer.metrics.near-cache.tracking} (1 = ativo).
+ */
+@Service
+public class MetricsNearCache {
+	private static final Logger log = LoggerFactory.getLogger(MetricsNearCache.class);
+	private static final String PREFIX = "metrics:tempoAtendimentoMedio:";
+	private static final int MAX_ENTRIES = 1_024;
+
+	private final StringRedisTemplate redis;
+	private final RedisConnectionFactory connectionFactory;
+	private final boolean enabled;
+	private final boolean tracking;
+	private final long ttlNanos;
+	private final long maxAgeNanos;
+	private final Cache<String, Entry> entries;
+	// incrementado a cada invalidação; uma leitura só fica no cache se nenhuma chegou enquanto ela estava em curso
+	private final AtomicLong invalidations = new AtomicLong();
+	private final Counter hits;
+	private final Counter misses;
+	private volatile boolean trackingActive;
+	private volatile RedisClient client;
+	private volatile StatefulRedisConnection<String, String> connection;
+
+	public MetricsNearCache(
+			StringRedisTemplate redis,
+			RedisConnectionFactory connectionFactory,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.metrics.near-cache.enabled:true}") boolean enabled,
+			@Value("${consumer.metrics.near-cache.tracking:true}") boolean tracking,
+			@Value("${consumer.metrics.near-cache.ttl:1s}") Duration ttl,
+			@Value("${consumer.metrics.near-cache.max-age:60s}") Duration maxAge
+	) {
+		this.redis = redis;
+		this.connectionFactory = connectionFactory;
+		this.enabled = enabled;
+		this.tracking = tracking;
+		this.ttlNanos = ttl.toNanos();
+		this.maxAgeNanos = Math.max(ttlNanos, maxAge.toNanos());
+		this.entries = Caffeine.newBuilder()
+				.maximumSize(MAX_ENTRIES)
+				.expireAfterWrite(Duration.ofNanos(maxAgeNanos))
+				.build();
+		this.hits = Counter.builder("consumer.metrics.near-cache").tag("result", "hit").register(meterRegistry);
+		this.misses = Counter.builder("consumer.metrics.near-cache").tag("result", "miss").register(meterRegistry);
+		Gauge.builder("consumer.metrics.near-cache.tracking", this, c -> c.trackingActive ? 1 : 0).register(meterRegistry);
+	}
+
+	/**
+	 * Abre a conexão de tracking; sem ela o cache segue só com {@code ttl}.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (!enabled || !tracking) {
+			return;
+		}
+		if (!(connectionFactory instanceof LettuceConnectionFactory lettuce)
+				|| lettuce.getClusterConfiguration() != null || lettuce.getSentinelConfiguration() != null) {
+			log.info("Cache local das métricas sem tracking do Redis (somente standalone com Lettuce): TTL de {}ms", ttlNanos / 1_000_000);
+			return;
+		}
+		try {
+			RedisStandaloneConfiguration config = lettuce.getStandaloneConfiguration();
+			RedisURI.Builder uri = RedisURI.builder()
+					.withHost(config.getHostName())
+					.withPort(config.getPort())
+					.withDatabase(config.getDatabase())
+					.withSsl(lettuce.isUseSsl())
+					.withTimeout(lettuce.getTimeout() > 0 ? Duration.ofMillis(lettuce.getTimeout()) : RedisURI.DEFAULT_TIMEOUT_DURATION);
+			if (config.getPassword().isPresent() && config.getUsername() != null) {
+				uri.withAuthentication(config.getUsername(), config.getPassword().get());
+			} else if (config.getPassword().isPresent()) {
+				uri.withPassword(config.getPassword().get());
+			}
+			RedisClient novo = lettuce.getClientResources() == null
+					? RedisClient.create(uri.build())
+					: RedisClient.create(lettuce.getClientResources(), uri.build());
+			novo.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+			novo.addListener(new RedisConnectionStateListener() {
+				@Override
+				public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+					reenableTracking();
+				}
+
+				@Override
+				public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+					trackingActive = false;
+					invalidateAll();
+				}
+			});
+			client = novo;
+			StatefulRedisConnection<String, String> conexao = novo.connect();
+			conexao.addListener(this::onPush);
+			conexao.sync().clientTracking(trackingArgs());
+			connection = conexao;
+			invalidateAll();
+			trackingActive = true;
+			log.info("Cache local das métricas com tracking do Redis (prefixo {})", PREFIX);
+		} catch (RuntimeException e) {
+			log.warn("Tracking do Redis indisponível; cache local das métricas com TTL de {}ms: {}", ttlNanos / 1_000_000, e.toString());
+			shutdown();
+		}
+	}
+
+	/**
+	 * Valor da chave: do cache local ou, se ausente/vencido, do Redis.
+	 */
+	public String get(String key) {
+		if (!enabled || ttlNanos <= 0) {
+			return redis.opsForValue().get(key);
+		}
+		long agora = System.nanoTime();
+		Entry entry = entries.getIfPresent(key);
+		if (entry != null && agora - entry.lidoEm < (trackingActive ? maxAgeNanos : ttlNanos)) {
+			hits.increment();
+			return entry.value;
+		}
+		misses.increment();
+		long epoch = invalidations.get();
+		String value = redis.opsForValue().get(key);
+		Entry novo = new Entry(value, agora);
+		entries.put(key, novo);
+		// invalidação durante a leitura: o valor pode ser o anterior a ela
+		if (invalidations.get() != epoch) {
+			entries.asMap().remove(key, novo);
+		}
+		return value;
+	}
+
+	private void onPush(PushMessage message) {
+		if (!"invalidate".equals(message.getType())) {
+			return;
+		}
+		List<Object> content = message.getContent(buffer -> StandardCharsets.UTF_8.decode(buffer).toString());
+		// chaves nulas: o Redis pede para descartar tudo (FLUSHALL, tabela de tracking cheia)
+		if (content.size() < 2 || !(content.get(1) instanceof List<?> keys)) {
+			invalidateAll();
+			return;
+		}
+		invalidations.incrementAndGet();
+		for (Object key : keys) {
+			entries.invalidate(key instanceof ByteBuffer buffer ? StandardCharsets.UTF_8.decode(buffer).toString() : String.valueOf(key));
+		}
+	}
+
+	private void reenableTracking() {
+		StatefulRedisConnection<String, String> conexao = connection;
+		if (conexao == null) {
+			// primeira conexão: o start() liga o tracking
+			return;
+		}
+		conexao.async().clientTracking(trackingArgs()).whenComplete((ok, e) -> {
+			invalidateAll();
+			// o tracking continua ligado se a conexão não chegou a cair no servidor
+			trackingActive = e == null || String.valueOf(e.getMessage()).contains("overlaps");
+			if (!trackingActive) {
+				log.warn("Falha ao religar o tracking do Redis; cache local das métricas com TTL: {}", e.toString());
+			}
+		});
+	}
+
+	private void invalidateAll() {
+		invalidations.incrementAndGet();
+		entries.invalidateAll();
+	}
+
+	private static TrackingArgs trackingArgs() {
+		return TrackingArgs.Builder.enabled().bcast().prefixes(PREFIX);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		trackingActive = false;
+		StatefulRedisConnection<String, String> conexao = connection;
+		connection = null;
+		if (conexao != null) {
+			conexao.close();
+		}
+		RedisClient atual = client;
+		client = null;
+		if (atual != null) {
+			atual.shutdown();
+		}
+	}
+
+	private record Entry(String value, long lidoEm) {
+	}
+}
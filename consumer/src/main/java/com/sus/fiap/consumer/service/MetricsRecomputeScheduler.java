@@ -0,0 +1,91 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Agrupa (coalesce) os recálculos de {@code metrics:tempoAtendimentoMedio:<unidade>}: cada evento apenas marca a
+ * unidade como "suja" e o recálculo roda no máximo uma vez por intervalo por unidade.
+ * Um único worker executa os recálculos, então nunca há dois recálculos simultâneos da mesma unidade.
+ * O atraso máximo de uma marcação é o intervalo configurado, que precisa ser menor que o TTL da métrica.
+ */
+@Component
+public class MetricsRecomputeScheduler {
+	private static final Logger log = LoggerFactory.getLogger(MetricsRecomputeScheduler.class);
+
+	private final TempoAtendimentoRedisService tempoAtendimentoRedisService;
+	private final long intervalMillis;
+	private final ScheduledExecutorService executor;
+	private final Map<String, UnitState> unidades = new ConcurrentHashMap<>();
+	private final Counter executed;
+	private final Counter coalesced;
+
+	public MetricsRecomputeScheduler(
+			TempoAtendimentoRedisService tempoAtendimentoRedisService,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.metrics.tempoAtendimento.recompute-interval:250ms}") Duration interval,
+			@Value("${consumer.metrics.tempoAtendimento.ttl:2m}") Duration ttl
+	) {
+		if (interval.isNegative() || interval.compareTo(ttl) >= 0) {
+			throw new IllegalArgumentException("consumer.metrics.tempoAtendimento.recompute-interval (" + interval
+					+ ") deve ser menor que consumer.metrics.tempoAtendimento.ttl (" + ttl + ")");
+		}
+		this.tempoAtendimentoRedisService = tempoAtendimentoRedisService;
+		this.intervalMillis = interval.toMillis();
+		this.executor = Executors.newSingleThreadScheduledExecutor(
+				Thread.ofPlatform().daemon().name("metrics-recompute").factory());
+		this.executed = Counter.builder("consumer.metrics.recompute").tag("result", "executed").register(meterRegistry);
+		this.coalesced = Counter.builder("consumer.metrics.recompute").tag("result", "coalesced").register(meterRegistry);
+	}
+
+	/**
+	 * Marca a unidade para recálculo. Se já existe um recálculo agendado, a marcação é absorvida por ele.
+	 */
+	public void markDirty(String unidadeAtendimento) {
+		if (unidadeAtendimento == null || unidadeAtendimento.isBlank()) {
+			return;
+		}
+		UnitState state = unidades.computeIfAbsent(unidadeAtendimento, u -> new UnitState());
+		if (!state.dirty.compareAndSet(false, true)) {
+			coalesced.increment();
+			return;
+		}
+		long delay = Math.max(0L, state.lastRunAt + intervalMillis - System.currentTimeMillis());
+		executor.schedule(() -> run(unidadeAtendimento, state), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void run(String unidadeAtendimento, UnitState state) {
+		// marca o início antes de limpar o flag: uma marcação durante o recálculo agenda o próximo para daqui a um intervalo
+		state.lastRunAt = System.currentTimeMillis();
+		state.dirty.set(false);
+		try {
+			tempoAtendimentoRedisService.updateTempoMedioPorTipo(unidadeAtendimento);
+			executed.increment();
+		} catch (Exception e) {
+			log.warn("Falha ao recalcular tempo médio: unidade={}", unidadeAtendimento, e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static final class UnitState {
+		private final AtomicBoolean dirty = new AtomicBoolean(false);
+		private volatile long lastRunAt;
+	}
+}
@@ -0,0 +1,142 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Perfil de priorização do paciente (idade e gestante) por schema, em arrays primitivos:
+ * {@code codCadastroSusPaciente (long) → perfil empacotado (int)}, sem objetos por entrada.
+ * Cada schema tem uma tabela de mapeamento direto com capacidade fixa (16 bytes por posição); uma colisão
+ * substitui a entrada anterior, então a memória nunca cresce. Entradas valem por {@code ttl} e são recarregadas
+ * do banco no primeiro uso após expirar. Acertos/erros em {@code consumer.patient.cache}.
+ */
+@Component
+public class PatientProfileCache {
+	/** Retorno de {@link #get} quando o paciente não está em cache (ou expirou). */
+	public static final int MISS = 0;
+
+	private static final int PRESENT = 1;
+	private static final int GESTANTE = 1 << 1;
+	private static final int IDADE_SHIFT = 2;
+	private static final int IDADE_MAX = 1023;
+
+	private final int capacity;
+	private final long ttlNanos;
+	private final long origin = System.nanoTime();
+	private final Map<String, Table> tables = new ConcurrentHashMap<>();
+	private final Counter hits;
+	private final Counter misses;
+
+	public PatientProfileCache(
+			MeterRegistry meterRegistry,
+			@Value("${consumer.patient-cache.capacity:65536}") int capacity,
+			@Value("${consumer.patient-cache.ttl:6h}") Duration ttl
+	) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("consumer.patient-cache.capacity deve ser >= 1: " + capacity);
+		}
+		this.capacity = Integer.highestOneBit(Math.clamp(capacity, 1, 1 << 29) * 2 - 1);
+		this.ttlNanos = ttl.toNanos();
+		this.hits = Counter.builder("consumer.patient.cache").tag("result", "hit").register(meterRegistry);
+		this.misses = Counter.builder("consumer.patient.cache").tag("result", "miss").register(meterRegistry);
+	}
+
+	/**
+	 * @return o perfil empacotado (ver {@link #idade(int)} e {@link #gestante(int)}) ou {@link #MISS}
+	 */
+	public int get(String tenant, long codCadastroSusPaciente) {
+		Table table = tables.get(tenant);
+		int perfil = table == null ? MISS : table.get(codCadastroSusPaciente, now());
+		if (perfil == MISS) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return perfil;
+	}
+
+	/**
+	 * Guarda o perfil carregado do banco.
+	 * @return o perfil empacotado
+	 */
+	public int put(String tenant, long codCadastroSusPaciente, Integer idadePaciente, boolean gestante) {
+		int perfil = pack(idadePaciente, gestante);
+		tables.computeIfAbsent(tenant, t -> new Table(capacity)).put(codCadastroSusPaciente, perfil, now() + ttlNanos);
+		return perfil;
+	}
+
+	public void invalidate(String tenant, long codCadastroSusPaciente) {
+		Table table = tables.get(tenant);
+		if (table != null) {
+			table.remove(codCadastroSusPaciente);
+		}
+	}
+
+	public void invalidateAll() {
+		tables.clear();
+	}
+
+	public static int pack(Integer idadePaciente, boolean gestante) {
+		int idade = idadePaciente == null ? 0 : Math.clamp(idadePaciente, 0, IDADE_MAX);
+		return PRESENT | (gestante ? GESTANTE : 0) | (idade << IDADE_SHIFT);
+	}
+
+	public static int idade(int perfil) {
+		return perfil >>> IDADE_SHIFT;
+	}
+
+	public static boolean gestante(int perfil) {
+		return (perfil & GESTANTE) != 0;
+	}
+
+	private long now() {
+		return System.nanoTime() - origin;
+	}
+
+	private static final class Table {
+		private final long[] keys;
+		private final int[] perfis;
+		private final long[] expiresAt;
+		private final int mask;
+
+		Table(int capacity) {
+			this.keys = new long[capacity];
+			this.perfis = new int[capacity];
+			this.expiresAt = new long[capacity];
+			this.mask = capacity - 1;
+		}
+
+		synchronized int get(long key, long now) {
+			int i = slot(key);
+			if (perfis[i] == MISS || keys[i] != key || expiresAt[i] - now <= 0) {
+				return MISS;
+			}
+			return perfis[i];
+		}
+
+		synchronized void put(long key, int perfil, long expiresAt) {
+			int i = slot(key);
+			keys[i] = key;
+			perfis[i] = perfil;
+			this.expiresAt[i] = expiresAt;
+		}
+
+		synchronized void remove(long key) {
+			int i = slot(key);
+			if (keys[i] == key) {
+				perfis[i] = MISS;
+			}
+		}
+
+		private int slot(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+	}
+}
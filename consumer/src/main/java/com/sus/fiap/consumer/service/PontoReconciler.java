@@ -0,0 +1,186 @@
+package com.sus.fiap.consumer.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import com.sus.fiap.consumer.persistence.entity.PontoColaborador;
+import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reconcilia {@code ponto:abertos:<schema>} (médicos com ponto aberto, lido pela API no lugar de um COUNT em
+ * {@code PONTO_MEDICOS}) com o banco de cada schema. As entradas e saídas chegam ao conjunto pelo outbox, na transação
+ * do evento; aqui são corrigidos os desvios (Redis perdido ou limpo, conjunto criado antes do outbox):
+ * <ul>
+ *   <li>{@code ausente}: ponto aberto no banco e fora do conjunto;</li>
+ *   <li>{@code sobra}: no conjunto sem ponto aberto no banco.</li>
+ * </ul>
+ * Como no {@link QueueReconciler}, os candidatos são reconferidos com lock compartilhado e o reparo vai pelo outbox
+ * ({@code PONTO_ABERTO}/{@code PONTO_FECHADO}), ordenado com as entradas e saídas concorrentes. Sem desvios, o conjunto
+ * é marcado como sincronizado e a contagem passa a valer; até lá (e se a chave sumir) a API conta no banco.
+ * Roda na subida e a cada {@code interval}. Desvios em {@code consumer.ponto.reconcile.drift{tenant,tipo}}.
+ */
+@Component
+public class PontoReconciler {
+	private static final Logger log = LoggerFactory.getLogger(PontoReconciler.class);
+
+	private final PontoColaboradorRepository pontoColaboradorRepository;
+	private final RedisQueueService redisQueueService;
+	private final RedisQueueOutbox redisQueueOutbox;
+	private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+	private final TransactionTemplate transactionTemplate;
+	private final DataSource dataSource;
+	private final MeterRegistry meterRegistry;
+	private final boolean enabled;
+	private final long intervalMillis;
+	private final ScheduledExecutorService executor;
+
+	public PontoReconciler(
+			PontoColaboradorRepository pontoColaboradorRepository,
+			RedisQueueService redisQueueService,
+			RedisQueueOutbox redisQueueOutbox,
+			DatabaseConcurrencyLimiter databaseConcurrencyLimiter,
+			TransactionTemplate transactionTemplate,
+			DataSource dataSource,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.ponto.reconcile.enabled:true}") boolean enabled,
+			@Value("${consumer.ponto.reconcile.interval:1m}") Duration interval
+	) {
+		this.pontoColaboradorRepository = pontoColaboradorRepository;
+		this.redisQueueService = redisQueueService;
+		this.redisQueueOutbox = redisQueueOutbox;
+		this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+		this.transactionTemplate = transactionTemplate;
+		this.dataSource = dataSource;
+		this.meterRegistry = meterRegistry;
+		this.enabled = enabled;
+		this.intervalMillis = interval.toMillis();
+		this.executor = Executors.newSingleThreadScheduledExecutor(
+				Thread.ofPlatform().daemon().name("ponto-reconciler").factory());
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (enabled) {
+			executor.scheduleWithFixedDelay(this::reconcileAll, 0L, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void reconcileAll() {
+		List<String> tenants;
+		try {
+			tenants = tenantSchemas();
+		} catch (SQLException e) {
+			log.warn("Falha ao listar schemas para reconciliar os pontos abertos: {}", e.toString());
+			return;
+		}
+		for (String tenant : tenants) {
+			try {
+				reconcile(tenant);
+			} catch (Exception e) {
+				log.warn("Falha ao reconciliar pontos abertos no Redis: tenant={}", tenant, e);
+			}
+		}
+	}
+
+	/**
+	 * Compara o conjunto de pontos abertos do schema com o banco e grava no outbox o reparo dos desvios; sem desvios,
+	 * marca o conjunto como sincronizado.
+	 */
+	public Drift reconcile(String tenant) {
+		Set<Long> noRedis = redisQueueService.pontosAbertos(tenant);
+		Set<Long> noBanco = new HashSet<>(databaseConcurrencyLimiter.call(() -> TenantContext.callWithTenant(tenant,
+				pontoColaboradorRepository::findColaboradoresComPontoAberto)));
+
+		List<Long> candidatos = new ArrayList<>();
+		int ausentes = 0;
+		int sobras = 0;
+		for (Long colaborador : noBanco) {
+			if (!noRedis.contains(colaborador)) {
+				candidatos.add(colaborador);
+				ausentes++;
+			}
+		}
+		for (Long colaborador : noRedis) {
+			if (!noBanco.contains(colaborador)) {
+				candidatos.add(colaborador);
+				sobras++;
+			}
+		}
+
+		if (candidatos.isEmpty()) {
+			redisQueueService.marcarPontosSincronizados(tenant);
+		} else {
+			repair(tenant, candidatos);
+			log.info("Pontos abertos reconciliados: tenant={}, noBanco={}, ausentes={}, sobras={}",
+					tenant, noBanco.size(), ausentes, sobras);
+		}
+		meterRegistry.counter("consumer.ponto.reconcile.drift", "tenant", tenant, "tipo", "ausente").increment(ausentes);
+		meterRegistry.counter("consumer.ponto.reconcile.drift", "tenant", tenant, "tipo", "sobra").increment(sobras);
+		return new Drift(ausentes, sobras);
+	}
+
+	/**
+	 * Reconfere os colaboradores com lock compartilhado e grava o estado atual no outbox.
+	 */
+	private void repair(String tenant, List<Long> colaboradores) {
+		databaseConcurrencyLimiter.run(() -> TenantContext.runWithTenant(tenant, () -> transactionTemplate.executeWithoutResult(status -> {
+			Set<Long> abertos = new HashSet<>();
+			for (PontoColaborador ponto : pontoColaboradorRepository.findAbertosByColaboradorForShare(colaboradores)) {
+				abertos.add(ponto.getColaborador().getCodIdColaborador());
+			}
+			for (Long colaborador : colaboradores) {
+				if (abertos.contains(colaborador)) {
+					redisQueueOutbox.pontoAberto(tenant, colaborador);
+				} else {
+					redisQueueOutbox.pontoFechado(tenant, colaborador);
+				}
+			}
+		})));
+	}
+
+	private List<String> tenantSchemas() throws SQLException {
+		List<String> schemas = new ArrayList<>();
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement ps = connection.prepareStatement("SELECT table_schema FROM information_schema.tables"
+						+ " WHERE lower(table_name) = 'ponto_medicos' AND lower(table_schema) LIKE 'und\\_atd%' ORDER BY 1");
+				ResultSet rs = ps.executeQuery()) {
+			while (rs.next()) {
+				schemas.add(rs.getString(1));
+			}
+		}
+		return schemas;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Desvios encontrados em uma reconciliação (todos reparados via outbox).
+	 */
+	public record Drift(int ausentes, int sobras) {
+	}
+}
@@ -0,0 +1,166 @@
+package com.sus.fiap.consumer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pré-filtro local (bloom rotativo) na frente da checagem de idempotência no Redis.
+ * "Nunca visto" dispensa o round trip; "talvez visto" segue para o Redis.
+ *
+ * Enquanto o filtro não estiver sincronizado com o keyspace {@code event:processed:*} (a sincronização roda a
+ * cada atribuição de partições, inclusive no startup), ele responde "talvez" para tudo — nunca gera falso negativo.
+ */
+@Component
+public class ProcessedEventFilter {
+	private static final Logger log = LoggerFactory.getLogger(ProcessedEventFilter.class);
+	static final String KEY_PATTERN = "event:processed:*";
+	private static final String KEY_PREFIX = "event:processed:";
+	private static final int SCAN_BATCH = 1000;
+
+	private final StringRedisTemplate redis;
+	private final boolean enabled;
+	private final Duration window;
+	private final RotatingBloomFilter filter;
+	private final AtomicBoolean authoritative = new AtomicBoolean(false);
+	private final AtomicInteger syncGeneration = new AtomicInteger();
+	private final Counter definitelyNew;
+	private final Counter maybeSeen;
+	private final Counter falsePositive;
+
+	public ProcessedEventFilter(
+			StringRedisTemplate redis,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.idempotency.filter.enabled:true}") boolean enabled,
+			@Value("${consumer.idempotency.filter.window:7d}") Duration window,
+			@Value("${consumer.idempotency.filter.segments:7}") int segments,
+			@Value("${consumer.idempotency.filter.expected-insertions:1000000}") long expectedInsertions,
+			@Value("${consumer.idempotency.filter.fpp:0.01}") double fpp
+	) {
+		this.redis = redis;
+		this.enabled = enabled;
+		this.window = window;
+		this.filter = enabled
+				? new RotatingBloomFilter(window, segments, expectedInsertions, fpp, System::currentTimeMillis)
+				: null;
+		this.definitelyNew = Counter.builder("consumer.idempotency.filter").tag("result", "definitely_new").register(meterRegistry);
+		this.maybeSeen = Counter.builder("consumer.idempotency.filter").tag("result", "maybe_seen").register(meterRegistry);
+		this.falsePositive = Counter.builder("consumer.idempotency.filter").tag("result", "false_positive").register(meterRegistry);
+		Gauge.builder("consumer.idempotency.filter.ready", authoritative, b -> b.get() ? 1 : 0).register(meterRegistry);
+		Gauge.builder("consumer.idempotency.filter.bytes", this, f -> f.filter == null ? 0 : f.filter.sizeInBytes()).register(meterRegistry);
+	}
+
+	/**
+	 * @return false somente quando o evento com certeza nunca foi marcado como processado
+	 */
+	public boolean mightContain(UUID eventId) {
+		if (!enabled || !authoritative.get()) {
+			return true;
+		}
+		if (filter.mightContain(eventId)) {
+			maybeSeen.increment();
+			return true;
+		}
+		definitelyNew.increment();
+		return false;
+	}
+
+	public void put(UUID eventId) {
+		if (enabled) {
+			filter.put(eventId);
+		}
+	}
+
+	/**
+	 * Registra que um "talvez visto" não existia no Redis (falso positivo do filtro).
+	 * Enquanto o filtro não é confiável ele responde "talvez" para tudo, e isso não é falso positivo.
+	 */
+	public void recordFalsePositive() {
+		if (enabled && authoritative.get()) {
+			falsePositive.increment();
+		}
+	}
+
+	/**
+	 * Marca o filtro como não confiável e o reconstrói incrementalmente a partir do keyspace do Redis (SCAN),
+	 * em background. Chamado sempre que este consumer recebe partições (eventos processados por outra instância
+	 * passam a poder chegar aqui).
+	 *
+	 * Cada chave vai para o segmento do instante em que foi gravada (deduzido do TTL restante via PTTL em
+	 * pipeline, já que a marca é gravada com TTL igual à janela), e não toda para o segmento corrente —
+	 * que é dimensionado para {@code expectedInsertions / segments} e saturaria.
+	 */
+	public void resync() {
+		if (!enabled) {
+			return;
+		}
+		authoritative.set(false);
+		int generation = syncGeneration.incrementAndGet();
+		Thread.ofPlatform().daemon().name("processed-event-filter-sync").start(() -> {
+			long loaded = 0;
+			try (Cursor<String> cursor = redis.scan(ScanOptions.scanOptions().match(KEY_PATTERN).count(SCAN_BATCH).build())) {
+				List<String> keys = new ArrayList<>(SCAN_BATCH);
+				while (cursor.hasNext()) {
+					if (syncGeneration.get() != generation) {
+						return; // outra sincronização começou depois desta
+					}
+					keys.add(cursor.next());
+					if (keys.size() == SCAN_BATCH || !cursor.hasNext()) {
+						loaded += load(keys);
+						keys.clear();
+					}
+				}
+				if (syncGeneration.get() == generation) {
+					authoritative.set(true);
+					log.info("Filtro de eventos processados sincronizado: chaves={}, memoria={}KB", loaded, filter.sizeInBytes() / 1024);
+				}
+			} catch (Exception e) {
+				log.warn("Falha ao sincronizar filtro de eventos processados; seguindo com checagem direta no Redis", e);
+			}
+		});
+	}
+
+	private int load(List<String> keys) {
+		List<Object> ttls = redis.executePipelined((RedisCallback<Object>) connection -> {
+			for (String key : keys) {
+				connection.keyCommands().pTtl(key.getBytes(StandardCharsets.UTF_8));
+			}
+			return null;
+		});
+		long now = System.currentTimeMillis();
+		int loaded = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			long ttl = ttls.get(i) instanceof Long l ? l : -1L;
+			if (ttl == -2L) {
+				continue; // expirou entre o SCAN e o PTTL
+			}
+			UUID id;
+			try {
+				id = UUID.fromString(keys.get(i).substring(KEY_PREFIX.length()));
+			} catch (IllegalArgumentException ignored) {
+				continue; // chave fora do padrão
+			}
+			// sem TTL (-1): trata como gravada agora, o que só mantém o item no filtro por mais tempo
+			long insertedAt = ttl < 0 ? now : now - Math.max(0L, window.toMillis() - ttl);
+			filter.put(id, insertedAt);
+			loaded++;
+		}
+		return loaded;
+	}
+}
@@ -0,0 +1,221 @@
+package com.sus.fiap.consumer.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Contadores incrementais por unidade (schema): senhas ativas por priorização e pontos de médico abertos.
+ * O banco só é consultado no aquecimento (primeiro uso da unidade) e na reconciliação periódica;
+ * entre elas os contadores são atualizados pelas transições que o {@link EventProcessor} aplica (após o commit).
+ */
+@Component
+public class QueueDepthTracker {
+	private static final Logger log = LoggerFactory.getLogger(QueueDepthTracker.class);
+
+	private static final List<Integer> ESTADOS_FINAIS = List.of(6, 90, 91);
+	private static final int PRIORIZACOES = 4;
+
+	private final AtendimentosUnidadeRepository atendimentosUnidadeRepository;
+	private final PontoColaboradorRepository pontoColaboradorRepository;
+	private final Map<String, UnitState> unidades = new ConcurrentHashMap<>();
+
+	public QueueDepthTracker(
+			AtendimentosUnidadeRepository atendimentosUnidadeRepository,
+			PontoColaboradorRepository pontoColaboradorRepository
+	) {
+		this.atendimentosUnidadeRepository = atendimentosUnidadeRepository;
+		this.pontoColaboradorRepository = pontoColaboradorRepository;
+	}
+
+	/**
+	 * Retrato atual da unidade; aquece a partir do banco no primeiro uso.
+	 */
+	public QueueDepth snapshot(String tenant) {
+		UnitState state = unidades.computeIfAbsent(tenant, t -> new UnitState());
+		if (!state.warm) {
+			synchronized (state) {
+				if (!state.warm) {
+					load(tenant, state);
+				}
+			}
+		}
+		return new QueueDepth(
+				Math.max(0L, state.ativos.get(0)),
+				Math.max(0L, state.ativos.get(1)),
+				Math.max(0L, state.ativos.get(2)),
+				Math.max(0L, state.ativos.get(3)),
+				Math.max(0L, state.medicos.get())
+		);
+	}
+
+	public void ticketAtivado(String tenant, Integer codTipoPriorizacao) {
+		add(tenant, codTipoPriorizacao, 1);
+	}
+
+	public void ticketEncerrado(String tenant, Integer codTipoPriorizacao) {
+		add(tenant, codTipoPriorizacao, -1);
+	}
+
+	public void ticketRepriorizado(String tenant, Integer de, Integer para) {
+		add(tenant, de, -1);
+		add(tenant, para, 1);
+	}
+
+	public void pontoAberto(String tenant) {
+		addMedicos(tenant, 1);
+	}
+
+	public void pontoFechado(String tenant) {
+		addMedicos(tenant, -1);
+	}
+
+	/**
+	 * Esfria todas as unidades: o próximo {@link #snapshot(String)} de cada uma recarrega do banco.
+	 * Chamado a cada atribuição de partições — depois de um rebalanceamento esta instância pode ter deixado de
+	 * consumir (e de receber as transições de) unidades que já estavam aquecidas, ou passado a consumir outras.
+	 */
+	public void invalidate() {
+		for (UnitState state : unidades.values()) {
+			synchronized (state.deltas) {
+				if (!state.loading) {
+					state.warm = false;
+				}
+				// carga em andamento: ela já lê o banco depois do rebalanceamento
+			}
+		}
+	}
+
+	/**
+	 * Corrige eventuais desvios (transições feitas por fora deste consumer, outra instância etc.).
+	 */
+	@Scheduled(
+			initialDelayString = "${consumer.metrics.queue-depth.reconcile-interval:5m}",
+			fixedDelayString = "${consumer.metrics.queue-depth.reconcile-interval:5m}"
+	)
+	public void reconcile() {
+		for (Map.Entry<String, UnitState> entry : unidades.entrySet()) {
+			try {
+				synchronized (entry.getValue()) {
+					load(entry.getKey(), entry.getValue());
+				}
+			} catch (Exception e) {
+				log.warn("Falha ao reconciliar contadores da fila: tenant={}", entry.getKey(), e);
+			}
+		}
+	}
+
+	private void add(String tenant, Integer codTipoPriorizacao, long delta) {
+		int idx = codTipoPriorizacao == null ? 0 : codTipoPriorizacao;
+		if (idx < 0 || idx >= PRIORIZACOES) {
+			return;
+		}
+		UnitState state = unidades.get(tenant);
+		if (state == null) {
+			return;
+		}
+		synchronized (state.deltas) {
+			if (state.loading) {
+				state.pendentesAtivos[idx] += delta;
+			} else if (state.warm) {
+				state.ativos.addAndGet(idx, delta);
+			}
+			// sem aquecimento ainda: a carga inicial vai ler o estado já confirmado no banco
+		}
+	}
+
+	private void addMedicos(String tenant, long delta) {
+		UnitState state = unidades.get(tenant);
+		if (state == null) {
+			return;
+		}
+		synchronized (state.deltas) {
+			if (state.loading) {
+				state.pendentesMedicos += delta;
+			} else if (state.warm) {
+				state.medicos.addAndGet(delta);
+			}
+		}
+	}
+
+	/**
+	 * Chamado com o monitor de {@code state} (uma carga por unidade por vez). As transições que chegam durante as
+	 * consultas ficam em {@code pendentes*} e são somadas ao resultado: sem isso, uma transição confirmada depois do
+	 * COUNT seria sobrescrita (ou perdida no primeiro aquecimento) até a próxima reconciliação. O delta chega logo
+	 * após o commit, então uma transição já contada pelo COUNT e somada de novo fica restrita a essa janela curta.
+	 */
+	private void load(String tenant, UnitState state) {
+		synchronized (state.deltas) {
+			state.loading = true;
+			Arrays.fill(state.pendentesAtivos, 0L);
+			state.pendentesMedicos = 0L;
+		}
+		long[] contagem = null;
+		try {
+			contagem = TenantContext.callWithTenant(tenant, this::count);
+		} finally {
+			synchronized (state.deltas) {
+				state.loading = false;
+				if (contagem != null) {
+					for (int p = 0; p < PRIORIZACOES; p++) {
+						long atual = contagem[p] + state.pendentesAtivos[p];
+						long anteriorValor = state.ativos.getAndSet(p, atual);
+						if (state.warm && anteriorValor != atual) {
+							log.info("Contador de fila reconciliado: tenant={}, priorizacao={}, memoria={}, banco={}",
+									tenant, p, anteriorValor, atual);
+						}
+					}
+					state.medicos.set(contagem[PRIORIZACOES] + state.pendentesMedicos);
+					state.warm = true;
+				} else if (state.warm) {
+					// carga falhou: os contadores anteriores seguem valendo com as transições do intervalo
+					for (int p = 0; p < PRIORIZACOES; p++) {
+						state.ativos.addAndGet(p, state.pendentesAtivos[p]);
+					}
+					state.medicos.addAndGet(state.pendentesMedicos);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Senhas ativas por priorização e, na última posição, pontos abertos.
+	 */
+	private long[] count() {
+		long[] contagem = new long[PRIORIZACOES + 1];
+		for (int p = 0; p < PRIORIZACOES; p++) {
+			contagem[p] = atendimentosUnidadeRepository
+					.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(ESTADOS_FINAIS, p);
+		}
+		contagem[PRIORIZACOES] = pontoColaboradorRepository.countByHorarioSaidaIsNull();
+		return contagem;
+	}
+
+	/**
+	 * Índices de {@code ativos}: códigos de TIPO_PRIORIZACAO (0=normal, 1=idoso, 2=gestante, 3=emergência).
+	 */
+	private static final class UnitState {
+		private final AtomicLongArray ativos = new AtomicLongArray(PRIORIZACOES);
+		private final AtomicLong medicos = new AtomicLong();
+		// guarda loading e pendentes*; nunca é mantido durante uma consulta ao banco
+		private final Object deltas = new Object();
+		private final long[] pendentesAtivos = new long[PRIORIZACOES];
+		private long pendentesMedicos;
+		private boolean loading;
+		private volatile boolean warm;
+	}
+
+	public record QueueDepth(long normal, long idoso, long gestante, long emergencia, long medicos) {
+	}
+}
@@ -0,0 +1,312 @@
+package com.sus.fiap.consumer.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.repository.AtendimentoFila;
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reconcilia {@code queue:zset:<unidade>} com as senhas ativas de {@code ATENDIMENTOS_UNIDADE} de cada schema.
+ * A fila é lida com {@code ZSCAN} e ordenada em memória por nrSeq; o banco é lido em páginas por
+ * keyset (nrSeq crescente). Um merge das duas sequências ordenadas encontra três tipos de desvio:
+ * <ul>
+ *   <li>{@code ausente}: ativa no banco e fora da fila;</li>
+ *   <li>{@code score}: na fila com a faixa diferente da priorização no banco (ou com score fora do layout atual);</li>
+ *   <li>{@code sobra}: na fila sem estar ativa no banco (infla {@code pessoasNaFrente} e o tempo de espera).</li>
+ * </ul>
+ * Os candidatos são reconferidos no banco com lock compartilhado e o reparo vai pelo outbox ({@code ENQUEUE}/{@code REMOVE}):
+ * fica ordenado com as transições concorrentes da mesma senha e é aplicado em lotes pelo {@link RedisOutboxRelay}.
+ * Ritmo limitado para não disputar com os eventos: uma unidade por vez, páginas de {@code page-size} e no máximo
+ * {@code max-pages-per-second} páginas (banco, Redis ou reparo) por segundo, cada uma pegando o banco só durante a consulta.
+ * Desvios em {@code consumer.queue.reconcile.drift{unidade,tipo}}.
+ */
+@Component
+public class QueueReconciler {
+	private static final Logger log = LoggerFactory.getLogger(QueueReconciler.class);
+
+	private static final List<Integer> ESTADOS_FINAIS = List.of(6, 90, 91);
+
+	private final AtendimentosUnidadeRepository atendimentosUnidadeRepository;
+	private final RedisQueueService redisQueueService;
+	private final RedisQueueOutbox redisQueueOutbox;
+	private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+	private final TransactionTemplate transactionTemplate;
+	private final DataSource dataSource;
+	private final MeterRegistry meterRegistry;
+	private final boolean enabled;
+	private final long intervalMillis;
+	private final int pageSize;
+	private final long pauseMillis;
+	private final ScheduledExecutorService executor;
+
+	public QueueReconciler(
+			AtendimentosUnidadeRepository atendimentosUnidadeRepository,
+			RedisQueueService redisQueueService,
+			RedisQueueOutbox redisQueueOutbox,
+			DatabaseConcurrencyLimiter databaseConcurrencyLimiter,
+			TransactionTemplate transactionTemplate,
+			DataSource dataSource,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.queue.reconcile.enabled:true}") boolean enabled,
+			@Value("${consumer.queue.reconcile.interval:5m}") Duration interval,
+			@Value("${consumer.queue.reconcile.page-size:500}") int pageSize,
+			@Value("${consumer.queue.reconcile.max-pages-per-second:10}") int maxPagesPerSecond
+	) {
+		if (pageSize < 1 || maxPagesPerSecond < 1) {
+			throw new IllegalArgumentException("consumer.queue.reconcile.page-size e max-pages-per-second devem ser >= 1: "
+					+ pageSize + ", " + maxPagesPerSecond);
+		}
+		this.atendimentosUnidadeRepository = atendimentosUnidadeRepository;
+		this.redisQueueService = redisQueueService;
+		this.redisQueueOutbox = redisQueueOutbox;
+		this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+		this.transactionTemplate = transactionTemplate;
+		this.dataSource = dataSource;
+		this.meterRegistry = meterRegistry;
+		this.enabled = enabled;
+		this.intervalMillis = interval.toMillis();
+		this.pageSize = pageSize;
+		this.pauseMillis = 1000L / maxPagesPerSecond;
+		this.executor = Executors.newSingleThreadScheduledExecutor(
+				Thread.ofPlatform().daemon().name("queue-reconciler").factory());
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (enabled) {
+			executor.scheduleWithFixedDelay(this::reconcileAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void reconcileAll() {
+		List<String> tenants;
+		try {
+			tenants = tenantSchemas();
+		} catch (SQLException e) {
+			log.warn("Falha ao listar schemas para reconciliar a fila: {}", e.toString());
+			return;
+		}
+		for (String tenant : tenants) {
+			try {
+				reconcile(tenant);
+			} catch (CancellationException e) {
+				return;
+			} catch (Exception e) {
+				log.warn("Falha ao reconciliar fila do Redis: tenant={}", tenant, e);
+			}
+		}
+	}
+
+	/**
+	 * Compara a fila da unidade do schema com o banco e grava no outbox o reparo dos desvios.
+	 */
+	public Drift reconcile(String tenant) {
+		String unidade = unidadeDoTenant(tenant);
+		if (unidade == null) {
+			return new Drift(0, 0, 0);
+		}
+		Timer.Sample sample = Timer.start(meterRegistry);
+
+		MembrosFila fila = new MembrosFila();
+		redisQueueService.scanQueue(unidade, pageSize, pagina -> {
+			for (TypedTuple<String> membro : pagina) {
+				fila.add(membro);
+			}
+			throttle();
+		});
+		fila.sort();
+
+		List<Long> candidatos = new ArrayList<>();
+		int ausentes = 0;
+		int scores = 0;
+		int sobras = 0;
+		int i = 0;
+		long depoisDe = 0L;
+		while (true) {
+			long cursor = depoisDe;
+			List<AtendimentoFila> pagina = databaseConcurrencyLimiter.call(() -> TenantContext.callWithTenant(tenant,
+					() -> atendimentosUnidadeRepository.findAtivosDepoisDe(cursor, Limit.of(pageSize))));
+			for (AtendimentoFila ativo : pagina) {
+				long nrSeq = ativo.nrSeqAtendimento();
+				while (i < fila.size && fila.nrSeqs[i] < nrSeq) {
+					candidatos.add(fila.nrSeqs[i++]);
+					sobras++;
+				}
+				if (i < fila.size && fila.nrSeqs[i] == nrSeq) {
+					// a chegada só existe no Redis: confere a faixa mantendo a chegada gravada no próprio score
+					double score = fila.scores[i];
+					if (score != RedisQueueService.scoreFor(ativo.codTipoPriorizacao(), RedisQueueService.chegada(score))) {
+						candidatos.add(nrSeq);
+						scores++;
+					}
+					i++;
+				} else {
+					candidatos.add(nrSeq);
+					ausentes++;
+				}
+			}
+			if (pagina.size() < pageSize) {
+				break;
+			}
+			depoisDe = pagina.get(pagina.size() - 1).nrSeqAtendimento();
+			throttle();
+		}
+		while (i < fila.size) {
+			candidatos.add(fila.nrSeqs[i++]);
+			sobras++;
+		}
+
+		for (int from = 0; from < candidatos.size(); from += pageSize) {
+			repair(tenant, unidade, candidatos.subList(from, Math.min(candidatos.size(), from + pageSize)));
+			throttle();
+		}
+
+		Drift drift = new Drift(ausentes, scores, sobras);
+		meterRegistry.counter("consumer.queue.reconcile.drift", "unidade", unidade, "tipo", "ausente").increment(ausentes);
+		meterRegistry.counter("consumer.queue.reconcile.drift", "unidade", unidade, "tipo", "score").increment(scores);
+		meterRegistry.counter("consumer.queue.reconcile.drift", "unidade", unidade, "tipo", "sobra").increment(sobras);
+		sample.stop(meterRegistry.timer("consumer.queue.reconcile", "unidade", unidade));
+		if (!candidatos.isEmpty()) {
+			log.info("Fila do Redis reconciliada: unidade={}, naFila={}, ausentes={}, scoreDivergente={}, sobras={}",
+					unidade, fila.size, ausentes, scores, sobras);
+		}
+		return drift;
+	}
+
+	/**
+	 * Reconfere as senhas com lock compartilhado (espera uma transição em andamento) e grava o estado atual no outbox.
+	 */
+	private void repair(String tenant, String unidade, List<Long> nrSeqs) {
+		databaseConcurrencyLimiter.run(() -> TenantContext.runWithTenant(tenant, () -> transactionTemplate.executeWithoutResult(status -> {
+			Map<Long, AtendimentosUnidade> atuais = new HashMap<>();
+			for (AtendimentosUnidade atendimento : atendimentosUnidadeRepository.findAllByIdForShare(nrSeqs)) {
+				atuais.put(atendimento.getNrSeqAtendimento(), atendimento);
+			}
+			for (Long nrSeq : nrSeqs) {
+				AtendimentosUnidade atendimento = atuais.get(nrSeq);
+				if (atendimento != null && !ESTADOS_FINAIS.contains(atendimento.getEstadoSenha().getCodTipoEstado())) {
+					redisQueueOutbox.enqueue(unidade, atendimento);
+				} else {
+					redisQueueOutbox.remove(unidade, String.valueOf(nrSeq),
+							atendimento == null ? null : atendimento.getPaciente().getCodCadastroSusPaciente());
+				}
+			}
+		})));
+	}
+
+	private void throttle() {
+		try {
+			Thread.sleep(pauseMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Reconciliação da fila interrompida");
+		}
+	}
+
+	private List<String> tenantSchemas() throws SQLException {
+		List<String> schemas = new ArrayList<>();
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement ps = connection.prepareStatement("SELECT table_schema FROM information_schema.tables"
+						+ " WHERE lower(table_name) = 'atendimentos_unidade' AND lower(table_schema) LIKE 'und\\_atd%' ORDER BY 1");
+				ResultSet rs = ps.executeQuery()) {
+			while (rs.next()) {
+				schemas.add(rs.getString(1));
+			}
+		}
+		return schemas;
+	}
+
+	/**
+	 * {@code und_atdN -> UPAN}, o inverso de {@link UnidadeSchemaResolver}.
+	 */
+	private static String unidadeDoTenant(String tenant) {
+		String suffix = tenant.substring(Math.min(tenant.length(), "und_atd".length()));
+		if (!tenant.regionMatches(true, 0, "und_atd", 0, "und_atd".length())
+				|| suffix.isEmpty() || !suffix.chars().allMatch(Character::isDigit)) {
+			return null;
+		}
+		return "UPA" + suffix;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Desvios encontrados em uma reconciliação (todos reparados via outbox).
+	 */
+	public record Drift(int ausentes, int scoreDivergente, int sobras) {
+	}
+
+	/**
+	 * Membros numéricos da fila (nrSeq) e seus scores, ordenados por nrSeq em {@link #sort()}.
+	 */
+	private static final class MembrosFila {
+		private long[] nrSeqs = new long[256];
+		private double[] scores = new double[256];
+		private int size;
+
+		void add(TypedTuple<String> membro) {
+			long nrSeq;
+			try {
+				nrSeq = Long.parseLong(membro.getValue());
+			} catch (NumberFormatException e) {
+				log.warn("Membro não numérico na fila ignorado pela reconciliação: {}", membro.getValue());
+				return;
+			}
+			if (size == nrSeqs.length) {
+				nrSeqs = Arrays.copyOf(nrSeqs, size * 2);
+				scores = Arrays.copyOf(scores, size * 2);
+			}
+			nrSeqs[size] = nrSeq;
+			scores[size] = membro.getScore() == null ? Double.NaN : membro.getScore();
+			size++;
+		}
+
+		void sort() {
+			Integer[] ordem = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				ordem[i] = i;
+			}
+			Arrays.sort(ordem, (a, b) -> Long.compare(nrSeqs[a], nrSeqs[b]));
+			long[] seqOrdenados = new long[size];
+			double[] scoresOrdenados = new double[size];
+			for (int i = 0; i < size; i++) {
+				seqOrdenados[i] = nrSeqs[ordem[i]];
+				scoresOrdenados[i] = scores[ordem[i]];
+			}
+			nrSeqs = seqOrdenados;
+			scores = scoresOrdenados;
+		}
+	}
+}
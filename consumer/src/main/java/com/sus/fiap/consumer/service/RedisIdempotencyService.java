@@ -1,28 +1,222 @@
 package com.sus.fiap.consumer.service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RedisIdempotencyService {
 	private static final Duration DEFAULT_TTL = Duration.ofDays(7);
+	private static final String PROCESSED = "1";
+	// Só apaga as chaves que ainda têm a reserva desta instância (a reserva pode ter expirado e sido tomada por outra)
+	// KEYS: event:processed:<id>... | ARGV: valor da reserva
+	private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+			local n = 0
+			for _, key in ipairs(KEYS) do
+				if redis.call('GET', key) == ARGV[1] then
+					n = n + redis.call('DEL', key)
+				end
+			end
+			return n
+			""", Long.class);
+
+	/**
+	 * Resultado da reserva de um evento no modo "claim".
+	 */
+	public enum Claim {
+		/** Reservado por este consumer: pode processar. */
+		CLAIMED,
+		/** Já processado (marca gravada após o commit): pode ser descartado. */
+		PROCESSED,
+		/** Reservado por uma transação ainda em andamento (desta ou de outra instância): não pode ser descartado. */
+		IN_FLIGHT
+	}
 
 	private final StringRedisTemplate redis;
+	private final ProcessedEventFilter filter;
+	private final boolean claimFirst;
+	private final Duration claimTtl;
+	// valor da reserva, diferente da marca de processado: identifica a instância dona da transação
+	private final String claimValue = "claim:" + UUID.randomUUID();
 
-	public RedisIdempotencyService(StringRedisTemplate redis) {
+	public RedisIdempotencyService(
+			StringRedisTemplate redis,
+			ProcessedEventFilter filter,
+			@Value("${consumer.idempotency.mode:check}") String mode,
+			@Value("${consumer.idempotency.claim-ttl:5m}") Duration claimTtl
+	) {
 		this.redis = redis;
+		this.filter = filter;
+		this.claimFirst = "claim".equalsIgnoreCase(mode == null ? null : mode.trim());
+		this.claimTtl = claimTtl;
+	}
+
+	/**
+	 * Modo "claim": o evento é reservado (SET NX PX) antes do processamento, em vez de consultado (EXISTS).
+	 * Evita que dois consumers processem o mesmo evento em paralelo.
+	 */
+	public boolean isClaimFirst() {
+		return claimFirst;
 	}
 
 	public boolean isProcessed(UUID eventId) {
-		Boolean exists = redis.hasKey(key(eventId));
-		return exists != null && exists;
+		if (!filter.mightContain(eventId)) {
+			return false;
+		}
+		if (!PROCESSED.equals(redis.opsForValue().get(key(eventId)))) {
+			filter.recordFalsePositive();
+			return false;
+		}
+		return true;
 	}
 
 	public void markProcessed(UUID eventId) {
-		redis.opsForValue().set(key(eventId), "1", DEFAULT_TTL);
+		redis.opsForValue().set(key(eventId), PROCESSED, DEFAULT_TTL);
+		filter.put(eventId);
+	}
+
+	/**
+	 * Versão em lote de {@link #isProcessed(UUID)}: um único MGET para os eventos que o pré-filtro
+	 * não descartou (nenhum round trip quando todos são certamente novos).
+	 * @return os eventIds ainda não processados, na ordem recebida
+	 */
+	public Set<UUID> filterUnprocessed(Collection<UUID> eventIds) {
+		Set<UUID> pendentes = new LinkedHashSet<>();
+		if (eventIds == null || eventIds.isEmpty()) {
+			return pendentes;
+		}
+		List<UUID> talvezVistos = new ArrayList<>();
+		for (UUID id : eventIds) {
+			if (filter.mightContain(id)) {
+				talvezVistos.add(id);
+			}
+		}
+		Set<UUID> jaProcessados = new HashSet<>();
+		if (!talvezVistos.isEmpty()) {
+			List<String> keys = new ArrayList<>(talvezVistos.size());
+			for (UUID id : talvezVistos) {
+				keys.add(key(id));
+			}
+			List<String> values = redis.opsForValue().multiGet(keys);
+			for (int i = 0; i < talvezVistos.size(); i++) {
+				if (values != null && PROCESSED.equals(values.get(i))) {
+					jaProcessados.add(talvezVistos.get(i));
+				} else {
+					filter.recordFalsePositive();
+				}
+			}
+		}
+		for (UUID id : eventIds) {
+			if (!jaProcessados.contains(id)) {
+				pendentes.add(id);
+			}
+		}
+		return pendentes;
+	}
+
+	/**
+	 * Versão em lote de {@link #markProcessed(UUID)}: todos os SETs em um único pipeline.
+	 */
+	public void markProcessedAll(Collection<UUID> eventIds) {
+		if (eventIds == null || eventIds.isEmpty()) {
+			return;
+		}
+		redis.executePipelined(new SessionCallback<Object>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object execute(RedisOperations operations) throws DataAccessException {
+				for (UUID id : eventIds) {
+					operations.opsForValue().set(key(id), PROCESSED, DEFAULT_TTL);
+				}
+				return null;
+			}
+		});
+		eventIds.forEach(filter::put);
+	}
+
+	/**
+	 * Reserva o evento para processamento (SET NX PX) com um valor próprio desta instância. A reserva expira em
+	 * {@code claimTtl} caso o processo morra antes do commit; após o commit é substituída por {@link #markProcessed(UUID)}.
+	 * Se a chave já existe, só a marca de processado permite descartar o evento: uma reserva alheia ainda pode
+	 * terminar em rollback (ou nunca terminar, se a instância morreu), então o evento precisa ser tentado de novo.
+	 */
+	public Claim tryClaim(UUID eventId) {
+		return claimAll(List.of(eventId)).get(eventId);
+	}
+
+	/**
+	 * Versão em lote de {@link #tryClaim(UUID)}: um pipeline de SET NX e, só para as chaves já existentes, um MGET.
+	 * @return o resultado de cada eventId, na ordem recebida
+	 */
+	public Map<UUID, Claim> claimAll(Collection<UUID> eventIds) {
+		Map<UUID, Claim> resultado = new LinkedHashMap<>();
+		if (eventIds == null || eventIds.isEmpty()) {
+			return resultado;
+		}
+		List<UUID> ids = new ArrayList<>(new LinkedHashSet<>(eventIds));
+		List<Object> results = redis.executePipelined(new SessionCallback<Object>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object execute(RedisOperations operations) throws DataAccessException {
+				for (UUID id : ids) {
+					operations.opsForValue().setIfAbsent(key(id), claimValue, claimTtl);
+				}
+				return null;
+			}
+		});
+		List<UUID> existentes = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i++) {
+			if (Boolean.TRUE.equals(results.get(i))) {
+				resultado.put(ids.get(i), Claim.CLAIMED);
+			} else {
+				resultado.put(ids.get(i), Claim.IN_FLIGHT);
+				existentes.add(ids.get(i));
+			}
+		}
+		if (!existentes.isEmpty()) {
+			List<String> keys = new ArrayList<>(existentes.size());
+			for (UUID id : existentes) {
+				keys.add(key(id));
+			}
+			// chave removida entre o SET NX e o MGET (rollback ou expiração) continua IN_FLIGHT: nova tentativa
+			List<String> values = redis.opsForValue().multiGet(keys);
+			for (int i = 0; i < existentes.size(); i++) {
+				if (values != null && PROCESSED.equals(values.get(i))) {
+					resultado.put(existentes.get(i), Claim.PROCESSED);
+				}
+			}
+		}
+		return resultado;
+	}
+
+	/**
+	 * Libera reservas (desta instância) de eventos cuja transação não foi confirmada, permitindo o retry.
+	 */
+	public void releaseClaims(Collection<UUID> eventIds) {
+		if (eventIds == null || eventIds.isEmpty()) {
+			return;
+		}
+		List<String> keys = new ArrayList<>(eventIds.size());
+		for (UUID id : eventIds) {
+			keys.add(key(id));
+		}
+		redis.execute(RELEASE_SCRIPT, keys, claimValue);
 	}
 
 	/**
@@ -0,0 +1,194 @@
+package com.sus.fiap.consumer.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+import com.sus.fiap.consumer.persistence.repository.RedisOutboxRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Aplica no Redis, em lotes e na ordem de {@code ID}, as mutações gravadas em {@code REDIS_OUTBOX} de cada schema.
+ * Cada lote é uma transação curta: lê as linhas mais antigas, aplica em um pipeline ({@link RedisQueueService#applyAll})
+ * e apaga as aplicadas. Se o Redis falhar, nada é apagado e o schema é tentado de novo com espera exponencial
+ * (até {@code max-backoff}); como as mutações são idempotentes, reaplicar um lote é seguro.
+ * Um único worker por instância; no PostgreSQL um advisory lock por schema garante um relay por vez entre instâncias,
+ * o que mantém a ordem. Além do aviso após cada commit ({@link #wakeUp}), todos os schemas são varridos a cada
+ * {@code poll-interval}, o que cobre linhas deixadas por outra instância ou por um crash.
+ */
+@Component
+public class RedisOutboxRelay {
+	private static final Logger log = LoggerFactory.getLogger(RedisOutboxRelay.class);
+
+	private final RedisOutboxRepository redisOutboxRepository;
+	private final RedisQueueService redisQueueService;
+	private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+	private final TransactionTemplate transactionTemplate;
+	private final DataSource dataSource;
+	private final boolean enabled;
+	private final int batchSize;
+	private final long pollIntervalMillis;
+	private final long maxBackoffMillis;
+	private final Set<String> tenants = ConcurrentHashMap.newKeySet();
+	private final Map<String, TenantState> states = new ConcurrentHashMap<>();
+	private final Semaphore wake = new Semaphore(0);
+	private final Counter relayed;
+	private final Counter failures;
+	private volatile boolean advisoryLock;
+	private volatile Thread worker;
+
+	public RedisOutboxRelay(
+			RedisOutboxRepository redisOutboxRepository,
+			RedisQueueService redisQueueService,
+			DatabaseConcurrencyLimiter databaseConcurrencyLimiter,
+			TransactionTemplate transactionTemplate,
+			DataSource dataSource,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.redis.outbox.relay.enabled:true}") boolean enabled,
+			@Value("${consumer.redis.outbox.batch-size:500}") int batchSize,
+			@Value("${consumer.redis.outbox.poll-interval:1s}") Duration pollInterval,
+			@Value("${consumer.redis.outbox.max-backoff:30s}") Duration maxBackoff
+	) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("consumer.redis.outbox.batch-size deve ser >= 1: " + batchSize);
+		}
+		this.redisOutboxRepository = redisOutboxRepository;
+		this.redisQueueService = redisQueueService;
+		this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+		this.transactionTemplate = transactionTemplate;
+		this.dataSource = dataSource;
+		this.enabled = enabled;
+		this.batchSize = batchSize;
+		this.pollIntervalMillis = Math.max(1L, pollInterval.toMillis());
+		this.maxBackoffMillis = Math.max(pollIntervalMillis, maxBackoff.toMillis());
+		this.relayed = Counter.builder("consumer.redis.outbox").tag("result", "relayed").register(meterRegistry);
+		this.failures = Counter.builder("consumer.redis.outbox").tag("result", "failed").register(meterRegistry);
+	}
+
+	/**
+	 * Descobre os schemas com {@code REDIS_OUTBOX} (linhas pendentes de uma execução anterior) e inicia o worker.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		try (Connection connection = dataSource.getConnection()) {
+			advisoryLock = "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+			try (PreparedStatement ps = connection.prepareStatement("SELECT table_schema FROM information_schema.tables"
+					+ " WHERE lower(table_name) = 'redis_outbox' AND lower(table_schema) LIKE 'und\\_atd%'");
+					ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					tenants.add(rs.getString(1));
+				}
+			}
+		} catch (SQLException e) {
+			log.warn("Falha ao listar schemas com outbox do Redis (seguem os que receberem escrita): {}", e.toString());
+		}
+		worker = Thread.ofPlatform().daemon().name("redis-outbox-relay").start(this::run);
+	}
+
+	/**
+	 * Avisa que há linhas novas no schema; o worker aplica sem esperar o {@code poll-interval}.
+	 */
+	public void wakeUp(String tenant) {
+		if (tenant != null) {
+			tenants.add(tenant);
+		}
+		wake.release();
+	}
+
+	/**
+	 * Aplica um lote do schema: no máximo {@code batch-size} linhas, das mais antigas.
+	 * @return linhas aplicadas (0 se não há pendências ou se outra instância está aplicando este schema)
+	 */
+	public int drain(String tenant) {
+		Integer aplicadas = databaseConcurrencyLimiter.call(() -> TenantContext.callWithTenant(tenant,
+				() -> transactionTemplate.execute(status -> {
+					if (advisoryLock && !redisOutboxRepository.tryLockRelay()) {
+						return 0;
+					}
+					List<RedisOutbox> lote = redisOutboxRepository.findByOrderByIdAsc(Limit.of(batchSize));
+					if (lote.isEmpty()) {
+						return 0;
+					}
+					redisQueueService.applyAll(lote);
+					redisOutboxRepository.deleteAllByIdInBatch(lote.stream().map(RedisOutbox::getId).toList());
+					return lote.size();
+				})));
+		int n = aplicadas == null ? 0 : aplicadas;
+		relayed.increment(n);
+		return n;
+	}
+
+	private void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				wake.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS);
+				wake.drainPermits();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			for (String tenant : tenants) {
+				relay(tenant);
+			}
+		}
+	}
+
+	private void relay(String tenant) {
+		TenantState state = states.computeIfAbsent(tenant, t -> new TenantState());
+		long agora = System.currentTimeMillis();
+		if (agora < state.retryAt) {
+			return;
+		}
+		try {
+			while (drain(tenant) == batchSize) {
+				// lote cheio: ainda há pendências
+			}
+			state.falhas = 0;
+		} catch (RuntimeException e) {
+			failures.increment();
+			state.falhas++;
+			long backoff = Math.min(maxBackoffMillis, pollIntervalMillis << Math.min(state.falhas - 1, 20));
+			state.retryAt = agora + backoff;
+			log.warn("Falha ao aplicar outbox do Redis: tenant={}, falhasSeguidas={}, novaTentativaEm={}ms: {}",
+					tenant, state.falhas, backoff, e.toString());
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		Thread current = worker;
+		if (current != null) {
+			current.interrupt();
+		}
+	}
+
+	private static final class TenantState {
+		private int falhas;
+		private long retryAt;
+	}
+}
@@ -0,0 +1,127 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+import com.sus.fiap.consumer.persistence.repository.RedisOutboxRepository;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Lado de escrita do outbox da fila: as mesmas operações do {@link RedisQueueService}, mas gravadas em
+ * {@code REDIS_OUTBOX} na transação corrente (um INSERT em lote no commit) em vez de irem ao Redis.
+ * Um rollback descarta as mutações junto com a mudança da senha, e um crash depois do commit não perde nenhuma:
+ * o {@link RedisOutboxRelay} as aplica depois, e é acordado após o commit para que a fila apareça sem esperar o intervalo.
+ * O mesmo vale para o conjunto de médicos com ponto aberto ({@link #pontoAberto}/{@link #pontoFechado}).
+ */
+@Service
+public class RedisQueueOutbox {
+	private final RedisOutboxRepository redisOutboxRepository;
+	private final RedisOutboxRelay redisOutboxRelay;
+
+	public RedisQueueOutbox(RedisOutboxRepository redisOutboxRepository, RedisOutboxRelay redisOutboxRelay) {
+		this.redisOutboxRepository = redisOutboxRepository;
+		this.redisOutboxRelay = redisOutboxRelay;
+	}
+
+	/**
+	 * {@link RedisQueueService#enqueue} com o estado atual da senha.
+	 */
+	public void enqueue(String unidadeAtendimento, AtendimentosUnidade atendimento) {
+		if (unidadeAtendimento == null || unidadeAtendimento.isBlank() || atendimento == null
+				|| atendimento.getNrSeqAtendimento() == null || atendimento.getNrSenhaAtendimento() == null) {
+			return;
+		}
+		append(RedisOutbox.builder()
+				.operacao(RedisOutbox.Operacao.ENQUEUE)
+				.unidadeAtendimento(unidadeAtendimento)
+				.nrSeqAtendimento(atendimento.getNrSeqAtendimento())
+				.nrSenhaAtendimento(atendimento.getNrSenhaAtendimento())
+				.codCadastroSusPaciente(atendimento.getPaciente() == null ? null : atendimento.getPaciente().getCodCadastroSusPaciente())
+				.codTipoPriorizacao(atendimento.getTipoPriorizacao() == null ? null : atendimento.getTipoPriorizacao().getCodTipoPriorizacao())
+				.codEstadoSenha(atendimento.getEstadoSenha() == null ? null : atendimento.getEstadoSenha().getCodTipoEstado())
+				.criadoEm(Instant.now())
+				.build());
+	}
+
+	/**
+	 * {@link RedisQueueService#remove}.
+	 */
+	public void remove(String unidadeAtendimento, String nrSeqAtendimento, Long codCadastroSusPaciente) {
+		removeAll(unidadeAtendimento, List.of(nrSeqAtendimento), codCadastroSusPaciente);
+	}
+
+	/**
+	 * {@link RedisQueueService#removeAll}: uma linha por senha.
+	 */
+	public void removeAll(String unidadeAtendimento, List<String> nrSeqAtendimentos, Long codCadastroSusPaciente) {
+		if (unidadeAtendimento == null || unidadeAtendimento.isBlank()) {
+			return;
+		}
+		Instant agora = Instant.now();
+		for (String nrSeqAtendimento : nrSeqAtendimentos) {
+			append(RedisOutbox.builder()
+					.operacao(RedisOutbox.Operacao.REMOVE)
+					.unidadeAtendimento(unidadeAtendimento)
+					.nrSeqAtendimento(Long.valueOf(nrSeqAtendimento))
+					.codCadastroSusPaciente(codCadastroSusPaciente)
+					.criadoEm(agora)
+					.build());
+		}
+	}
+
+	/**
+	 * Entrada do médico no conjunto de pontos abertos do schema ({@link RedisQueueService#medicosEmAtendimento}).
+	 */
+	public void pontoAberto(String tenant, long codIdColaborador) {
+		ponto(RedisOutbox.Operacao.PONTO_ABERTO, tenant, codIdColaborador);
+	}
+
+	/**
+	 * Saída do médico do conjunto de pontos abertos do schema.
+	 */
+	public void pontoFechado(String tenant, long codIdColaborador) {
+		ponto(RedisOutbox.Operacao.PONTO_FECHADO, tenant, codIdColaborador);
+	}
+
+	private void ponto(RedisOutbox.Operacao operacao, String tenant, long codIdColaborador) {
+		if (tenant == null || tenant.isBlank()) {
+			return;
+		}
+		append(RedisOutbox.builder()
+				.operacao(operacao)
+				.unidadeAtendimento(tenant)
+				.codIdColaborador(codIdColaborador)
+				.criadoEm(Instant.now())
+				.build());
+	}
+
+	private void append(RedisOutbox entry) {
+		redisOutboxRepository.append(entry);
+		String tenant = TenantContext.getCurrentTenant();
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			redisOutboxRelay.wakeUp(tenant);
+			return;
+		}
+		// um aviso ao relay por transação
+		if (TransactionSynchronizationManager.hasResource(this)) {
+			return;
+		}
+		TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				redisOutboxRelay.wakeUp(tenant);
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(RedisQueueOutbox.this);
+			}
+		});
+	}
+}
@@ -1,89 +1,657 @@
 package com.sus.fiap.consumer.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sus.fiap.consumer.model.AtendimentoSnapshot;
 import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RedisQueueService {
 	private static final Logger log = LoggerFactory.getLogger(RedisQueueService.class);
 	private static final Duration TICKET_TTL = Duration.ofDays(7);
-	private static final long SCORE_BUCKET = 1_000_000L;
+	private static final int LEGACY_MIGRATION_BATCH = 1_000;
+
+	// score = (faixa + 1) * 2^50 + chegada. Faixa de prioridade (0 = emergência ... 3 = normal) nos bits altos e ordem de
+	// chegada nos 50 bits baixos. A chegada é um contador por unidade (INCR em queue:chegada:<unidade>) tirado dentro
+	// do script na primeira inserção da senha, então dentro da faixa a fila é FIFO mesmo depois que o número da senha
+	// volta a 1 — o nrSeq não serve para isso: a sequence é alocada em blocos por instância e não cresce na ordem dos
+	// eventos. O maior score (5 * 2^50) fica abaixo de 2^53 e o double guarda o valor exato.
+	// O layout anterior (faixa * 1_000_000 + senha) sempre fica abaixo de ARRIVAL_LIMIT, o que separa os membros a migrar.
+	private static final int ARRIVAL_BITS = 50;
+	static final long ARRIVAL_LIMIT = 1L << ARRIVAL_BITS;
 
 	private static final int PRIORIZACAO_NORMAL = 0;
 	private static final int PRIORIZACAO_IDOSO = 1;
 	private static final int PRIORIZACAO_GESTANTE = 2;
 	private static final int PRIORIZACAO_EMERGENCIA = 3;
 
+	// Cada transição da fila é um script (EVALSHA, carregado na subida): um round trip e sem estado intermediário
+	// visível entre o ZSET, o índice de senhas ativas e o snapshot.
+
+	// Prefixo dos scripts que gravam scores. proximaChegada tira o próximo valor do contador da unidade; se o contador
+	// não existe (unidade nova ou chave perdida), ele parte da maior chegada já presente na fila, para que uma senha
+	// nova nunca passe na frente de quem já está esperando.
+	private static final String CHEGADA_LUA = "local limite = " + ARRIVAL_LIMIT + "\n" + """
+			local function proximaChegada(fila, chegadas)
+				if redis.call('EXISTS', chegadas) == 0 then
+					local maior = 0
+					for faixa = 1, 4 do
+						local ultimo = redis.call('ZREVRANGEBYSCORE', fila, '(' .. string.format('%.0f', (faixa + 1) * limite),
+							string.format('%.0f', faixa * limite), 'WITHSCORES', 'LIMIT', 0, 1)
+						if #ultimo > 0 then
+							maior = math.max(maior, tonumber(ultimo[2]) % limite)
+						end
+					end
+					redis.call('SET', chegadas, string.format('%.0f', maior))
+				end
+				return redis.call('INCR', chegadas)
+			end
+			""";
+
+	// Enfileirar / repriorizar: quem já está na fila (no layout atual) mantém a ordem de chegada e só troca de faixa;
+	// por isso reaplicar o mesmo ENQUEUE (replay do outbox, reparo da reconciliação) não muda a posição da senha.
+	// KEYS: fila, ativos, senhas, snapshot, chegadas | ARGV: início da faixa ((faixa + 1) * 2^50), nrSeq,
+	//   codSus ('' = desconhecido), senha (1..999), ttl (s), formato ('' = não grava, 'json', 'hash'),
+	//   snapshot (json) ou pares campo/valor (hash)
+	// O índice de senhas (número → nrSeq) não é limpo na remoção: tem no máximo 999 campos por unidade, o número é
+	// sobrescrito quando volta a ser emitido e a leitura confere se o nrSeq ainda está na fila.
+	// O DEL antes do HSET troca o tipo da chave quando o formato muda com snapshots já gravados
+	private static final RedisScript<Long> ENQUEUE_SCRIPT = new DefaultRedisScript<>(CHEGADA_LUA + """
+			local atual = tonumber(redis.call('ZSCORE', KEYS[1], ARGV[2]))
+			local chegada
+			if atual and atual >= limite then
+				chegada = atual % limite
+			else
+				chegada = proximaChegada(KEYS[1], KEYS[5])
+			end
+			redis.call('ZADD', KEYS[1], string.format('%.0f', ARGV[1] + chegada), ARGV[2])
+			if ARGV[3] ~= '' then
+				redis.call('HSET', KEYS[2], ARGV[3], ARGV[2])
+			end
+			redis.call('HSET', KEYS[3], ARGV[4], ARGV[2])
+			if ARGV[6] == 'json' then
+				redis.call('SET', KEYS[4], ARGV[7], 'EX', ARGV[5])
+			elseif ARGV[6] == 'hash' then
+				redis.call('DEL', KEYS[4])
+				if #ARGV > 6 then
+					redis.call('HSET', KEYS[4], unpack(ARGV, 7))
+					redis.call('EXPIRE', KEYS[4], ARGV[5])
+				end
+			end
+			return 1
+			""", Long.class);
+
+	// Remoção terminal de uma ou mais senhas do mesmo paciente
+	// KEYS: fila, ativos, snapshot1..N | ARGV: codSus ('' = desconhecido), nrSeq1..N
+	// O campo do paciente só sai se ainda apontar para a senha removida (uma senha nova do paciente não é apagada)
+	private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+			local removidas = 0
+			for i = 2, #ARGV do
+				removidas = removidas + redis.call('ZREM', KEYS[1], ARGV[i])
+				redis.call('DEL', KEYS[i + 1])
+				if ARGV[1] ~= '' and redis.call('HGET', KEYS[2], ARGV[1]) == ARGV[i] then
+					redis.call('HDEL', KEYS[2], ARGV[1])
+				end
+			end
+			return removidas
+			""", Long.class);
+
+	// KEYS: ativos, fila | ARGV: codSus -> {} (sem senha no índice), {nrSeq} (fora da fila) ou {nrSeq, pessoasNaFrente}
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> POSICAO_SCRIPT = new DefaultRedisScript<>("""
+			local nrSeq = redis.call('HGET', KEYS[1], ARGV[1])
+			if not nrSeq then
+				return {}
+			end
+			local score = redis.call('ZSCORE', KEYS[2], nrSeq)
+			if not score then
+				return {nrSeq}
+			end
+			return {nrSeq, tostring(redis.call('ZCOUNT', KEYS[2], '-inf', '(' .. score))}
+			""", List.class);
+
+	// KEYS: senhas, fila | ARGV: senha, fim da faixa do tipo informado -> pessoas na frente
+	// Senha na fila: membros com score menor que o dela. Senha fora da fila: quem entraria na frente de uma senha
+	// emitida agora com o tipo informado (todas as faixas até a dela, inclusive).
+	private static final RedisScript<Long> SENHA_SCRIPT = new DefaultRedisScript<>("""
+			local nrSeq = redis.call('HGET', KEYS[1], ARGV[1])
+			if nrSeq then
+				local score = redis.call('ZSCORE', KEYS[2], nrSeq)
+				if score then
+					return redis.call('ZCOUNT', KEYS[2], '-inf', '(' .. score)
+				end
+			end
+			return redis.call('ZCOUNT', KEYS[2], '-inf', '(' .. ARGV[2])
+			""", Long.class);
+
+	// Várias consultas de posição em um round trip (painéis e totens)
+	// KEYS: senhas, ativos, fila | ARGV: trincas (modo 's' = senha | 'p' = paciente, senha | codSus, fim da faixa)
+	// -> pares por consulta: {nrSeq ('' = sem senha na fila), pessoasNaFrente ('' = paciente sem senha na fila)}
+	// Uma senha fora da fila conta como em SENHA_SCRIPT: quem ficaria na frente de uma senha do tipo emitida agora
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> POSICOES_SCRIPT = new DefaultRedisScript<>("""
+			local reply = {}
+			for i = 1, #ARGV, 3 do
+				local porSenha = ARGV[i] == 's'
+				local nrSeq = redis.call('HGET', porSenha and KEYS[1] or KEYS[2], ARGV[i + 1])
+				local score = nrSeq and redis.call('ZSCORE', KEYS[3], nrSeq)
+				if score then
+					reply[#reply + 1] = nrSeq
+					reply[#reply + 1] = tostring(redis.call('ZCOUNT', KEYS[3], '-inf', '(' .. score))
+				elseif porSenha then
+					reply[#reply + 1] = ''
+					reply[#reply + 1] = tostring(redis.call('ZCOUNT', KEYS[3], '-inf', '(' .. ARGV[i + 2]))
+				else
+					reply[#reply + 1] = ''
+					reply[#reply + 1] = ''
+				end
+			end
+			return reply
+			""", List.class);
+
+	// Migração do layout anterior: até ARGV[2] membros com score < 2^50, a partir da posição ARGV[1]
+	// KEYS: fila, senhas, chegadas | ARGV: offset (membros não numéricos já pulados), limite -> {migrados, pulados}
+	// faixa = floor(score / 1e6) e senha = score % 1e6 no layout anterior; o membro é o nrSeq. A chegada sai do
+	// contador da unidade na ordem do score anterior (a única ordem que o layout antigo guardava).
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> LEGACY_SCORE_SCRIPT = new DefaultRedisScript<>(CHEGADA_LUA + """
+			local membros = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', '(' .. string.format('%.0f', limite),
+				'WITHSCORES', 'LIMIT', ARGV[1], ARGV[2])
+			local migrados, pulados = 0, 0
+			for i = 1, #membros, 2 do
+				local antigo = tonumber(membros[i + 1])
+				if tonumber(membros[i]) then
+					local faixa = math.min(math.max(math.floor(antigo / 1000000), 0), 3)
+					local chegada = proximaChegada(KEYS[1], KEYS[3])
+					redis.call('ZADD', KEYS[1], string.format('%.0f', (faixa + 1) * limite + chegada), membros[i])
+					redis.call('HSET', KEYS[2], string.format('%.0f', antigo % 1000000), membros[i])
+					migrados = migrados + 1
+				else
+					pulados = pulados + 1
+				end
+			end
+			return {migrados, pulados}
+			""", List.class);
+
+	// KEYS: snapshot -> {} (ausente), {'json', valor} ou {'hash', campo1, valor1, ...}
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> SNAPSHOT_SCRIPT = new DefaultRedisScript<>("""
+			local tipo = redis.call('TYPE', KEYS[1]).ok
+			if tipo == 'string' then
+				return {'json', redis.call('GET', KEYS[1])}
+			elseif tipo == 'hash' then
+				local reply = redis.call('HGETALL', KEYS[1])
+				table.insert(reply, 1, 'hash')
+				return reply
+			end
+			return {}
+			""", List.class);
+
+	// Médicos com ponto aberto: SET ponto:abertos:<schema> com os codIdColaborador e o marcador PONTO_SINCRONIZADO,
+	// gravado pelo PontoReconciler quando o conjunto confere com PONTO_MEDICOS. Sem o marcador (chave nova ou perdida)
+	// a contagem é desconhecida.
+	// KEYS: pontos | ARGV: '1' = entrada (SADD) / '0' = saída (SREM), codIdColaborador
+	private static final RedisScript<Long> PONTO_SCRIPT = new DefaultRedisScript<>("""
+			if ARGV[1] == '1' then
+				return redis.call('SADD', KEYS[1], ARGV[2])
+			end
+			return redis.call('SREM', KEYS[1], ARGV[2])
+			""", Long.class);
+
+	// KEYS: pontos | ARGV: marcador -> médicos com ponto aberto, -1 se o conjunto não foi sincronizado
+	private static final RedisScript<Long> MEDICOS_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('SISMEMBER', KEYS[1], ARGV[1]) == 0 then
+				return -1
+			end
+			return redis.call('SCARD', KEYS[1]) - 1
+			""", Long.class);
+
+	private static final String PONTO_SINCRONIZADO = "sincronizado";
+
+	private static final List<RedisScript<?>> SCRIPTS = List.of(ENQUEUE_SCRIPT, REMOVE_SCRIPT, POSICAO_SCRIPT, SENHA_SCRIPT,
+			POSICOES_SCRIPT, SNAPSHOT_SCRIPT, PONTO_SCRIPT, MEDICOS_SCRIPT);
+
 	private final StringRedisTemplate redis;
 	private final ObjectMapper objectMapper;
 
+	@Value("${consumer.redis.preload-scripts:true}")
+	private boolean preloadScripts;
+
+	@Value("${consumer.redis.score-migration.enabled:true}")
+	private boolean scoreMigration;
+
+	@Value("${consumer.redis.snapshot-format:json}")
+	private SnapshotFormat snapshotFormat = SnapshotFormat.JSON;
+
 	public RedisQueueService(StringRedisTemplate redis, ObjectMapper objectMapper) {
 		this.redis = redis;
 		this.objectMapper = objectMapper;
 	}
 
+	/**
+	 * Carrega os scripts ({@code SCRIPT LOAD}) para que o primeiro evento já use {@code EVALSHA}.
+	 * Sem isso cada script custa um {@code NOSCRIPT} + {@code EVAL} no primeiro uso (e após um restart do Redis,
+	 * que o template já trata sozinho). Falha aqui não impede a subida.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void preloadScripts() {
+		if (!preloadScripts) {
+			return;
+		}
+		try {
+			loadScripts();
+		} catch (RuntimeException e) {
+			log.warn("Falha ao carregar scripts da fila no Redis (serão enviados no primeiro uso): {}", e.toString());
+		}
+	}
+
+	/**
+	 * Modo de migração do score: regrava, em lotes de {@value #LEGACY_MIGRATION_BATCH} por script, os membros de todas
+	 * as filas que ainda estão no layout anterior ({@code faixa * 1_000_000 + senha}) e preenche o índice de senhas.
+	 * Idempotente (um membro migrado sai do intervalo) e roda a cada subida até não haver mais nenhum; enquanto isso
+	 * os membros antigos ficam na frente dos novos. Falha aqui não impede a subida: o {@link QueueReconciler} também
+	 * corrige os scores divergentes.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void migrateLegacyScores() {
+		if (!scoreMigration) {
+			return;
+		}
+		try {
+			long migrados = 0;
+			try (Cursor<String> keys = redis.scan(ScanOptions.scanOptions().match("queue:zset:*").count(100).build())) {
+				while (keys.hasNext()) {
+					migrados += migrateLegacyScores(keys.next().substring("queue:zset:".length()));
+				}
+			}
+			if (migrados > 0) {
+				log.info("Scores da fila migrados para faixa + ordem de chegada: membros={}", migrados);
+			}
+		} catch (RuntimeException e) {
+			log.warn("Falha ao migrar scores antigos da fila no Redis: {}", e.toString());
+		}
+	}
+
+	/**
+	 * Migra os membros da fila da unidade que ainda estão no layout anterior.
+	 * @return membros regravados
+	 */
+	public long migrateLegacyScores(String unidadeAtendimento) {
+		List<String> keys = List.of(queueKey(unidadeAtendimento), senhasKey(unidadeAtendimento), chegadasKey(unidadeAtendimento));
+		long migrados = 0;
+		long pulados = 0;
+		while (true) {
+			List<?> reply = redis.execute(LEGACY_SCORE_SCRIPT, keys,
+					String.valueOf(pulados), String.valueOf(LEGACY_MIGRATION_BATCH));
+			long lote = reply == null ? 0 : ((Number) reply.get(0)).longValue();
+			long ignorados = reply == null ? 0 : ((Number) reply.get(1)).longValue();
+			migrados += lote;
+			pulados += ignorados;
+			if (lote + ignorados < LEGACY_MIGRATION_BATCH) {
+				return migrados;
+			}
+		}
+	}
+
+	private void loadScripts() {
+		redis.execute((RedisCallback<Void>) connection -> {
+			for (RedisScript<?> script : SCRIPTS) {
+				connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+			}
+			return null;
+		});
+	}
+
 	/**
 	 * Fila ÚNICA por unidade.
 	 * Ordem de atendimento (menor score primeiro):
 	 * 1) Emergência 2) Gestante 3) Idoso 4) Normal.
+	 * Em uma operação atômica: ZADD na fila (nova faixa com a mesma ordem de chegada, se já estava), índice {@code queue:ativos:<unidade>}
+	 * (codCadastroSusPaciente → nrSeq) e snapshot {@code atendimento:<unidade>:<nrSeq>} com TTL.
 	 */
 	public void enqueue(String unidadeAtendimento, AtendimentosUnidade atendimento) {
 		if (unidadeAtendimento == null || unidadeAtendimento.isBlank() || atendimento == null) {
 			return;
 		}
-		Long nrSeq = atendimento.getNrSeqAtendimento();
-		Integer nrSenha = atendimento.getNrSenhaAtendimento();
-		Integer codPriorizacao = atendimento.getTipoPriorizacao() == null ? null : atendimento.getTipoPriorizacao().getCodTipoPriorizacao();
-		if (nrSeq == null || nrSenha == null) {
+		ScriptCall call = enqueueCall(toSnapshot(unidadeAtendimento, atendimento));
+		if (call != null) {
+			redis.execute(call.script(), call.keys(), call.args().toArray());
+		}
+	}
+
+	/**
+	 * Tira a senha da fila, apaga o snapshot e, se {@code codCadastroSusPaciente} for informado, a entrada do paciente
+	 * no índice de senhas ativas (em uma operação atômica).
+	 */
+	public void remove(String unidadeAtendimento, String nrSeqAtendimento, Long codCadastroSusPaciente) {
+		removeAll(unidadeAtendimento, List.of(nrSeqAtendimento), codCadastroSusPaciente);
+	}
+
+	/**
+	 * {@link #remove} de várias senhas do mesmo paciente em um único round trip.
+	 */
+	public void removeAll(String unidadeAtendimento, List<String> nrSeqAtendimentos, Long codCadastroSusPaciente) {
+		if (nrSeqAtendimentos.isEmpty()) {
+			return;
+		}
+		ScriptCall call = removeCall(unidadeAtendimento, nrSeqAtendimentos, codCadastroSusPaciente);
+		redis.execute(call.script(), call.keys(), call.args().toArray());
+	}
+
+	/**
+	 * Aplica as mutações do outbox, na ordem, em um único round trip (pipeline de {@code EVALSHA}).
+	 * Cada mutação fixa um estado (ZADD/HSET/SET, remoções; a ordem de chegada só é sorteada na primeira inserção),
+	 * então reaplicar o lote inteiro depois de uma falha parcial chega ao mesmo resultado. Um {@code NOSCRIPT} (Redis reiniciado) recarrega os scripts e repete o lote uma vez.
+	 */
+	public void applyAll(List<RedisOutbox> entries) {
+		List<ScriptCall> calls = new ArrayList<>(entries.size());
+		for (RedisOutbox entry : entries) {
+			ScriptCall call = switch (entry.getOperacao()) {
+				case ENQUEUE -> enqueueCall(new AtendimentoSnapshot(
+						entry.getUnidadeAtendimento(),
+						entry.getNrSeqAtendimento(),
+						entry.getNrSenhaAtendimento(),
+						entry.getCodCadastroSusPaciente(),
+						entry.getCodTipoPriorizacao(),
+						entry.getCodEstadoSenha()));
+				case REMOVE -> removeCall(entry.getUnidadeAtendimento(),
+						List.of(String.valueOf(entry.getNrSeqAtendimento())), entry.getCodCadastroSusPaciente());
+				case PONTO_ABERTO, PONTO_FECHADO -> entry.getCodIdColaborador() == null ? null : new ScriptCall(PONTO_SCRIPT,
+						List.of(pontoKey(entry.getUnidadeAtendimento())),
+						List.of(entry.getOperacao() == RedisOutbox.Operacao.PONTO_ABERTO ? "1" : "0",
+								String.valueOf(entry.getCodIdColaborador())));
+			};
+			if (call != null) {
+				calls.add(call);
+			}
+		}
+		if (calls.isEmpty()) {
 			return;
 		}
-		double score = scoreFor(codPriorizacao, nrSenha);
-		redis.opsForZSet().add(queueKey(unidadeAtendimento), String.valueOf(nrSeq), score);
+		try {
+			pipeline(calls);
+		} catch (RuntimeException e) {
+			if (!isNoScript(e)) {
+				throw e;
+			}
+			loadScripts();
+			pipeline(calls);
+		}
+	}
+
+	private void pipeline(List<ScriptCall> calls) {
+		redis.executePipelined((RedisCallback<Object>) connection -> {
+			RedisScriptingCommands scripting = connection.scriptingCommands();
+			for (ScriptCall call : calls) {
+				scripting.evalSha(call.script().getSha1(), ReturnType.INTEGER, call.keys().size(), call.keysAndArgs());
+			}
+			return null;
+		});
+	}
+
+	private static boolean isNoScript(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Senha ativa do paciente e quantas pessoas estão na frente dela, em um round trip (sem consultar o banco).
+	 * @return {@code null} se o paciente não está no índice de senhas ativas da unidade
+	 */
+	public PosicaoPaciente posicaoPaciente(String unidadeAtendimento, long codCadastroSusPaciente) {
+		List<?> result = redis.execute(POSICAO_SCRIPT, List.of(ativosKey(unidadeAtendimento), queueKey(unidadeAtendimento)),
+				String.valueOf(codCadastroSusPaciente));
+		if (result == null || result.isEmpty() || result.get(0) == null) {
+			return null;
+		}
+		long nrSeq = Long.parseLong(String.valueOf(result.get(0)));
+		Long pessoasNaFrente = result.size() > 1 ? Long.valueOf(String.valueOf(result.get(1))) : null;
+		return new PosicaoPaciente(nrSeq, pessoasNaFrente);
+	}
+
+	/**
+	 * Quantas pessoas estão na frente da senha (número de 1 a 999) em um round trip: pelo índice de senhas, a posição
+	 * real dela na fila; se ela não está na fila, quantas ficariam na frente de uma senha do tipo informado emitida agora.
+	 */
+	public long pessoasNaFrenteDaSenha(String unidadeAtendimento, Integer codTipoPriorizacao, int nrSenhaAtendimento) {
+		long fimDaFaixa = (faixa(codTipoPriorizacao) + 2L) * ARRIVAL_LIMIT;
+		Long count = redis.execute(SENHA_SCRIPT, List.of(senhasKey(unidadeAtendimento), queueKey(unidadeAtendimento)),
+				String.valueOf(normalizeSenha(nrSenhaAtendimento)), String.valueOf(fimDaFaixa));
+		return count == null ? 0L : count;
+	}
+
+	/**
+	 * {@link #pessoasNaFrenteDaSenha} e {@link #posicaoPaciente} de várias consultas da mesma unidade em um único
+	 * round trip (um script). O índice de pacientes é a única fonte aqui: um paciente fora dele não tem posição.
+	 * @return uma posição por consulta, na mesma ordem
+	 */
+	public List<Posicao> posicoes(String unidadeAtendimento, List<ConsultaPosicao> consultas) {
+		if (consultas.isEmpty()) {
+			return List.of();
+		}
+		List<String> args = new ArrayList<>(consultas.size() * 3);
+		for (ConsultaPosicao consulta : consultas) {
+			if (consulta.codCadastroSusPaciente() != null) {
+				args.add("p");
+				args.add(String.valueOf(consulta.codCadastroSusPaciente()));
+				args.add("");
+			} else {
+				args.add("s");
+				args.add(String.valueOf(normalizeSenha(consulta.nrSenhaAtendimento())));
+				args.add(String.valueOf((faixa(consulta.codTipoPriorizacao()) + 2L) * ARRIVAL_LIMIT));
+			}
+		}
+		List<?> reply = redis.execute(POSICOES_SCRIPT,
+				List.of(senhasKey(unidadeAtendimento), ativosKey(unidadeAtendimento), queueKey(unidadeAtendimento)), args.toArray());
+		List<Posicao> posicoes = new ArrayList<>(consultas.size());
+		for (int i = 0; i < consultas.size(); i++) {
+			String nrSeq = reply == null ? "" : Objects.toString(reply.get(2 * i), "");
+			String pessoasNaFrente = reply == null ? "" : Objects.toString(reply.get(2 * i + 1), "");
+			posicoes.add(new Posicao(
+					nrSeq.isEmpty() ? null : Long.valueOf(nrSeq),
+					pessoasNaFrente.isEmpty() ? null : Long.valueOf(pessoasNaFrente)));
+		}
+		return posicoes;
+	}
+
+	/**
+	 * Percorre a fila da unidade com {@code ZSCAN} (sem travar o Redis como um {@code ZRANGE} da fila inteira),
+	 * entregando membros e scores em páginas de até {@code count} itens, sem ordem definida.
+	 */
+	public void scanQueue(String unidadeAtendimento, int count, Consumer<List<TypedTuple<String>>> pagina) {
+		List<TypedTuple<String>> atual = new ArrayList<>(count);
+		try (Cursor<TypedTuple<String>> cursor = redis.opsForZSet().scan(queueKey(unidadeAtendimento),
+				ScanOptions.scanOptions().count(count).build())) {
+			while (cursor.hasNext()) {
+				atual.add(cursor.next());
+				if (atual.size() == count) {
+					pagina.accept(atual);
+					atual = new ArrayList<>(count);
+				}
+			}
+		}
+		if (!atual.isEmpty()) {
+			pagina.accept(atual);
+		}
+	}
+
+	/**
+	 * Médicos com ponto aberto no schema, pelo conjunto mantido via outbox (um round trip, sem consultar o banco).
+	 * @return {@code -1} se o conjunto ainda não foi sincronizado com {@code PONTO_MEDICOS} (ou foi perdido)
+	 */
+	public long medicosEmAtendimento(String tenant) {
+		Long medicos = redis.execute(MEDICOS_SCRIPT, List.of(pontoKey(tenant)), PONTO_SINCRONIZADO);
+		return medicos == null ? -1L : medicos.longValue();
+	}
+
+	/**
+	 * Colaboradores no conjunto de pontos abertos do schema (sem o marcador).
+	 */
+	public Set<Long> pontosAbertos(String tenant) {
+		Set<String> membros = redis.opsForSet().members(pontoKey(tenant));
+		Set<Long> colaboradores = new HashSet<>();
+		if (membros != null) {
+			for (String membro : membros) {
+				if (!PONTO_SINCRONIZADO.equals(membro)) {
+					colaboradores.add(Long.valueOf(membro));
+				}
+			}
+		}
+		return colaboradores;
 	}
 
-	public void remove(String unidadeAtendimento, String nrSeqAtendimento) {
-		redis.opsForZSet().remove(queueKey(unidadeAtendimento), nrSeqAtendimento);
-		redis.delete(atendimentoKey(unidadeAtendimento, nrSeqAtendimento));
+	/**
+	 * Marca o conjunto de pontos abertos do schema como sincronizado: a partir daqui a contagem vale.
+	 */
+	public void marcarPontosSincronizados(String tenant) {
+		redis.opsForSet().add(pontoKey(tenant), PONTO_SINCRONIZADO);
 	}
 
-	public void saveAtendimentoSnapshot(String unidadeAtendimento, AtendimentosUnidade atendimento) {
+	/**
+	 * Lê o snapshot em qualquer um dos formatos (JSON, de versões anteriores, ou hash), em um round trip.
+	 */
+	public Optional<AtendimentoSnapshot> findSnapshot(String unidadeAtendimento, long nrSeqAtendimento) {
+		List<?> reply = redis.execute(SNAPSHOT_SCRIPT, List.of(atendimentoKey(unidadeAtendimento, String.valueOf(nrSeqAtendimento))));
+		if (reply == null || reply.size() < 2) {
+			return Optional.empty();
+		}
 		try {
-			Map<String, Object> payload = new HashMap<>();
-			payload.put("unidadeAtendimento", unidadeAtendimento);
-			payload.put("nrSeqAtendimento", atendimento.getNrSeqAtendimento());
-			payload.put("nrSenhaAtendimento", atendimento.getNrSenhaAtendimento());
-			payload.put("codCadastroSusPaciente", atendimento.getPaciente() == null ? null : atendimento.getPaciente().getCodCadastroSusPaciente());
-			payload.put("codTipoPriorizacao", atendimento.getTipoPriorizacao() == null ? null : atendimento.getTipoPriorizacao().getCodTipoPriorizacao());
-			payload.put("codEstadoSenha", atendimento.getEstadoSenha() == null ? null : atendimento.getEstadoSenha().getCodTipoEstado());
-
-			String json = objectMapper.writeValueAsString(payload);
-			redis.opsForValue().set(atendimentoKey(unidadeAtendimento, String.valueOf(atendimento.getNrSeqAtendimento())), json, TICKET_TTL);
+			if ("json".equals(reply.get(0))) {
+				return Optional.of(objectMapper.readValue(String.valueOf(reply.get(1)), AtendimentoSnapshot.class));
+			}
+			Map<String, String> hash = new HashMap<>();
+			for (int i = 1; i + 1 < reply.size(); i += 2) {
+				hash.put(String.valueOf(reply.get(i)), String.valueOf(reply.get(i + 1)));
+			}
+			return Optional.of(AtendimentoSnapshot.fromHash(unidadeAtendimento, nrSeqAtendimento, hash));
 		} catch (Exception e) {
-			log.warn("Falha ao salvar snapshot do atendimento no Redis: unidade={}, nrSeq={}",
-					unidadeAtendimento, atendimento.getNrSeqAtendimento(), e);
+			log.warn("Snapshot do atendimento ilegível no Redis: unidade={}, nrSeq={}", unidadeAtendimento, nrSeqAtendimento, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @return {@code null} sem nrSeq ou senha (não há membro nem score)
+	 */
+	private ScriptCall enqueueCall(AtendimentoSnapshot snapshot) {
+		if (snapshot.nrSeqAtendimento() == null || snapshot.nrSenhaAtendimento() == null) {
+			return null;
+		}
+		String unidadeAtendimento = snapshot.unidadeAtendimento();
+		String member = String.valueOf(snapshot.nrSeqAtendimento());
+		List<String> args = new ArrayList<>(15);
+		args.add(Long.toString((faixa(snapshot.codTipoPriorizacao()) + 1L) * ARRIVAL_LIMIT));
+		args.add(member);
+		args.add(snapshot.codCadastroSusPaciente() == null ? "" : String.valueOf(snapshot.codCadastroSusPaciente()));
+		args.add(String.valueOf(normalizeSenha(snapshot.nrSenhaAtendimento())));
+		args.add(String.valueOf(TICKET_TTL.toSeconds()));
+		addSnapshotArgs(args, snapshot);
+		return new ScriptCall(ENQUEUE_SCRIPT,
+				List.of(queueKey(unidadeAtendimento), ativosKey(unidadeAtendimento), senhasKey(unidadeAtendimento),
+						atendimentoKey(unidadeAtendimento, member), chegadasKey(unidadeAtendimento)),
+				args);
+	}
+
+	private static ScriptCall removeCall(String unidadeAtendimento, List<String> nrSeqAtendimentos, Long codCadastroSusPaciente) {
+		List<String> keys = new ArrayList<>(nrSeqAtendimentos.size() + 2);
+		List<String> args = new ArrayList<>(nrSeqAtendimentos.size() + 1);
+		keys.add(queueKey(unidadeAtendimento));
+		keys.add(ativosKey(unidadeAtendimento));
+		args.add(codCadastroSusPaciente == null ? "" : String.valueOf(codCadastroSusPaciente));
+		for (String nrSeqAtendimento : nrSeqAtendimentos) {
+			keys.add(atendimentoKey(unidadeAtendimento, nrSeqAtendimento));
+			args.add(nrSeqAtendimento);
+		}
+		return new ScriptCall(REMOVE_SCRIPT, keys, args);
+	}
+
+	private static AtendimentoSnapshot toSnapshot(String unidadeAtendimento, AtendimentosUnidade atendimento) {
+		return new AtendimentoSnapshot(
+				unidadeAtendimento,
+				atendimento.getNrSeqAtendimento(),
+				atendimento.getNrSenhaAtendimento(),
+				atendimento.getPaciente() == null ? null : atendimento.getPaciente().getCodCadastroSusPaciente(),
+				atendimento.getTipoPriorizacao() == null ? null : atendimento.getTipoPriorizacao().getCodTipoPriorizacao(),
+				atendimento.getEstadoSenha() == null ? null : atendimento.getEstadoSenha().getCodTipoEstado()
+		);
+	}
+
+	private void addSnapshotArgs(List<String> args, AtendimentoSnapshot snapshot) {
+		if (snapshotFormat == SnapshotFormat.HASH) {
+			args.add("hash");
+			args.addAll(snapshot.toHashFields());
+			return;
+		}
+		try {
+			String json = objectMapper.writeValueAsString(snapshot);
+			args.add("json");
+			args.add(json);
+		} catch (Exception e) {
+			// a senha entra na fila mesmo sem snapshot
+			log.warn("Falha ao montar snapshot do atendimento para o Redis: unidade={}, nrSeq={}",
+					snapshot.unidadeAtendimento(), snapshot.nrSeqAtendimento(), e);
+			args.add("");
+		}
+	}
+
+	static double scoreFor(Integer codTipoPriorizacao, long chegada) {
+		if (chegada < 0 || chegada >= ARRIVAL_LIMIT) {
+			throw new IllegalArgumentException("Ordem de chegada fora do intervalo do score: " + chegada);
+		}
+		long score = ((faixa(codTipoPriorizacao) + 1L) << ARRIVAL_BITS) | chegada;
+		return (double) score;
+	}
+
+	/**
+	 * Ordem de chegada gravada nos bits baixos do score; {@code 0} para um score fora do layout atual.
+	 */
+	static long chegada(double score) {
+		if (!(score >= ARRIVAL_LIMIT && score < 5.0 * ARRIVAL_LIMIT)) {
+			return 0L;
 		}
+		return (long) score & (ARRIVAL_LIMIT - 1);
 	}
 
-	private static double scoreFor(Integer codTipoPriorizacao, int nrSenhaAtendimento) {
-		int rank = switch (codTipoPriorizacao == null ? PRIORIZACAO_NORMAL : codTipoPriorizacao) {
+	private static int faixa(Integer codTipoPriorizacao) {
+		return switch (codTipoPriorizacao == null ? PRIORIZACAO_NORMAL : codTipoPriorizacao) {
 			case PRIORIZACAO_EMERGENCIA -> 0;
 			case PRIORIZACAO_GESTANTE -> 1;
 			case PRIORIZACAO_IDOSO -> 2;
 			case PRIORIZACAO_NORMAL -> 3;
 			default -> 3;
 		};
-		int senha = normalizeSenha(nrSenhaAtendimento);
-		long score = (rank * SCORE_BUCKET) + (long) senha;
-		return (double) score;
 	}
 
 	private static int normalizeSenha(int nrSenhaAtendimento) {
@@ -101,4 +669,68 @@ public class RedisQueueService {
 	private static String atendimentoKey(String unidadeAtendimento, String nrSeqAtendimento) {
 		return "atendimento:" + unidadeAtendimento + ":" + nrSeqAtendimento;
 	}
+
+	private static String ativosKey(String unidadeAtendimento) {
+		return "queue:ativos:" + unidadeAtendimento;
+	}
+
+	private static String senhasKey(String unidadeAtendimento) {
+		return "queue:senhas:" + unidadeAtendimento;
+	}
+
+	private static String chegadasKey(String unidadeAtendimento) {
+		return "queue:chegada:" + unidadeAtendimento;
+	}
+
+	private static String pontoKey(String tenant) {
+		return "ponto:abertos:" + tenant;
+	}
+
+	private record ScriptCall(RedisScript<?> script, List<String> keys, List<String> args) {
+		byte[][] keysAndArgs() {
+			byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+			int i = 0;
+			for (String key : keys) {
+				keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+			}
+			for (String arg : args) {
+				keysAndArgs[i++] = arg.getBytes(StandardCharsets.UTF_8);
+			}
+			return keysAndArgs;
+		}
+	}
+
+	/**
+	 * Formato do snapshot gravado. {@code HASH} ocupa bem menos memória; a leitura ({@link #findSnapshot}) aceita os dois.
+	 */
+	public enum SnapshotFormat {
+		JSON,
+		HASH
+	}
+
+	/**
+	 * @param pessoasNaFrente {@code null} quando a senha do índice não está mais na fila
+	 */
+	public record PosicaoPaciente(long nrSeqAtendimento, Long pessoasNaFrente) {
+	}
+
+	/**
+	 * Uma consulta de {@link #posicoes}: pelo paciente ({@code codCadastroSusPaciente}) ou pelo número da senha e tipo.
+	 */
+	public record ConsultaPosicao(Integer nrSenhaAtendimento, Integer codTipoPriorizacao, Long codCadastroSusPaciente) {
+		public static ConsultaPosicao porSenha(int nrSenhaAtendimento, int codTipoPriorizacao) {
+			return new ConsultaPosicao(nrSenhaAtendimento, codTipoPriorizacao, null);
+		}
+
+		public static ConsultaPosicao porPaciente(long codCadastroSusPaciente) {
+			return new ConsultaPosicao(null, null, codCadastroSusPaciente);
+		}
+	}
+
+	/**
+	 * @param nrSeqAtendimento {@code null} quando a senha consultada não está na fila
+	 * @param pessoasNaFrente {@code null} quando o paciente não tem senha na fila
+	 */
+	public record Posicao(Long nrSeqAtendimento, Long pessoasNaFrente) {
+	}
 }
@@ -0,0 +1,76 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sus.fiap.consumer.persistence.repository.ColaboradorFuncao;
+import com.sus.fiap.consumer.persistence.repository.ColaboradorRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache local, por tenant (schema), do colaborador com a função e o indicador "é médico" já calculados.
+ * Os eventos de ponto deixam de consultar {@code COLABORADORES} e {@code FUNCOES_COLAB_UNIDADE} a cada evento.
+ * Limitado em tamanho e com expiração após a escrita; alterações feitas por fora só aparecem após a expiração
+ * ou após uma invalidação explícita ({@link #invalidateColaborador}, {@link #invalidateTenant}, {@link #invalidateAll}).
+ * Colaborador inexistente não é guardado: um cadastro novo é visto no evento seguinte.
+ * Acertos/erros em {@code cache.gets{cache=consumer.reference.colaborador}}.
+ */
+@Component
+public class ReferenceDataCache {
+	private final ColaboradorRepository colaboradorRepository;
+	private final Cache<ColaboradorKey, ColaboradorFuncao> colaboradores;
+
+	public ReferenceDataCache(
+			ColaboradorRepository colaboradorRepository,
+			MeterRegistry meterRegistry,
+			@Value("${consumer.reference-cache.maximum-size:10000}") long maximumSize,
+			@Value("${consumer.reference-cache.ttl:10m}") Duration ttl
+	) {
+		this.colaboradorRepository = colaboradorRepository;
+		this.colaboradores = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttl)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, colaboradores, "consumer.reference.colaborador");
+	}
+
+	/**
+	 * Colaborador do tenant atual; na ausência em cache, uma consulta (com a função em join) dentro da transação corrente.
+	 */
+	public Optional<ColaboradorFuncao> colaborador(String tenant, long codIdColaborador) {
+		ColaboradorKey key = new ColaboradorKey(tenant, codIdColaborador);
+		ColaboradorFuncao cached = colaboradores.getIfPresent(key);
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+		Optional<ColaboradorFuncao> loaded = colaboradorRepository.findFuncaoById(codIdColaborador);
+		loaded.ifPresent(c -> colaboradores.put(key, c));
+		return loaded;
+	}
+
+	public void invalidateColaborador(String tenant, long codIdColaborador) {
+		colaboradores.invalidate(new ColaboradorKey(tenant, codIdColaborador));
+	}
+
+	public void invalidateTenant(String tenant) {
+		colaboradores.asMap().keySet().removeIf(k -> k.tenant().equals(tenant));
+	}
+
+	public void invalidateAll() {
+		colaboradores.invalidateAll();
+	}
+
+	public long size() {
+		return colaboradores.estimatedSize();
+	}
+
+	private record ColaboradorKey(String tenant, long codIdColaborador) {
+	}
+}
@@ -0,0 +1,151 @@
+package com.sus.fiap.consumer.service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Bloom filter rotativo para UUIDs: a janela total é dividida em segmentos de mesmo tamanho;
+ * inserções vão para o segmento corrente e consultas olham todos os segmentos vivos.
+ * Ao virar o segmento, o mais antigo é zerado e reutilizado — a memória é fixa.
+ *
+ * Há um segmento extra além de {@code window / segmentDuration}, para que um item inserido no fim de um
+ * segmento continue visível por pelo menos a janela inteira (sem falso negativo antes do TTL).
+ */
+public final class RotatingBloomFilter {
+	private final AtomicLongArray[] segments;
+	private final int bitsPerSegment;
+	private final int numHashes;
+	private final long segmentMillis;
+	private final LongSupplier clock;
+
+	private volatile int current;
+	private volatile long currentStartedAt;
+
+	/**
+	 * @param window janela que o filtro precisa cobrir (ex.: TTL da chave de idempotência)
+	 * @param segmentCount quantidade de segmentos que dividem a janela
+	 * @param expectedInsertions inserções esperadas na janela inteira
+	 * @param fpp taxa de falso positivo desejada para a consulta (somando todos os segmentos)
+	 */
+	public RotatingBloomFilter(Duration window, int segmentCount, long expectedInsertions, double fpp, LongSupplier clock) {
+		if (segmentCount < 1 || expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("Parâmetros inválidos para o bloom filter");
+		}
+		long perSegment = Math.max(1L, expectedInsertions / segmentCount);
+		double segmentFpp = fpp / (segmentCount + 1);
+		long bits = (long) Math.ceil(-perSegment * Math.log(segmentFpp) / (Math.log(2) * Math.log(2)));
+		this.bitsPerSegment = (int) Math.min(Integer.MAX_VALUE - 63L, Math.max(64L, bits));
+		this.numHashes = Math.max(1, (int) Math.round((double) bitsPerSegment / perSegment * Math.log(2)));
+		this.segmentMillis = Math.max(1L, window.toMillis() / segmentCount);
+		this.clock = clock;
+		this.segments = new AtomicLongArray[segmentCount + 1];
+		int words = (bitsPerSegment + 63) / 64;
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new AtomicLongArray(words);
+		}
+		this.current = 0;
+		this.currentStartedAt = clock.getAsLong();
+	}
+
+	public void put(UUID id) {
+		rotateIfNeeded();
+		set(segments[current], id);
+	}
+
+	/**
+	 * Insere um item que entrou na janela no instante {@code insertedAt} (e não agora), no segmento que
+	 * cobria aquele instante — usado na reconstrução a partir do Redis, para que itens antigos não lotem
+	 * o segmento corrente e saiam do filtro no mesmo momento em que sairiam se tivessem sido inseridos na hora.
+	 * Instantes mais antigos que o segmento mais velho caem nele; instantes futuros caem no corrente.
+	 */
+	public void put(UUID id, long insertedAt) {
+		rotateIfNeeded();
+		AtomicLongArray bits;
+		synchronized (this) {
+			long behind = currentStartedAt - insertedAt;
+			long back = behind <= 0 ? 0 : Math.min(segments.length - 1, (behind - 1) / segmentMillis + 1);
+			bits = segments[(int) ((current - back + segments.length) % segments.length)];
+		}
+		set(bits, id);
+	}
+
+	private void set(AtomicLongArray bits, UUID id) {
+		long h1 = mix(id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), 32));
+		long h2 = mix(id.getLeastSignificantBits()) | 1L;
+		for (int i = 0; i < numHashes; i++) {
+			int bit = (int) Long.remainderUnsigned(h1 + i * h2, bitsPerSegment);
+			int word = bit >>> 6;
+			long mask = 1L << bit;
+			long prev = bits.get(word);
+			while ((prev & mask) == 0 && !bits.compareAndSet(word, prev, prev | mask)) {
+				prev = bits.get(word);
+			}
+		}
+	}
+
+	public boolean mightContain(UUID id) {
+		rotateIfNeeded();
+		long h1 = mix(id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), 32));
+		long h2 = mix(id.getLeastSignificantBits()) | 1L;
+		for (AtomicLongArray bits : segments) {
+			if (contains(bits, h1, h2)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Memória ocupada pelos bits (todos os segmentos), em bytes.
+	 */
+	public long sizeInBytes() {
+		return (long) segments.length * segments[0].length() * Long.BYTES;
+	}
+
+	private boolean contains(AtomicLongArray bits, long h1, long h2) {
+		for (int i = 0; i < numHashes; i++) {
+			int bit = (int) Long.remainderUnsigned(h1 + i * h2, bitsPerSegment);
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rotateIfNeeded() {
+		long now = clock.getAsLong();
+		if (now - currentStartedAt < segmentMillis) {
+			return;
+		}
+		synchronized (this) {
+			if (now - currentStartedAt >= segmentMillis * segments.length) {
+				// ficou parado mais que a janela inteira: nada do que está no filtro ainda vale
+				for (AtomicLongArray bits : segments) {
+					for (int i = 0; i < bits.length(); i++) {
+						bits.set(i, 0L);
+					}
+				}
+				currentStartedAt = now;
+				return;
+			}
+			while (now - currentStartedAt >= segmentMillis) {
+				int next = (current + 1) % segments.length;
+				AtomicLongArray bits = segments[next];
+				for (int i = 0; i < bits.length(); i++) {
+					bits.set(i, 0L);
+				}
+				current = next;
+				currentStartedAt += segmentMillis;
+			}
+		}
+	}
+
+	// finalizer do SplitMix64: espalha bem os bits do UUID (v4 já é aleatório, mas nem todo producer usa v4)
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
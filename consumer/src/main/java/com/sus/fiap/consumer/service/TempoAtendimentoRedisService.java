@@ -3,12 +3,10 @@ package com.sus.fiap.consumer.service;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
-import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,34 +18,34 @@ import org.springframework.stereotype.Service;
 public class TempoAtendimentoRedisService {
 	private static final Logger log = LoggerFactory.getLogger(TempoAtendimentoRedisService.class);
 	private static final int TEMPO_MEDIO_ATENDIMENTO_MIN = 10;
+	/**
+	 * Canal (pub/sub) em que cada novo valor da métrica de uma unidade é publicado; a mensagem é o próprio JSON.
+	 */
+	public static final String CHANNEL = "metrics:tempoAtendimentoMedio:changed";
 
 	private final Duration ttl;
 
-	private static final int EST_ATENDIMENTO_FINALIZADO = 6;
-	private static final int EST_SENHA_EXPIRADA = 90;
-	private static final int EST_SENHA_CANCELADA = 91;
-
-	private static final int PRIORIZACAO_NORMAL = 0;
-	private static final int PRIORIZACAO_IDOSO = 1;
-	private static final int PRIORIZACAO_GESTANTE = 2;
-	private static final int PRIORIZACAO_EMERGENCIA = 3;
-
 	private final StringRedisTemplate redis;
 	private final ObjectMapper objectMapper;
-	private final AtendimentosUnidadeRepository atendimentosUnidadeRepository;
-	private final PontoColaboradorRepository pontoColaboradorRepository;
+	private final QueueDepthTracker queueDepthTracker;
+	private final RedisQueueService redisQueueService;
+	private final UnidadeSchemaResolver unidadeSchemaResolver;
+	// último conteúdo publicado por unidade (sem calculadoEm): recálculo com o mesmo resultado não é publicado
+	private final Map<String, Map<String, Object>> publicados = new ConcurrentHashMap<>();
 
 	public TempoAtendimentoRedisService(
 			StringRedisTemplate redis,
 			ObjectMapper objectMapper,
-			AtendimentosUnidadeRepository atendimentosUnidadeRepository,
-			PontoColaboradorRepository pontoColaboradorRepository,
+			QueueDepthTracker queueDepthTracker,
+			RedisQueueService redisQueueService,
+			UnidadeSchemaResolver unidadeSchemaResolver,
 			@Value("${consumer.metrics.tempoAtendimento.ttl:2m}") Duration ttl
 	) {
 		this.redis = redis;
 		this.objectMapper = objectMapper;
-		this.atendimentosUnidadeRepository = atendimentosUnidadeRepository;
-		this.pontoColaboradorRepository = pontoColaboradorRepository;
+		this.queueDepthTracker = queueDepthTracker;
+		this.redisQueueService = redisQueueService;
+		this.unidadeSchemaResolver = unidadeSchemaResolver;
 		this.ttl = ttl;
 	}
 
@@ -56,17 +54,20 @@ public class TempoAtendimentoRedisService {
 			return;
 		}
 
-		List<Integer> estadosFinais = List.of(EST_ATENDIMENTO_FINALIZADO, EST_SENHA_EXPIRADA, EST_SENHA_CANCELADA);
-		long medicos = pontoColaboradorRepository.countByHorarioSaidaIsNull();
+		// Contadores em memória (O(1)); o banco só é lido no aquecimento/reconciliação do QueueDepthTracker
+		String tenant = unidadeSchemaResolver.resolveSchemaFromUnidade(unidadeAtendimento);
+		QueueDepthTracker.QueueDepth depth = queueDepthTracker.snapshot(tenant);
+		// mesma fonte dos endpoints de posição (conjunto ponto:abertos:<schema>); o contador do tracker (pontos abertos
+		// no banco) só entra enquanto o conjunto não foi sincronizado
+		long medicos = redisQueueService.medicosEmAtendimento(tenant);
+		if (medicos < 0) {
+			medicos = depth.medicos();
+		}
 
-		long ativosNormal = atendimentosUnidadeRepository
-				.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(estadosFinais, PRIORIZACAO_NORMAL);
-		long ativosIdoso = atendimentosUnidadeRepository
-				.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(estadosFinais, PRIORIZACAO_IDOSO);
-		long ativosGestante = atendimentosUnidadeRepository
-				.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(estadosFinais, PRIORIZACAO_GESTANTE);
-		long ativosEmergencia = atendimentosUnidadeRepository
-				.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(estadosFinais, PRIORIZACAO_EMERGENCIA);
+		long ativosNormal = depth.normal();
+		long ativosIdoso = depth.idoso();
+		long ativosGestante = depth.gestante();
+		long ativosEmergencia = depth.emergencia();
 
 		long naFrenteGestante = ativosEmergencia + ativosGestante;
 		long naFrenteIdoso = naFrenteGestante + ativosIdoso;
@@ -86,6 +87,13 @@ public class TempoAtendimentoRedisService {
 		try {
 			String json = objectMapper.writeValueAsString(payload);
 			redis.opsForValue().set(key(unidadeAtendimento), json, ttl);
+
+			Map<String, Object> conteudo = new LinkedHashMap<>(payload);
+			conteudo.remove("calculadoEm");
+			if (!conteudo.equals(publicados.get(unidadeAtendimento))) {
+				redis.convertAndSend(CHANNEL, json);
+				publicados.put(unidadeAtendimento, conteudo);
+			}
 		} catch (Exception e) {
 			log.warn("Falha ao salvar tempo medio no Redis: unidade={}", unidadeAtendimento, e);
 		}
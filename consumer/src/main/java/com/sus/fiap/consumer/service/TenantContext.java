@@ -1,5 +1,13 @@
 package com.sus.fiap.consumer.service;
 
+import java.util.function.Supplier;
+
+/**
+ * Tenant (schema) da unidade em processamento, lido pelo resolver de multi-tenancy do Hibernate.
+ * Prefira {@link #runWithTenant(String, Runnable)} / {@link #callWithTenant(String, Supplier)}: o valor fica
+ * restrito ao bloco e o anterior é restaurado, o que mantém o contexto correto mesmo com milhares de virtual threads
+ * (nenhum valor sobra na thread depois do bloco).
+ */
 public final class TenantContext {
 	private static final ThreadLocal<String> CURRENT_TENANT = new ThreadLocal<>();
 
@@ -17,4 +25,38 @@ public final class TenantContext {
 	public static void clear() {
 		CURRENT_TENANT.remove();
 	}
+
+	/**
+	 * Executa {@code action} com o tenant informado e restaura o tenant anterior (ou nenhum) ao final.
+	 */
+	public static void runWithTenant(String tenant, Runnable action) {
+		String anterior = CURRENT_TENANT.get();
+		CURRENT_TENANT.set(tenant);
+		try {
+			action.run();
+		} finally {
+			restore(anterior);
+		}
+	}
+
+	/**
+	 * Versão com retorno de {@link #runWithTenant(String, Runnable)}.
+	 */
+	public static <T> T callWithTenant(String tenant, Supplier<T> action) {
+		String anterior = CURRENT_TENANT.get();
+		CURRENT_TENANT.set(tenant);
+		try {
+			return action.get();
+		} finally {
+			restore(anterior);
+		}
+	}
+
+	private static void restore(String anterior) {
+		if (anterior == null) {
+			CURRENT_TENANT.remove();
+		} else {
+			CURRENT_TENANT.set(anterior);
+		}
+	}
 }
@@ -0,0 +1,40 @@
+package com.sus.fiap.consumer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sus.fiap.consumer.model.AtendimentoSnapshot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AtendimentoSnapshotTests {
+
+	@Test
+	void hashFields_shouldRoundTripUsingKeyForUnidadeAndNrSeq() {
+		AtendimentoSnapshot snapshot = new AtendimentoSnapshot("UPA1", 1234567L, 512, 700123456789012L, 2, null);
+
+		List<String> fields = snapshot.toHashFields();
+		Map<String, String> hash = new HashMap<>();
+		for (int i = 0; i < fields.size(); i += 2) {
+			hash.put(fields.get(i), fields.get(i + 1));
+		}
+
+		// estado nulo não vira campo
+		assertThat(fields).containsExactly("s", "512", "p", "700123456789012", "t", "2");
+		assertThat(AtendimentoSnapshot.fromHash("UPA1", 1234567L, hash)).isEqualTo(snapshot);
+	}
+
+	@Test
+	void json_shouldReadSnapshotWrittenByPreviousVersion() throws Exception {
+		String legado = "{\"nrSenhaAtendimento\":6,\"unidadeAtendimento\":\"UPA1\",\"codCadastroSusPaciente\":10,"
+				+ "\"codTipoPriorizacao\":3,\"nrSeqAtendimento\":2,\"codEstadoSenha\":null}";
+
+		AtendimentoSnapshot snapshot = new ObjectMapper().readValue(legado, AtendimentoSnapshot.class);
+
+		assertThat(snapshot).isEqualTo(new AtendimentoSnapshot("UPA1", 2L, 6, 10L, 3, null));
+	}
+}
@@ -0,0 +1,68 @@
+package com.sus.fiap.consumer;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.CadastroSus;
+import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
+import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.persistence.repository.AtendimentoAtivo;
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+import com.sus.fiap.consumer.persistence.repository.CadastroSusRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoEstadoSenhaRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoPriorizacaoRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class AtendimentosUnidadeRepositoryTests {
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private AtendimentosUnidadeRepository atendimentosUnidadeRepository;
+
+	@Autowired
+	private CadastroSusRepository cadastroSusRepository;
+
+	@Autowired
+	private TipoPriorizacaoRepository tipoPriorizacaoRepository;
+
+	@Autowired
+	private TipoEstadoSenhaRepository tipoEstadoSenhaRepository;
+
+	@Test
+	void findAtivosByPaciente_shouldReturnOnlyActiveSenhasOfPatientInOrder() {
+		long[] ids = transactionTemplate.execute(status -> {
+			var priorizacao = tipoPriorizacaoRepository.save(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build());
+			var criada = tipoEstadoSenhaRepository.save(TipoEstadoSenha.builder().codTipoEstado(1).nomeStatus("CRIADA").build());
+			var finalizada = tipoEstadoSenhaRepository.save(TipoEstadoSenha.builder().codTipoEstado(6).nomeStatus("FINALIZADO").build());
+			var paciente = cadastroSusRepository.save(CadastroSus.builder().nomePaciente("Paciente").idadePaciente(30).build());
+			var outro = cadastroSusRepository.save(CadastroSus.builder().nomePaciente("Outro").idadePaciente(40).build());
+
+			long primeira = salvar(7, paciente, priorizacao, criada);
+			salvar(8, paciente, priorizacao, finalizada);
+			long terceira = salvar(9, paciente, priorizacao, criada);
+			salvar(7, outro, priorizacao, criada);
+			return new long[] {paciente.getCodCadastroSusPaciente(), primeira, terceira};
+		});
+
+		List<AtendimentoAtivo> ativos = atendimentosUnidadeRepository.findAtivosByPaciente(ids[0]);
+
+		assertThat(ativos).containsExactly(new AtendimentoAtivo(ids[1], 7, 1), new AtendimentoAtivo(ids[2], 9, 1));
+	}
+
+	private long salvar(int nrSenha, CadastroSus paciente, TipoPriorizacao priorizacao, TipoEstadoSenha estado) {
+		return atendimentosUnidadeRepository.save(AtendimentosUnidade.builder()
+				.nrSenhaAtendimento(nrSenha)
+				.paciente(paciente)
+				.tipoPriorizacao(priorizacao)
+				.estadoSenha(estado)
+				.build()).getNrSeqAtendimento();
+	}
+}
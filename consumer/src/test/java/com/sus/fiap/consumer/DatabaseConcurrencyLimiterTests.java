@@ -0,0 +1,55 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
+import com.sus.fiap.consumer.service.TenantContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DatabaseConcurrencyLimiterTests {
+
+	@Test
+	void call_shouldRejectWhenPoolIsBusyAndAllowNestedCallsOnSameThread() throws Exception {
+		DatabaseConcurrencyLimiter limiter = new DatabaseConcurrencyLimiter(new SimpleMeterRegistry(), 1, Duration.ofMillis(50));
+		CountDownLatch ocupado = new CountDownLatch(1);
+		CountDownLatch libera = new CountDownLatch(1);
+
+		Thread dono = Thread.ofVirtual().start(() -> limiter.run(() -> {
+			// bloco aninhado reaproveita a permissão da própria thread
+			limiter.run(ocupado::countDown);
+			await(libera);
+		}));
+		assertThat(ocupado.await(2, TimeUnit.SECONDS)).isTrue();
+
+		assertThatThrownBy(() -> limiter.call(() -> 1)).isInstanceOf(CannotGetJdbcConnectionException.class);
+
+		libera.countDown();
+		dono.join(2000);
+		assertThat(limiter.call(() -> 1)).isEqualTo(1);
+	}
+
+	@Test
+	void runWithTenant_shouldRestorePreviousTenant() {
+		TenantContext.runWithTenant("und_atd1", () -> {
+			TenantContext.runWithTenant("und_atd2", () -> assertThat(TenantContext.getCurrentTenant()).isEqualTo("und_atd2"));
+			assertThat(TenantContext.getCurrentTenant()).isEqualTo("und_atd1");
+		});
+		assertThat(TenantContext.getCurrentTenant()).isNull();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
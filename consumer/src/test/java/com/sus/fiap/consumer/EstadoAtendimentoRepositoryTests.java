@@ -0,0 +1,73 @@
+package com.sus.fiap.consumer;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.CadastroSus;
+import com.sus.fiap.consumer.persistence.entity.EstadoAtendimentoId;
+import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
+import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+import com.sus.fiap.consumer.persistence.repository.CadastroSusRepository;
+import com.sus.fiap.consumer.persistence.repository.EstadoAtendimentoRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoEstadoSenhaRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoPriorizacaoRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class EstadoAtendimentoRepositoryTests {
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private AtendimentosUnidadeRepository atendimentosUnidadeRepository;
+
+	@Autowired
+	private EstadoAtendimentoRepository estadoAtendimentoRepository;
+
+	@Autowired
+	private CadastroSusRepository cadastroSusRepository;
+
+	@Autowired
+	private TipoPriorizacaoRepository tipoPriorizacaoRepository;
+
+	@Autowired
+	private TipoEstadoSenhaRepository tipoEstadoSenhaRepository;
+
+	@Test
+	void insertIgnoringDuplicates_shouldWriteHistoryAfterPendingAtendimentoAndSkipRepeatedRows() {
+		Instant agora = Instant.parse("2026-01-01T10:00:00Z");
+		long antes = estadoAtendimentoRepository.count();
+
+		Long nrSeq = transactionTemplate.execute(status -> {
+			var priorizacao = tipoPriorizacaoRepository.save(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build());
+			var estado = tipoEstadoSenhaRepository.save(TipoEstadoSenha.builder().codTipoEstado(1).nomeStatus("CRIADA").build());
+			var paciente = cadastroSusRepository.save(CadastroSus.builder().nomePaciente("Paciente").idadePaciente(30).build());
+			AtendimentosUnidade atendimento = atendimentosUnidadeRepository.save(AtendimentosUnidade.builder()
+					.nrSenhaAtendimento(1)
+					.paciente(paciente)
+					.tipoPriorizacao(priorizacao)
+					.estadoSenha(estado)
+					.build());
+			// id atribuído pela sequence antes do INSERT, que só acontece no flush do commit
+			assertThat(atendimento.getNrSeqAtendimento()).isNotNull();
+
+			estadoAtendimentoRepository.insertIgnoringDuplicates(new EstadoAtendimentoId(atendimento.getNrSeqAtendimento(), 1, agora));
+			estadoAtendimentoRepository.insertIgnoringDuplicates(new EstadoAtendimentoId(atendimento.getNrSeqAtendimento(), 1, agora));
+			estadoAtendimentoRepository.insertIgnoringDuplicates(new EstadoAtendimentoId(atendimento.getNrSeqAtendimento(), 6, agora.plusSeconds(60)));
+			return atendimento.getNrSeqAtendimento();
+		});
+		// reprocessamento em outra transação também não duplica
+		transactionTemplate.executeWithoutResult(status ->
+				estadoAtendimentoRepository.insertIgnoringDuplicates(new EstadoAtendimentoId(nrSeq, 1, agora)));
+
+		assertThat(atendimentosUnidadeRepository.existsById(nrSeq)).isTrue();
+		assertThat(estadoAtendimentoRepository.count()).isEqualTo(antes + 2);
+	}
+}
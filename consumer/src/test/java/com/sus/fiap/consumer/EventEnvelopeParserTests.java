@@ -1,5 +1,7 @@
 package com.sus.fiap.consumer;
 
+import java.time.Instant;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sus.fiap.consumer.model.EventType;
 import com.sus.fiap.consumer.service.EventEnvelopeParser;
@@ -7,6 +9,7 @@ import com.sus.fiap.consumer.service.EventEnvelopeParser;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class EventEnvelopeParserTests {
 	@Test
@@ -30,7 +33,7 @@ class EventEnvelopeParserTests {
 		var env = parser.parse(json);
 		assertThat(env.eventId().toString()).isEqualTo("2f6f5a3c-7ac4-4d0b-9c5a-1b4d832d8f12");
 		assertThat(env.type()).isEqualTo(EventType.MEDICO_ENTRA_NO_PONTO);
-		assertThat(env.payload().get("unidadeAtendimento").asText()).isEqualTo("UPA1");
+		assertThat(env.payload().unidadeAtendimento()).isEqualTo("UPA1");
 	}
 
 	@Test
@@ -52,8 +55,59 @@ class EventEnvelopeParserTests {
 		var env = parser.parse(json);
 		assertThat(env.type()).isEqualTo(EventType.RETIRADA_DE_SENHA);
 		assertThat(env.occurredAt()).isNotNull();
-		assertThat(env.payload().get("unidadeAtendimento").asText()).isEqualTo("UPA1");
-		assertThat(env.payload().get("nrSenhaAtendimento").asInt()).isEqualTo(1);
-		assertThat(env.payload().get("codCadastroSusPaciente").asLong()).isEqualTo(10L);
+		assertThat(env.payload().unidadeAtendimento()).isEqualTo("UPA1");
+		assertThat(env.payload().nrSenhaAtendimento()).isEqualTo(1L);
+		assertThat(env.payload().codCadastroSusPaciente()).isEqualTo(10L);
+	}
+
+	@Test
+	void parse_shouldReadTypedPayloadFieldsAndIgnoreUnknownOnes() {
+		EventEnvelopeParser parser = new EventEnvelopeParser(new ObjectMapper());
+
+		String json = """
+				{
+				  \"topic\": \"healthcare.events\",
+				  \"eventId\": \"2f6f5a3c-7ac4-4d0b-9c5a-1b4d832d8f12\",
+				  \"unidadeAtendimento\": \"UPA9\",
+				  \"payload\": {
+				    \"extra\": {\"nested\": [1, 2, {\"a\": 3}]},
+				    \"nrSeqAtendimento\": \"42\",
+				    \"codIdColaborador\": 7,
+				    \"unidadeAtendimento\": \"UPA2\",
+				    \"timestamp\": 1771010745973
+				  },
+				  \"type\": \"ATENDIMENTO_FINALIZADO\",
+				  \"occurredAt\": \"2026-02-13T12:10:00Z\"
+				}
+				""";
+
+		var env = parser.parse(json);
+		assertThat(env.type()).isEqualTo(EventType.ATENDIMENTO_FINALIZADO);
+		assertThat(env.payload().unidadeAtendimento()).isEqualTo("UPA2");
+		assertThat(env.payload().nrSeqAtendimento()).isEqualTo(42L);
+		assertThat(env.payload().codIdColaborador()).isEqualTo(7L);
+		assertThat(env.payload().nrSenhaAtendimento()).isNull();
+		assertThat(env.payload().timestamp()).isEqualTo(Instant.ofEpochMilli(1771010745973L));
+	}
+
+	@Test
+	void parse_shouldRejectMissingOccurredAt() {
+		EventEnvelopeParser parser = new EventEnvelopeParser(new ObjectMapper());
+
+		assertThatThrownBy(() -> parser.parse("{\"eventId\":\"2f6f5a3c-7ac4-4d0b-9c5a-1b4d832d8f12\",\"type\":\"SENHA_EXPIRADA\"}"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("occurredAt");
+	}
+
+	@Test
+	void parse_shouldReadIsoOccurredAtLikeInstantParse() {
+		EventEnvelopeParser parser = new EventEnvelopeParser(new ObjectMapper());
+
+		for (String iso : new String[] {"2026-02-13T12:10:00Z", "2026-02-13T12:10:00.5Z", "2026-02-13T12:10:00.123456789Z",
+				"2024-02-29T23:59:59.000001Z", "2026-02-13T09:10:00-03:00"}) {
+			var env = parser.parse("{\"eventId\":\"2f6f5a3c-7ac4-4d0b-9c5a-1b4d832d8f12\",\"type\":\"SENHA_EXPIRADA\",\"occurredAt\":\""
+					+ iso + "\"}");
+			assertThat(env.occurredAt()).as(iso).isEqualTo(java.time.OffsetDateTime.parse(iso).toInstant());
+		}
 	}
 }
@@ -1,11 +1,10 @@
 package com.sus.fiap.consumer;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.time.LocalTime;
 import java.util.Optional;
 import java.util.UUID;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sus.fiap.consumer.model.EventEnvelope;
 import com.sus.fiap.consumer.model.EventType;
@@ -15,32 +14,45 @@ import com.sus.fiap.consumer.persistence.entity.FuncoesColabUnidade;
 import com.sus.fiap.consumer.persistence.entity.PontoColaborador;
 import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
 import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.persistence.repository.AtendimentoAtivo;
 import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
 import com.sus.fiap.consumer.persistence.repository.CadastroSusRepository;
+import com.sus.fiap.consumer.persistence.repository.ColaboradorFuncao;
 import com.sus.fiap.consumer.persistence.repository.ColaboradorRepository;
 import com.sus.fiap.consumer.persistence.repository.EstadoAtendimentoRepository;
 import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
 import com.sus.fiap.consumer.persistence.repository.TipoEstadoSenhaRepository;
 import com.sus.fiap.consumer.persistence.repository.TipoPriorizacaoRepository;
+import com.sus.fiap.consumer.service.EventEnvelopeParser;
+import com.sus.fiap.consumer.service.EventInFlightException;
 import com.sus.fiap.consumer.service.EventProcessor;
+import com.sus.fiap.consumer.service.MetricsRecomputeScheduler;
+import com.sus.fiap.consumer.service.PatientProfileCache;
+import com.sus.fiap.consumer.service.QueueDepthTracker;
 import com.sus.fiap.consumer.service.RedisIdempotencyService;
-import com.sus.fiap.consumer.service.RedisQueueService;
-import com.sus.fiap.consumer.service.TempoAtendimentoRedisService;
+import com.sus.fiap.consumer.service.RedisQueueOutbox;
+import com.sus.fiap.consumer.service.ReferenceDataCache;
+import com.sus.fiap.consumer.service.TenantContext;
 import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -51,7 +63,7 @@ import java.util.List;
 
 @ExtendWith(MockitoExtension.class)
 class EventProcessorValidationTests {
-	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final EventEnvelopeParser parser = new EventEnvelopeParser(new ObjectMapper());
 
 	@Mock
 	private RedisIdempotencyService idempotencyService;
@@ -70,9 +82,11 @@ class EventProcessorValidationTests {
 	@Mock
 	private PontoColaboradorRepository pontoColaboradorRepository;
 	@Mock
-	private RedisQueueService redisQueueService;
+	private RedisQueueOutbox redisQueueOutbox;
 	@Mock
-	private TempoAtendimentoRedisService tempoAtendimentoRedisService;
+	private MetricsRecomputeScheduler metricsRecomputeScheduler;
+	@Mock
+	private QueueDepthTracker queueDepthTracker;
 
 	private EventProcessor processor;
 
@@ -81,33 +95,31 @@ class EventProcessorValidationTests {
 		processor = new EventProcessor(
 				idempotencyService,
 				cadastroSusRepository,
+				new PatientProfileCache(new SimpleMeterRegistry(), 1024, Duration.ofHours(1)),
 				tipoPriorizacaoRepository,
 				tipoEstadoSenhaRepository,
 				atendimentosUnidadeRepository,
 				estadoAtendimentoRepository,
 				colaboradorRepository,
+				new ReferenceDataCache(colaboradorRepository, new SimpleMeterRegistry(), 100, Duration.ofMinutes(10)),
 				pontoColaboradorRepository,
-				redisQueueService,
+				redisQueueOutbox,
 				new UnidadeSchemaResolver(),
-				tempoAtendimentoRedisService
+				metricsRecomputeScheduler,
+				queueDepthTracker
 		);
 
-		when(idempotencyService.isProcessed(any())).thenReturn(false);
+		lenient().when(idempotencyService.isProcessed(any())).thenReturn(false);
 	}
 
 	@Test
 	void medicoEntraNoPonto_shouldIgnoreWhenNotDoctor() throws Exception {
-		Colaborador naoMedico = Colaborador.builder()
-				.codIdColaborador(1L)
-				.nomeColaborador("Fulano")
-				.funcao(FuncoesColabUnidade.builder().codIdFuncao(99).nomeFuncao("RECEPCAO").build())
-				.build();
-		when(colaboradorRepository.findById(1L)).thenReturn(Optional.of(naoMedico));
+		when(colaboradorRepository.findFuncaoById(1L)).thenReturn(Optional.of(new ColaboradorFuncao(1L, 99, "RECEPCAO")));
 
 		processor.process(envelope(EventType.MEDICO_ENTRA_NO_PONTO, "{\"codIdColaborador\":\"1\"}"));
 
 		verifyNoInteractions(pontoColaboradorRepository);
-		verify(tempoAtendimentoRedisService).updateTempoMedioPorTipo(eq("UPA1"));
+		verify(metricsRecomputeScheduler).markDirty(eq("UPA1"));
 		verify(idempotencyService).markProcessed(any());
 	}
 
@@ -118,7 +130,7 @@ class EventProcessorValidationTests {
 				.nomeColaborador("Dra. Maria")
 				.funcao(FuncoesColabUnidade.builder().codIdFuncao(1).nomeFuncao("MEDICO").build())
 				.build();
-		when(colaboradorRepository.findById(1L)).thenReturn(Optional.of(medico));
+		when(colaboradorRepository.findFuncaoById(1L)).thenReturn(Optional.of(new ColaboradorFuncao(1L, 1, "MEDICO")));
 		when(pontoColaboradorRepository
 				.findFirstByColaboradorCodIdColaboradorAndHorarioSaidaIsNullOrderByHorarioEntradaDesc(1L))
 				.thenReturn(Optional.of(PontoColaborador.builder()
@@ -132,7 +144,7 @@ class EventProcessorValidationTests {
 
 		verify(pontoColaboradorRepository, never()).save(any());
 		verify(idempotencyService, never()).nextSequence(anyString());
-		verify(tempoAtendimentoRedisService).updateTempoMedioPorTipo(eq("UPA1"));
+		verify(metricsRecomputeScheduler).markDirty(eq("UPA1"));
 		verify(idempotencyService).markProcessed(any());
 	}
 
@@ -149,7 +161,6 @@ class EventProcessorValidationTests {
 				.thenReturn(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build());
 		when(tipoEstadoSenhaRepository.getReferenceById(eq(91)))
 				.thenReturn(TipoEstadoSenha.builder().codTipoEstado(91).nomeStatus("CANCELADA").build());
-		when(estadoAtendimentoRepository.existsById(any())).thenReturn(false);
 		when(atendimentosUnidadeRepository.save(any())).thenAnswer(inv -> {
 			var entity = (com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade) inv.getArgument(0);
 			if (entity.getNrSeqAtendimento() == null) {
@@ -157,15 +168,8 @@ class EventProcessorValidationTests {
 			}
 			return entity;
 		});
-		when(atendimentosUnidadeRepository
-					.findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(eq(10L), anyCollection()))
-				.thenReturn(java.util.List.of(com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade.builder()
-						.nrSeqAtendimento(1L)
-						.nrSenhaAtendimento(1)
-						.paciente(paciente)
-						.tipoPriorizacao(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build())
-						.estadoSenha(TipoEstadoSenha.builder().codTipoEstado(1).nomeStatus("CRIADA").build())
-						.build()));
+		when(atendimentosUnidadeRepository.findAtivosByPaciente(10L))
+				.thenReturn(java.util.List.of(new AtendimentoAtivo(1L, 1, 1)));
 
 		processor.process(envelope(EventType.RETIRADA_DE_SENHA, """
 				{ 
@@ -179,9 +183,10 @@ class EventProcessorValidationTests {
 				com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade.class);
 		verify(atendimentosUnidadeRepository).save(captor.capture());
 		assertThat(captor.getValue().getEstadoSenha().getCodTipoEstado()).isEqualTo(91);
-		verify(redisQueueService, never()).enqueue(anyString(), any());
-		verify(redisQueueService, never()).saveAtendimentoSnapshot(anyString(), any());
-		verify(tempoAtendimentoRedisService).updateTempoMedioPorTipo(eq("UPA1"));
+		verify(estadoAtendimentoRepository).insertIgnoringDuplicates(argThat(id ->
+				id.getNrSeqAtendimento() == 999L && id.getCodTipoEstado() == 91));
+		verify(redisQueueOutbox, never()).enqueue(anyString(), any());
+		verify(metricsRecomputeScheduler).markDirty(eq("UPA1"));
 		verify(idempotencyService).markProcessed(any());
 	}
 
@@ -194,17 +199,11 @@ class EventProcessorValidationTests {
 				.indicadorGestante("N")
 				.build();
 		when(cadastroSusRepository.findById(10L)).thenReturn(Optional.of(paciente));
-		when(atendimentosUnidadeRepository
-					.findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(eq(10L), anyCollection()))
-				.thenReturn(java.util.List.of());
-		when(atendimentosUnidadeRepository
-				.findByNrSenhaAtendimentoAndPacienteCodCadastroSusPaciente(anyInt(), eq(10L)))
-				.thenReturn(Optional.empty());
+		when(atendimentosUnidadeRepository.findAtivosByPaciente(10L)).thenReturn(java.util.List.of());
 		when(tipoPriorizacaoRepository.getReferenceById(anyInt()))
 				.thenReturn(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build());
 		when(tipoEstadoSenhaRepository.getReferenceById(anyInt()))
 				.thenReturn(TipoEstadoSenha.builder().codTipoEstado(1).nomeStatus("CRIADA").build());
-		when(estadoAtendimentoRepository.existsById(any())).thenReturn(false);
 		when(atendimentosUnidadeRepository.save(any())).thenAnswer(inv -> {
 			var entity = (com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade) inv.getArgument(0);
 			if (entity.getNrSeqAtendimento() == null) {
@@ -227,12 +226,82 @@ class EventProcessorValidationTests {
 		assertThat(captor.getValue().getNrSenhaAtendimento()).isEqualTo(1);
 		ArgumentCaptor<com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade> filaCaptor = ArgumentCaptor.forClass(
 				com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade.class);
-		verify(redisQueueService).enqueue(eq("UPA1"), filaCaptor.capture());
+		verify(redisQueueOutbox).enqueue(eq("UPA1"), filaCaptor.capture());
 		assertThat(filaCaptor.getValue().getNrSeqAtendimento()).isEqualTo(123L);
-		verify(tempoAtendimentoRedisService).updateTempoMedioPorTipo(eq("UPA1"));
+		verify(queueDepthTracker).ticketAtivado(eq("und_atd1"), eq(0));
+		verify(metricsRecomputeScheduler).markDirty(eq("UPA1"));
 		verify(idempotencyService).markProcessed(any());
 	}
 
+	@Test
+	void retiradaSenha_shouldReusePatientProfileWithoutLoadingCadastroSusAgain() throws Exception {
+		CadastroSus paciente = CadastroSus.builder()
+				.codCadastroSusPaciente(10L)
+				.nomePaciente("Paciente")
+				.idadePaciente(72)
+				.indicadorGestante("N")
+				.build();
+		when(cadastroSusRepository.findById(10L)).thenReturn(Optional.of(paciente));
+		when(cadastroSusRepository.getReferenceById(10L)).thenReturn(paciente);
+		when(atendimentosUnidadeRepository.findAtivosByPaciente(10L)).thenReturn(java.util.List.of());
+		when(tipoPriorizacaoRepository.getReferenceById(anyInt()))
+				.thenAnswer(inv -> TipoPriorizacao.builder().codTipoPriorizacao(inv.getArgument(0)).build());
+		when(tipoEstadoSenhaRepository.getReferenceById(anyInt()))
+				.thenAnswer(inv -> TipoEstadoSenha.builder().codTipoEstado(inv.getArgument(0)).build());
+		when(atendimentosUnidadeRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+		processor.process(envelope(EventType.RETIRADA_DE_SENHA,
+				"{\"unidadeAtendimento\":\"UPA1\",\"nrSenhaAtendimento\":5,\"codCadastroSusPaciente\":10}"));
+		processor.process(envelope(EventType.RETIRADA_DE_SENHA,
+				"{\"unidadeAtendimento\":\"UPA1\",\"nrSenhaAtendimento\":6,\"codCadastroSusPaciente\":10}"));
+
+		// a segunda retirada usa o perfil em cache e apenas uma referência ao paciente
+		verify(cadastroSusRepository, times(1)).findById(10L);
+		verify(cadastroSusRepository, times(1)).getReferenceById(10L);
+		ArgumentCaptor<com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade> captor = ArgumentCaptor.forClass(
+				com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade.class);
+		verify(atendimentosUnidadeRepository, times(2)).save(captor.capture());
+		assertThat(captor.getAllValues())
+				.allSatisfy(a -> assertThat(a.getEstadoSenha().getCodTipoEstado()).isEqualTo(3));
+		verify(queueDepthTracker, times(2)).ticketAtivado(eq("und_atd1"), eq(1));
+	}
+
+	@Test
+	void retiradaSenha_rollbackWithCachedPatient_shouldReloadCadastroSusOnRetry() throws Exception {
+		CadastroSus paciente = CadastroSus.builder()
+				.codCadastroSusPaciente(10L)
+				.nomePaciente("Paciente")
+				.idadePaciente(30)
+				.indicadorGestante("N")
+				.build();
+		when(cadastroSusRepository.findById(10L)).thenReturn(Optional.of(paciente), Optional.empty());
+		when(cadastroSusRepository.getReferenceById(10L)).thenReturn(paciente);
+		when(atendimentosUnidadeRepository.findAtivosByPaciente(10L)).thenReturn(java.util.List.of());
+		when(tipoPriorizacaoRepository.getReferenceById(anyInt()))
+				.thenAnswer(inv -> TipoPriorizacao.builder().codTipoPriorizacao(inv.getArgument(0)).build());
+		when(tipoEstadoSenhaRepository.getReferenceById(anyInt()))
+				.thenAnswer(inv -> TipoEstadoSenha.builder().codTipoEstado(inv.getArgument(0)).build());
+		when(atendimentosUnidadeRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+		String payload = "{\"unidadeAtendimento\":\"UPA1\",\"nrSenhaAtendimento\":5,\"codCadastroSusPaciente\":10}";
+		processor.process(envelope(EventType.RETIRADA_DE_SENHA, payload));
+
+		// paciente removido do CADASTRO_SUS com o perfil ainda em cache: a FK falha no flush e a transação volta
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			processor.process(envelope(EventType.RETIRADA_DE_SENHA, payload));
+			TransactionSynchronizationManager.getSynchronizations()
+					.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		// a nova tentativa lê o banco de novo e descarta o evento em vez de repetir a falha
+		processor.process(envelope(EventType.RETIRADA_DE_SENHA, payload));
+
+		verify(cadastroSusRepository, times(2)).findById(10L);
+		verify(atendimentosUnidadeRepository, times(2)).save(any());
+	}
+
 	@Test
 	void retiradaSenha_shouldCancelLaterActiveSenhasKeepingFirst() throws Exception {
 		CadastroSus paciente = CadastroSus.builder()
@@ -246,7 +315,6 @@ class EventProcessorValidationTests {
 				.thenReturn(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build());
 		when(tipoEstadoSenhaRepository.getReferenceById(91))
 				.thenReturn(TipoEstadoSenha.builder().codTipoEstado(91).nomeStatus("CANCELADA").build());
-		when(estadoAtendimentoRepository.existsById(any())).thenReturn(false);
 		java.util.concurrent.atomic.AtomicLong seq = new java.util.concurrent.atomic.AtomicLong(200L);
 		when(atendimentosUnidadeRepository.save(any())).thenAnswer(inv -> {
 			var entity = (com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade) inv.getArgument(0);
@@ -273,9 +341,9 @@ class EventProcessorValidationTests {
 				.estadoSenha(estAtiva)
 				.build();
 
-		when(atendimentosUnidadeRepository
-					.findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(eq(10L), anyCollection()))
-				.thenReturn(List.of(a1, a2));
+		when(atendimentosUnidadeRepository.findAtivosByPaciente(10L))
+				.thenReturn(List.of(new AtendimentoAtivo(a1.getNrSeqAtendimento(), 1, 1), new AtendimentoAtivo(a2.getNrSeqAtendimento(), 2, 1)));
+		when(atendimentosUnidadeRepository.findAllById(List.of(101L))).thenReturn(List.of(a2));
 
 		processor.process(envelope(EventType.RETIRADA_DE_SENHA, """
 				{ 
@@ -292,15 +360,54 @@ class EventProcessorValidationTests {
 		assertThat(captor.getAllValues().get(0).getEstadoSenha().getCodTipoEstado()).isEqualTo(91);
 		assertThat(captor.getAllValues().get(1).getNrSenhaAtendimento()).isEqualTo(3);
 		assertThat(captor.getAllValues().get(1).getEstadoSenha().getCodTipoEstado()).isEqualTo(91);
-		verify(redisQueueService).remove(eq("UPA1"), eq("101"));
-		verify(redisQueueService, never()).enqueue(anyString(), any());
-		verify(redisQueueService, never()).saveAtendimentoSnapshot(anyString(), any());
-		verify(tempoAtendimentoRedisService).updateTempoMedioPorTipo(eq("UPA1"));
+		verify(redisQueueOutbox).removeAll(eq("UPA1"), eq(List.of("101")), eq(10L));
+		verify(queueDepthTracker).ticketEncerrado(eq("und_atd1"), eq(0));
+		verify(queueDepthTracker, never()).ticketAtivado(anyString(), any());
+		verify(redisQueueOutbox, never()).enqueue(anyString(), any());
+		verify(metricsRecomputeScheduler).markDirty(eq("UPA1"));
 		verify(idempotencyService).markProcessed(any());
 	}
 
+	@Test
+	void processBatch_shouldProcessRepeatedEventOnceAndRefreshMetricsOncePerUnidade() throws Exception {
+		when(colaboradorRepository.findFuncaoById(1L)).thenReturn(Optional.of(new ColaboradorFuncao(1L, 99, "RECEPCAO")));
+
+		EventEnvelope primeiro = envelope(EventType.MEDICO_ENTRA_NO_PONTO, "{\"codIdColaborador\":\"1\"}");
+		EventEnvelope segundo = envelope(EventType.MEDICO_SAI_DO_PONTO, "{\"codIdColaborador\":\"1\"}");
+		when(idempotencyService.filterUnprocessed(any()))
+				.thenReturn(new java.util.LinkedHashSet<>(List.of(primeiro.eventId(), segundo.eventId())));
+
+		TenantContext.setCurrentTenant("und_atd1");
+		try {
+			assertThat(processor.processBatch(List.of(primeiro, primeiro, segundo))).isEqualTo(2);
+		} finally {
+			TenantContext.clear();
+		}
+
+		// dois eventos de ponto distintos processados; o segundo encontra o colaborador no cache local
+		verify(colaboradorRepository, times(1)).findFuncaoById(1L);
+		verify(idempotencyService, never()).isProcessed(any());
+		verify(idempotencyService).markProcessedAll(eq(List.of(primeiro.eventId(), segundo.eventId())));
+		verify(metricsRecomputeScheduler, times(1)).markDirty(eq("UPA1"));
+	}
+
+	@Test
+	void claimMode_shouldSkipProcessedButNotCommitEventClaimedByAnotherTransaction() throws Exception {
+		when(idempotencyService.isClaimFirst()).thenReturn(true);
+		EventEnvelope event = envelope(EventType.MEDICO_ENTRA_NO_PONTO, "{\"codIdColaborador\":\"1\"}");
+
+		when(idempotencyService.tryClaim(event.eventId())).thenReturn(RedisIdempotencyService.Claim.IN_FLIGHT);
+		assertThatThrownBy(() -> processor.process(event)).isInstanceOf(EventInFlightException.class);
+
+		when(idempotencyService.tryClaim(event.eventId())).thenReturn(RedisIdempotencyService.Claim.PROCESSED);
+		processor.process(event);
+
+		verifyNoInteractions(colaboradorRepository, pontoColaboradorRepository);
+		verify(idempotencyService, never()).markProcessed(any());
+	}
+
 	private EventEnvelope envelope(EventType type, String payloadJson) throws Exception {
-		JsonNode payload = objectMapper.readTree(payloadJson);
-		return new EventEnvelope(UUID.randomUUID(), type, Instant.parse("2026-02-13T12:10:00Z"), payload);
+		return parser.parse("{\"eventId\":\"" + UUID.randomUUID() + "\",\"type\":\"" + type
+				+ "\",\"occurredAt\":\"2026-02-13T12:10:00Z\",\"payload\":" + payloadJson + "}");
 	}
 }
@@ -0,0 +1,105 @@
+package com.sus.fiap.consumer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sus.fiap.consumer.kafka.HealthcareEventsBatchListener;
+import com.sus.fiap.consumer.model.EventEnvelope;
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
+import com.sus.fiap.consumer.service.EventEnvelopeParser;
+import com.sus.fiap.consumer.service.EventProcessor;
+import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HealthcareEventsBatchListenerTests {
+	@Mock
+	private EventProcessor processor;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private HealthcareEventsBatchListener listener;
+
+	@BeforeEach
+	void setUp() {
+		listener = new HealthcareEventsBatchListener(
+				new EventEnvelopeParser(new ObjectMapper()),
+				processor,
+				new UnidadeSchemaResolver(),
+				new DatabaseConcurrencyLimiter(new SimpleMeterRegistry(), 1, Duration.ofSeconds(1)),
+				meterRegistry
+		);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void onBatch_shouldGroupRecordsByTenantAndSkipInvalidOnes() {
+		// o grupo da UPA1 tem um evento já processado: só o aplicado conta
+		when(processor.processBatch(anyList())).thenReturn(1);
+
+		listener.onBatch(List.of(
+				record(0, evento("UPA1", 1).getBytes(StandardCharsets.UTF_8)),
+				record(1, "{invalido".getBytes(StandardCharsets.UTF_8)),
+				record(2, evento("UPA2", 2)),
+				record(3, ByteBuffer.wrap(evento("UPA1", 3).getBytes(StandardCharsets.UTF_8)))
+		));
+
+		ArgumentCaptor<List<EventEnvelope>> captor = ArgumentCaptor.forClass(List.class);
+		verify(processor, times(2)).processBatch(captor.capture());
+		assertThat(captor.getAllValues().get(0)).hasSize(2);
+		assertThat(captor.getAllValues().get(1)).hasSize(1);
+		verify(processor, never()).process(any());
+		assertThat(meterRegistry.counter("consumer.kafka.records", "mode", "batch", "outcome", "processed").count()).isEqualTo(2.0);
+	}
+
+	@Test
+	void onBatch_shouldFallbackToSingleRecordsAndReportFirstFailedIndex() {
+		doThrow(new IllegalStateException("db")).when(processor).processBatch(anyList());
+		doThrow(new IllegalStateException("db")).doNothing().when(processor).process(any());
+
+		assertThatThrownBy(() -> listener.onBatch(List.of(
+				record(0, evento("UPA1", 1)),
+				record(1, evento("UPA1", 2))
+		)))
+				.isInstanceOf(BatchListenerFailedException.class)
+				.satisfies(e -> assertThat(((BatchListenerFailedException) e).getIndex()).isZero());
+
+		verify(processor, times(2)).process(any());
+	}
+
+	private static ConsumerRecord<String, Object> record(long offset, Object value) {
+		return new ConsumerRecord<>("healthcare.queue.events.v1", 0, offset, "k" + offset, value);
+	}
+
+	private static String evento(String unidade, int senha) {
+		return """
+				{
+				  "eventId": "%s",
+				  "type": "RETIRADA_DE_SENHA",
+				  "occurredAt": "2026-02-13T12:10:00Z",
+				  "payload": { "unidadeAtendimento": "%s", "nrSenhaAtendimento": %d, "codCadastroSusPaciente": 10 }
+				}
+				""".formatted(java.util.UUID.randomUUID(), unidade, senha);
+	}
+}
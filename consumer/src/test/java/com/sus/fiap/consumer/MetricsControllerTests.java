@@ -1,23 +1,46 @@
 package com.sus.fiap.consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.Duration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.json.JsonCompareMode;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.sus.fiap.consumer.api.MetricsController;
-import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.api.TempoEsperaBroadcaster;
+import com.sus.fiap.consumer.persistence.repository.AtendimentoAtivo;
 import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
 import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+import com.sus.fiap.consumer.service.DatabaseConcurrencyLimiter;
+import com.sus.fiap.consumer.service.MetricsNearCache;
+import com.sus.fiap.consumer.service.RedisQueueService;
 import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
 
 @WebMvcTest(controllers = MetricsController.class)
@@ -25,6 +48,9 @@ class MetricsControllerTests {
 	@Autowired
 	private MockMvc mvc;
 
+	@Autowired
+	private TempoEsperaBroadcaster tempoEsperaBroadcaster;
+
 	@MockitoBean
 	private StringRedisTemplate redis;
 
@@ -37,10 +63,31 @@ class MetricsControllerTests {
 	@MockitoBean
 	private AtendimentosUnidadeRepository atendimentosUnidadeRepository;
 
+	@MockitoBean
+	private RedisQueueService redisQueueService;
+
+	@TestConfiguration
+	static class LimiterConfig {
+		@Bean
+		DatabaseConcurrencyLimiter databaseConcurrencyLimiter() {
+			return new DatabaseConcurrencyLimiter(new SimpleMeterRegistry(), 2, Duration.ofSeconds(1));
+		}
+
+		@Bean
+		MetricsNearCache metricsNearCache(StringRedisTemplate redis) {
+			return new MetricsNearCache(redis, null, new SimpleMeterRegistry(), false, false, Duration.ZERO, Duration.ZERO);
+		}
+
+		@Bean
+		TempoEsperaBroadcaster tempoEsperaBroadcaster() {
+			return new TempoEsperaBroadcaster(null, new SimpleMeterRegistry(), true, 1, Duration.ofMinutes(1), Duration.ofSeconds(10));
+		}
+	}
+
 	@Test
 	void returns404WhenMetricMissing() throws Exception {
 		@SuppressWarnings("unchecked")
-		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) org.mockito.Mockito.mock(ValueOperations.class);
+		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) mock(ValueOperations.class);
 		when(redis.opsForValue()).thenReturn(valueOps);
 		when(valueOps.get("metrics:tempoAtendimentoMedio:UPA1")).thenReturn(null);
 
@@ -51,7 +98,7 @@ class MetricsControllerTests {
 	@Test
 	void returnsJsonWhenMetricExists() throws Exception {
 		@SuppressWarnings("unchecked")
-		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) org.mockito.Mockito.mock(ValueOperations.class);
+		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) mock(ValueOperations.class);
 		when(redis.opsForValue()).thenReturn(valueOps);
 		when(valueOps.get("metrics:tempoAtendimentoMedio:UPA2")).thenReturn("{\"unidadeAtendimento\":\"UPA2\"}");
 
@@ -63,7 +110,7 @@ class MetricsControllerTests {
 	@Test
 	void returnsOnlyWaitTimeForTipo() throws Exception {
 		@SuppressWarnings("unchecked")
-		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) org.mockito.Mockito.mock(ValueOperations.class);
+		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) mock(ValueOperations.class);
 		when(redis.opsForValue()).thenReturn(valueOps);
 		when(valueOps.get("metrics:tempoAtendimentoMedio:UPA1")).thenReturn(
 				"{\"unidadeAtendimento\":\"UPA1\",\"normal\":{\"tempoEstimadoMin\":65},\"idoso\":{\"tempoEstimadoMin\":25},\"gestante\":{\"tempoEstimadoMin\":15},\"emergencia\":{\"tempoEstimadoMin\":10}}"
@@ -82,14 +129,10 @@ class MetricsControllerTests {
 
 	@Test
 	void returnsIndividualWaitTimeBySenha() throws Exception {
-		@SuppressWarnings("unchecked")
-		ZSetOperations<String, String> zsetOps = (ZSetOperations<String, String>) org.mockito.Mockito.mock(ZSetOperations.class);
-		when(redis.opsForZSet()).thenReturn(zsetOps);
-		when(zsetOps.count(org.mockito.Mockito.eq("queue:zset:UPA1"), org.mockito.Mockito.anyDouble(), org.mockito.Mockito.anyDouble()))
-				.thenReturn(13L);
+		when(redisQueueService.pessoasNaFrenteDaSenha("UPA1", 0, 50)).thenReturn(13L);
 
 		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
-		when(pontoColaboradorRepository.countByHorarioSaidaIsNull()).thenReturn(2L);
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(2L);
 
 		mvc.perform(get("/api/metrics/tempo-espera")
 					.queryParam("unidade", "UPA1")
@@ -97,24 +140,49 @@ class MetricsControllerTests {
 					.queryParam("senha", "50"))
 				.andExpect(status().isOk())
 				.andExpect(content().json("{\"tempoEstimadoMin\":65,\"pessoasNaFrente\":13,\"medicosEmAtendimento\":2}"));
+		verifyNoInteractions(pontoColaboradorRepository);
+	}
+
+	@Test
+	void returnsIndividualWaitTimeByCodSusFromRedisIndexWithoutDatabase() throws Exception {
+		when(redisQueueService.posicaoPaciente("UPA1", 10L)).thenReturn(new RedisQueueService.PosicaoPaciente(123L, 13L));
+		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(2L);
+
+		mvc.perform(get("/api/metrics/tempo-espera")
+					.queryParam("unidade", "UPA1")
+					.queryParam("codSus", "10"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"tempoEstimadoMin\":65,\"pessoasNaFrente\":13,\"medicosEmAtendimento\":2,\"nrSeqAtendimento\":123}"));
+		verifyNoInteractions(atendimentosUnidadeRepository, pontoColaboradorRepository);
+	}
+
+	@Test
+	void returns404WhenIndexedSenhaIsNoLongerQueued() throws Exception {
+		when(redisQueueService.posicaoPaciente("UPA1", 10L)).thenReturn(new RedisQueueService.PosicaoPaciente(123L, null));
+
+		mvc.perform(get("/api/metrics/tempo-espera")
+					.queryParam("unidade", "UPA1")
+					.queryParam("codSus", "10"))
+				.andExpect(status().isNotFound());
+		verifyNoInteractions(atendimentosUnidadeRepository);
 	}
 
 	@Test
 	void returnsIndividualWaitTimeByCodSus() throws Exception {
 		@SuppressWarnings("unchecked")
-		ZSetOperations<String, String> zsetOps = (ZSetOperations<String, String>) org.mockito.Mockito.mock(ZSetOperations.class);
+		ZSetOperations<String, String> zsetOps = (ZSetOperations<String, String>) mock(ZSetOperations.class);
 		when(redis.opsForZSet()).thenReturn(zsetOps);
 		when(zsetOps.score("queue:zset:UPA1", "123")).thenReturn(3_000_050d);
 		when(zsetOps.count(org.mockito.Mockito.eq("queue:zset:UPA1"), org.mockito.Mockito.anyDouble(), org.mockito.Mockito.anyDouble()))
 				.thenReturn(13L);
 
 		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
+		// conjunto de pontos abertos ainda não sincronizado: conta no banco
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(-1L);
 		when(pontoColaboradorRepository.countByHorarioSaidaIsNull()).thenReturn(2L);
-		when(atendimentosUnidadeRepository
-				.findByPacienteCodCadastroSusPacienteAndEstadoSenhaCodTipoEstadoNotInOrderByNrSeqAtendimentoAsc(
-						10L,
-						java.util.List.of(6, 90, 91)
-				)).thenReturn(java.util.List.of(AtendimentosUnidade.builder().nrSeqAtendimento(123L).build()));
+		when(atendimentosUnidadeRepository.findAtivosByPaciente(10L))
+				.thenReturn(java.util.List.of(new AtendimentoAtivo(123L, 50, 1)));
 
 		mvc.perform(get("/api/metrics/tempo-espera")
 					.queryParam("unidade", "UPA1")
@@ -122,4 +190,107 @@ class MetricsControllerTests {
 				.andExpect(status().isOk())
 				.andExpect(content().json("{\"tempoEstimadoMin\":65,\"pessoasNaFrente\":13,\"medicosEmAtendimento\":2,\"nrSeqAtendimento\":123}"));
 	}
+
+	@Test
+	void returnsBatchPositionsWithOneRedisCallAndOneDoctorCount() throws Exception {
+		when(redisQueueService.posicoes("UPA1", java.util.List.of(
+				RedisQueueService.ConsultaPosicao.porSenha(50, 0),
+				RedisQueueService.ConsultaPosicao.porPaciente(10L),
+				RedisQueueService.ConsultaPosicao.porPaciente(11L))))
+				.thenReturn(java.util.List.of(
+						new RedisQueueService.Posicao(null, 13L),
+						new RedisQueueService.Posicao(123L, 4L),
+						new RedisQueueService.Posicao(null, null)));
+		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(2L);
+
+		MvcResult result = mvc.perform(post("/api/metrics/tempo-espera/lote")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"unidade\":\"upa1\",\"itens\":[{\"senha\":50,\"tipo\":0},{\"codSus\":10},{\"codSus\":11}]}"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"unidade\":\"UPA1\",\"medicosEmAtendimento\":2,\"itens\":["
+						+ "{\"senha\":50,\"tipo\":0,\"tempoEstimadoMin\":65,\"pessoasNaFrente\":13},"
+						+ "{\"codSus\":10,\"tempoEstimadoMin\":20,\"pessoasNaFrente\":4,\"nrSeqAtendimento\":123},"
+						+ "{\"codSus\":11,\"encontrado\":false}]}", JsonCompareMode.STRICT));
+		verify(redisQueueService, times(1)).medicosEmAtendimento("und_atd1");
+		verifyNoInteractions(atendimentosUnidadeRepository, pontoColaboradorRepository);
+	}
+
+	@Test
+	void batchItemsMatchSingleGetWhenNoDoctorIsOnShift() throws Exception {
+		when(redisQueueService.posicoes("UPA1", java.util.List.of(
+				RedisQueueService.ConsultaPosicao.porSenha(50, 0),
+				RedisQueueService.ConsultaPosicao.porPaciente(10L))))
+				.thenReturn(java.util.List.of(
+						new RedisQueueService.Posicao(77L, 13L),
+						new RedisQueueService.Posicao(123L, 4L)));
+		when(redisQueueService.posicaoPaciente("UPA1", 10L)).thenReturn(new RedisQueueService.PosicaoPaciente(123L, 4L));
+		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(0L);
+
+		mvc.perform(get("/api/metrics/tempo-espera").param("unidade", "UPA1").param("tipo", "0").param("senha", "50"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"tempoEstimadoMin\":null,\"pessoasNaFrente\":0,\"medicosEmAtendimento\":0}",
+						JsonCompareMode.STRICT));
+		mvc.perform(get("/api/metrics/tempo-espera").param("unidade", "UPA1").param("codSus", "10"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"tempoEstimadoMin\":null,\"pessoasNaFrente\":4,\"medicosEmAtendimento\":0,"
+						+ "\"nrSeqAtendimento\":123}", JsonCompareMode.STRICT));
+
+		MvcResult result = mvc.perform(post("/api/metrics/tempo-espera/lote")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"unidade\":\"UPA1\",\"itens\":[{\"senha\":50,\"tipo\":0},{\"codSus\":10}]}"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(content().json("{\"unidade\":\"UPA1\",\"medicosEmAtendimento\":0,\"itens\":["
+						+ "{\"senha\":50,\"tipo\":0,\"tempoEstimadoMin\":null,\"pessoasNaFrente\":0},"
+						+ "{\"codSus\":10,\"tempoEstimadoMin\":null,\"pessoasNaFrente\":4,\"nrSeqAtendimento\":123}]}",
+						JsonCompareMode.STRICT));
+		verify(redisQueueService, never()).pessoasNaFrenteDaSenha(anyString(), anyInt(), anyInt());
+	}
+
+	@Test
+	void returns400WhenBatchItemHasNoTipo() throws Exception {
+		mvc.perform(post("/api/metrics/tempo-espera/lote")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"unidade\":\"UPA1\",\"itens\":[{\"senha\":50}]}"))
+				.andExpect(status().isBadRequest());
+		verifyNoInteractions(redisQueueService);
+	}
+
+	@Test
+	void streamsCurrentValueThenChangesAndRejectsOverLimit() throws Exception {
+		@SuppressWarnings("unchecked")
+		ValueOperations<String, String> valueOps = (ValueOperations<String, String>) mock(ValueOperations.class);
+		when(redis.opsForValue()).thenReturn(valueOps);
+		when(valueOps.get("metrics:tempoAtendimentoMedio:UPA1")).thenReturn("{\"unidadeAtendimento\":\"UPA1\",\"v\":1}");
+
+		MvcResult result = mvc.perform(get("/api/metrics/tempo-espera/upa1/stream"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		// max-subscribers=1 no teste
+		mvc.perform(get("/api/metrics/tempo-espera/UPA1/stream"))
+				.andExpect(status().isServiceUnavailable());
+
+		tempoEsperaBroadcaster.publish("UPA2", "{\"unidadeAtendimento\":\"UPA2\",\"v\":9}");
+		tempoEsperaBroadcaster.publish("UPA1", "{\"unidadeAtendimento\":\"UPA1\",\"v\":2}");
+
+		String esperado = "event:tempo-espera\ndata:{\"unidadeAtendimento\":\"UPA1\",\"v\":1}\n\n"
+				+ "event:tempo-espera\ndata:{\"unidadeAtendimento\":\"UPA1\",\"v\":2}\n\n";
+		long limite = System.currentTimeMillis() + 5_000;
+		while (!result.getResponse().getContentAsString().equals(esperado) && System.currentTimeMillis() < limite) {
+			Thread.sleep(10);
+		}
+		assertThat(result.getResponse().getContentAsString()).isEqualTo(esperado);
+		assertThat(result.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+
+		result.getRequest().getAsyncContext().complete();
+	}
 }
@@ -0,0 +1,74 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import com.sus.fiap.consumer.service.MetricsNearCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MetricsNearCacheTests {
+	private static final String KEY = "metrics:tempoAtendimentoMedio:UPA1";
+
+	@SuppressWarnings("unchecked")
+	private final ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+	private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+
+	@Test
+	void get_withoutTracking_shouldServeRepeatedReadsLocallyUntilTtl() throws InterruptedException {
+		when(redis.opsForValue()).thenReturn(valueOps);
+		when(valueOps.get(KEY)).thenReturn("{\"v\":1}", "{\"v\":2}");
+		MetricsNearCache cache = new MetricsNearCache(redis, null, new SimpleMeterRegistry(), true, false,
+				Duration.ofMillis(200), Duration.ofSeconds(60));
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(cache.get(KEY)).isEqualTo("{\"v\":1}");
+		}
+		verify(valueOps, times(1)).get(KEY);
+
+		Thread.sleep(250);
+
+		assertThat(cache.get(KEY)).isEqualTo("{\"v\":2}");
+		verify(valueOps, times(2)).get(KEY);
+	}
+
+	@Test
+	void get_whenDisabled_shouldAlwaysReadRedis() {
+		when(redis.opsForValue()).thenReturn(valueOps);
+		when(valueOps.get(KEY)).thenReturn(null);
+		MetricsNearCache cache = new MetricsNearCache(redis, null, new SimpleMeterRegistry(), false, false,
+				Duration.ofSeconds(1), Duration.ofSeconds(60));
+
+		cache.get(KEY);
+		cache.get(KEY);
+
+		verify(valueOps, times(2)).get(KEY);
+	}
+
+	@Test
+	void get_afterManyProbedUnits_shouldStillCacheNewKeys() {
+		when(redis.opsForValue()).thenReturn(valueOps);
+		when(valueOps.get(anyString())).thenReturn(null);
+		when(valueOps.get(KEY)).thenReturn("{\"v\":1}");
+		MetricsNearCache cache = new MetricsNearCache(redis, null, new SimpleMeterRegistry(), true, false,
+				Duration.ofSeconds(60), Duration.ofSeconds(60));
+
+		// unidades inexistentes vindas da URL: ausências guardadas que nenhuma escrita vai invalidar
+		for (int i = 0; i < 5_000; i++) {
+			cache.get("metrics:tempoAtendimentoMedio:X" + i);
+		}
+		cache.get(KEY);
+		cache.get(KEY);
+
+		verify(valueOps, times(1)).get(KEY);
+	}
+}
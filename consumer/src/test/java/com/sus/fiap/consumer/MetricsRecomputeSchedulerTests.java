@@ -0,0 +1,73 @@
+package com.sus.fiap.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sus.fiap.consumer.service.MetricsRecomputeScheduler;
+import com.sus.fiap.consumer.service.TempoAtendimentoRedisService;
+
+class MetricsRecomputeSchedulerTests {
+
+	private final TempoAtendimentoRedisService tempoAtendimentoRedisService = mock(TempoAtendimentoRedisService.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private MetricsRecomputeScheduler scheduler;
+
+	@AfterEach
+	void tearDown() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void markDirty_shouldCoalesceBurstIntoAtMostTwoRecomputesPerUnidade() throws Exception {
+		scheduler = new MetricsRecomputeScheduler(tempoAtendimentoRedisService, meterRegistry,
+				Duration.ofSeconds(1), Duration.ofMinutes(2));
+		Counter executed = meterRegistry.counter("consumer.metrics.recompute", "result", "executed");
+		Counter coalesced = meterRegistry.counter("consumer.metrics.recompute", "result", "coalesced");
+
+		for (int i = 0; i < 100; i++) {
+			scheduler.markDirty("UPA1");
+			scheduler.markDirty("UPA2");
+		}
+
+		// a primeira marcação de cada unidade roda na hora (não há execução anterior) e corre junto com a rajada;
+		// toda marcação ou é absorvida ou agenda exatamente uma execução, e o que sobra da rajada cabe em mais uma
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (executed.count() + coalesced.count() < 200 && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(executed.count() + coalesced.count()).isEqualTo(200.0);
+		verify(tempoAtendimentoRedisService, atMost(2)).updateTempoMedioPorTipo("UPA1");
+		verify(tempoAtendimentoRedisService, atMost(2)).updateTempoMedioPorTipo("UPA2");
+	}
+
+	@Test
+	void markDirty_afterRecompute_shouldScheduleAnotherRun() {
+		scheduler = new MetricsRecomputeScheduler(tempoAtendimentoRedisService, meterRegistry,
+				Duration.ofMillis(50), Duration.ofMinutes(2));
+
+		scheduler.markDirty("UPA1");
+		verify(tempoAtendimentoRedisService, timeout(2000).times(1)).updateTempoMedioPorTipo("UPA1");
+		scheduler.markDirty("UPA1");
+		verify(tempoAtendimentoRedisService, timeout(2000).times(2)).updateTempoMedioPorTipo("UPA1");
+	}
+
+	@Test
+	void constructor_shouldRejectIntervalNotShorterThanTtl() {
+		assertThatThrownBy(() -> new MetricsRecomputeScheduler(tempoAtendimentoRedisService, meterRegistry,
+				Duration.ofMinutes(2), Duration.ofMinutes(2)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
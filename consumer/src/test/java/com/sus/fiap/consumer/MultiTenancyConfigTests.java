@@ -0,0 +1,49 @@
+package com.sus.fiap.consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sus.fiap.consumer.persistence.repository.TipoPriorizacaoRepository;
+import com.sus.fiap.consumer.service.TenantContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class MultiTenancyConfigTests {
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private TipoPriorizacaoRepository tipoPriorizacaoRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void connectionProvider_shouldSwitchSchemaOnlyWhenTenantChanges() {
+		// no H2 dos testes só und_atd1 tem as tabelas: a consulta em und_atd2 falha se o schema foi trocado
+		assertThatThrownBy(() -> TenantContext.callWithTenant("und_atd2",
+				() -> transactionTemplate.execute(status -> tipoPriorizacaoRepository.count())))
+				.isInstanceOf(RuntimeException.class);
+		double trocas = switches("und_atd1", "switched");
+		double puladas = switches("und_atd1", "skipped");
+
+		for (int i = 0; i < 3; i++) {
+			TenantContext.callWithTenant("und_atd1", () -> transactionTemplate.execute(status -> tipoPriorizacaoRepository.count()));
+		}
+
+		// a conexão que estava em und_atd2 volta uma vez; nas seguintes o schema já é o pedido
+		assertThat(switches("und_atd1", "switched") - trocas).isLessThanOrEqualTo(1);
+		assertThat(switches("und_atd1", "skipped") - puladas).isGreaterThanOrEqualTo(2);
+		assertThat(meterRegistry.get("consumer.db.connection.active").tag("tenant", "und_atd1").gauge().value()).isZero();
+		assertThat(meterRegistry.get("consumer.db.connection.acquire").tag("tenant", "und_atd2").timer().count()).isPositive();
+	}
+
+	private double switches(String tenant, String result) {
+		return meterRegistry.get("consumer.db.schema.switch").tag("tenant", tenant).tag("result", result).counter().count();
+	}
+}
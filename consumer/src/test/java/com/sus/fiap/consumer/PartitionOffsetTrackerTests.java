@@ -0,0 +1,86 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import com.sus.fiap.consumer.kafka.PartitionOffsetTracker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionOffsetTrackerTests {
+	private static final TopicPartition P0 = new TopicPartition("healthcare.queue.events.v1", 0);
+	private static final TopicPartition P1 = new TopicPartition("healthcare.queue.events.v1", 1);
+
+	@Test
+	void drainCommittable_shouldOnlyReleaseContiguousCompletedPrefix() {
+		PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+		var r10 = tracker.register(P0, 10);
+		var r11 = tracker.register(P0, 11);
+		var r12 = tracker.register(P0, 12);
+		var outra = tracker.register(P1, 5);
+
+		r11.complete();
+		r12.complete();
+		outra.complete();
+		assertThat(tracker.drainCommittable()).containsOnlyKeys(P1).containsEntry(P1, new OffsetAndMetadata(6));
+
+		r10.complete();
+		assertThat(tracker.drainCommittable()).containsExactlyEntriesOf(java.util.Map.of(P0, new OffsetAndMetadata(13)));
+		assertThat(tracker.drainCommittable()).isEmpty();
+		assertThat(tracker.pending()).isZero();
+	}
+
+	@Test
+	void discardLastAndRevoke_shouldForgetUndispatchedAndRevokedRecords() {
+		PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+		tracker.register(P0, 1).complete();
+		tracker.register(P0, 2);
+		tracker.discardLast(P0);
+		tracker.register(P1, 7);
+
+		tracker.revoke(java.util.List.of(P1));
+
+		assertThat(tracker.drainCommittable()).containsExactlyEntriesOf(java.util.Map.of(P0, new OffsetAndMetadata(2)));
+		assertThat(tracker.pending()).isZero();
+	}
+
+	@Test
+	void awaitRevoked_shouldRefuseQueuedRecordsAndCommitTheOneStillRunning() throws Exception {
+		PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+		var emExecucao = tracker.register(P0, 20);
+		var naLane = tracker.register(P0, 21);
+		assertThat(emExecucao.begin()).isTrue();
+
+		Thread lane = Thread.ofVirtual().start(() -> {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			emExecucao.complete();
+			emExecucao.end();
+		});
+		assertThat(tracker.awaitRevoked(java.util.List.of(P0), Duration.ofSeconds(5))).isTrue();
+		lane.join();
+
+		assertThat(naLane.begin()).isFalse();
+		assertThat(tracker.drainCommittable()).containsExactlyEntriesOf(java.util.Map.of(P0, new OffsetAndMetadata(21)));
+
+		// reatribuída depois: nova geração, registros voltam a ser aceitos
+		tracker.revoke(java.util.List.of(P0));
+		assertThat(tracker.register(P0, 21).begin()).isTrue();
+	}
+
+	@Test
+	void awaitRevoked_shouldGiveUpAfterTimeout() throws Exception {
+		PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+		var travado = tracker.register(P1, 3);
+		assertThat(travado.begin()).isTrue();
+
+		assertThat(tracker.awaitRevoked(java.util.List.of(P1), Duration.ofMillis(50))).isFalse();
+		assertThat(tracker.drainCommittable()).isEmpty();
+	}
+}
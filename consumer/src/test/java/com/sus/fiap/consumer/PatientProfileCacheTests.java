@@ -0,0 +1,43 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+
+import com.sus.fiap.consumer.service.PatientProfileCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientProfileCacheTests {
+
+	@Test
+	void shouldKeepProfilePerTenantAndDistinguishMisses() {
+		PatientProfileCache cache = new PatientProfileCache(new SimpleMeterRegistry(), 16, Duration.ofHours(1));
+
+		int perfil = cache.put("und_atd1", 10L, 72, false);
+
+		assertThat(cache.get("und_atd1", 10L)).isEqualTo(perfil);
+		assertThat(PatientProfileCache.idade(perfil)).isEqualTo(72);
+		assertThat(PatientProfileCache.gestante(perfil)).isFalse();
+		assertThat(cache.get("und_atd2", 10L)).isEqualTo(PatientProfileCache.MISS);
+
+		// perfil "vazio" (idade nula, não gestante) continua diferente de MISS
+		int vazio = cache.put("und_atd1", 11L, null, true);
+		assertThat(vazio).isNotEqualTo(PatientProfileCache.MISS);
+		assertThat(PatientProfileCache.idade(vazio)).isZero();
+		assertThat(PatientProfileCache.gestante(vazio)).isTrue();
+
+		cache.invalidate("und_atd1", 10L);
+		assertThat(cache.get("und_atd1", 10L)).isEqualTo(PatientProfileCache.MISS);
+	}
+
+	@Test
+	void shouldExpireEntriesAfterTtl() {
+		PatientProfileCache cache = new PatientProfileCache(new SimpleMeterRegistry(), 16, Duration.ZERO);
+
+		cache.put("und_atd1", 10L, 30, false);
+
+		assertThat(cache.get("und_atd1", 10L)).isEqualTo(PatientProfileCache.MISS);
+	}
+}
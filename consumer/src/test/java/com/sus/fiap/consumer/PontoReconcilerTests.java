@@ -0,0 +1,98 @@
+package com.sus.fiap.consumer;
+
+import java.time.LocalTime;
+import java.util.Set;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sus.fiap.consumer.persistence.entity.Colaborador;
+import com.sus.fiap.consumer.persistence.entity.FuncoesColabUnidade;
+import com.sus.fiap.consumer.persistence.entity.PontoColaborador;
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+import com.sus.fiap.consumer.persistence.repository.RedisOutboxRepository;
+import com.sus.fiap.consumer.service.PontoReconciler;
+import com.sus.fiap.consumer.service.RedisQueueService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class PontoReconcilerTests {
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private PontoReconciler pontoReconciler;
+
+	@Autowired
+	private PontoColaboradorRepository pontoColaboradorRepository;
+
+	@Autowired
+	private RedisOutboxRepository redisOutboxRepository;
+
+	@MockitoBean
+	private RedisQueueService redisQueueService;
+
+	@Test
+	void reconcile_shouldRepairThroughOutboxThenMarkSetAsSynchronized() {
+		redisOutboxRepository.deleteAllInBatch();
+		long[] ids = transactionTemplate.execute(status -> {
+			FuncoesColabUnidade medico = entityManager.merge(FuncoesColabUnidade.builder().codIdFuncao(1).nomeFuncao("MEDICO").build());
+			long emDia = colaborador("Em dia", medico);
+			long ausente = colaborador("Ausente", medico);
+			long saiu = colaborador("Saiu", medico);
+			ponto(1, emDia, null);
+			ponto(2, ausente, null);
+			ponto(3, saiu, LocalTime.NOON);
+			return new long[] {emDia, ausente, saiu};
+		});
+		long emDia = ids[0];
+		long ausente = ids[1];
+		long saiu = ids[2];
+		when(redisQueueService.pontosAbertos("und_atd1")).thenReturn(Set.of(emDia, saiu));
+
+		PontoReconciler.Drift drift = pontoReconciler.reconcile("und_atd1");
+
+		assertThat(drift.ausentes()).isEqualTo(1);
+		assertThat(drift.sobras()).isEqualTo(1);
+		assertThat(redisOutboxRepository.findAll())
+				.extracting(RedisOutbox::getOperacao, RedisOutbox::getUnidadeAtendimento, RedisOutbox::getCodIdColaborador)
+				.containsExactlyInAnyOrder(
+						tuple(RedisOutbox.Operacao.PONTO_ABERTO, "und_atd1", ausente),
+						tuple(RedisOutbox.Operacao.PONTO_FECHADO, "und_atd1", saiu));
+		// com desvios a contagem só passa a valer na próxima passada, depois do reparo
+		verify(redisQueueService, never()).marcarPontosSincronizados("und_atd1");
+
+		when(redisQueueService.pontosAbertos("und_atd1")).thenReturn(Set.of(emDia, ausente));
+
+		assertThat(pontoReconciler.reconcile("und_atd1")).isEqualTo(new PontoReconciler.Drift(0, 0));
+		verify(redisQueueService).marcarPontosSincronizados("und_atd1");
+	}
+
+	private long colaborador(String nome, FuncoesColabUnidade funcao) {
+		Colaborador colaborador = Colaborador.builder().nomeColaborador(nome).funcao(funcao).build();
+		entityManager.persist(colaborador);
+		return colaborador.getCodIdColaborador();
+	}
+
+	private void ponto(int nrSeqHorario, long codIdColaborador, LocalTime saida) {
+		pontoColaboradorRepository.save(PontoColaborador.builder()
+				.nrSeqHorario(nrSeqHorario)
+				.colaborador(entityManager.getReference(Colaborador.class, codIdColaborador))
+				.horarioEntrada(LocalTime.of(8, 0))
+				.horarioSaida(saida)
+				.build());
+	}
+}
@@ -0,0 +1,65 @@
+package com.sus.fiap.consumer;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+import com.sus.fiap.consumer.persistence.repository.PontoColaboradorRepository;
+import com.sus.fiap.consumer.service.QueueDepthTracker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueueDepthTrackerTests {
+	private final AtendimentosUnidadeRepository atendimentosUnidadeRepository = mock(AtendimentosUnidadeRepository.class);
+	private final PontoColaboradorRepository pontoColaboradorRepository = mock(PontoColaboradorRepository.class);
+	private final QueueDepthTracker tracker = new QueueDepthTracker(atendimentosUnidadeRepository, pontoColaboradorRepository);
+
+	@Test
+	void transitionsCommittedDuringLoad_shouldBeAddedToTheCounts() {
+		AtomicReference<Runnable> duranteCarga = new AtomicReference<>(() -> {});
+		when(atendimentosUnidadeRepository.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(anyCollection(), anyInt()))
+				.thenReturn(5L);
+		when(pontoColaboradorRepository.countByHorarioSaidaIsNull()).thenAnswer(inv -> {
+			duranteCarga.get().run();
+			return 2L;
+		});
+
+		// primeiro aquecimento: a senha e o ponto confirmados depois do COUNT não podem se perder
+		duranteCarga.set(() -> {
+			tracker.ticketAtivado("und_atd1", 0);
+			tracker.pontoAberto("und_atd1");
+		});
+		assertThat(tracker.snapshot("und_atd1")).isEqualTo(new QueueDepthTracker.QueueDepth(6, 5, 5, 5, 3));
+
+		// reconciliação: nem sobrescritos pelo valor do banco
+		duranteCarga.set(() -> tracker.ticketEncerrado("und_atd1", 3));
+		tracker.reconcile();
+		assertThat(tracker.snapshot("und_atd1")).isEqualTo(new QueueDepthTracker.QueueDepth(5, 5, 5, 4, 2));
+
+		// fora da carga os deltas vão direto para os contadores
+		tracker.ticketRepriorizado("und_atd1", 0, 3);
+		tracker.pontoFechado("und_atd1");
+		assertThat(tracker.snapshot("und_atd1")).isEqualTo(new QueueDepthTracker.QueueDepth(4, 5, 5, 5, 1));
+	}
+
+	@Test
+	void invalidate_shouldReloadWarmUnitsOnNextSnapshot() {
+		when(atendimentosUnidadeRepository.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(anyCollection(), anyInt()))
+				.thenReturn(5L);
+		when(pontoColaboradorRepository.countByHorarioSaidaIsNull()).thenReturn(2L);
+		assertThat(tracker.snapshot("und_atd1")).isEqualTo(new QueueDepthTracker.QueueDepth(5, 5, 5, 5, 2));
+
+		// após o rebalanceamento as transições da unidade passam a ser aplicadas por outra instância
+		when(atendimentosUnidadeRepository.countByEstadoSenhaCodTipoEstadoNotInAndTipoPriorizacaoCodTipoPriorizacao(anyCollection(), anyInt()))
+				.thenReturn(1L);
+		when(pontoColaboradorRepository.countByHorarioSaidaIsNull()).thenReturn(0L);
+		tracker.invalidate();
+
+		assertThat(tracker.snapshot("und_atd1")).isEqualTo(new QueueDepthTracker.QueueDepth(1, 1, 1, 1, 0));
+	}
+}
@@ -0,0 +1,117 @@
+package com.sus.fiap.consumer;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.CadastroSus;
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
+import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.persistence.repository.AtendimentosUnidadeRepository;
+import com.sus.fiap.consumer.persistence.repository.CadastroSusRepository;
+import com.sus.fiap.consumer.persistence.repository.RedisOutboxRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoEstadoSenhaRepository;
+import com.sus.fiap.consumer.persistence.repository.TipoPriorizacaoRepository;
+import com.sus.fiap.consumer.service.QueueReconciler;
+import com.sus.fiap.consumer.service.RedisQueueService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest
+class QueueReconcilerTests {
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private QueueReconciler queueReconciler;
+
+	@Autowired
+	private AtendimentosUnidadeRepository atendimentosUnidadeRepository;
+
+	@Autowired
+	private CadastroSusRepository cadastroSusRepository;
+
+	@Autowired
+	private TipoPriorizacaoRepository tipoPriorizacaoRepository;
+
+	@Autowired
+	private TipoEstadoSenhaRepository tipoEstadoSenhaRepository;
+
+	@Autowired
+	private RedisOutboxRepository redisOutboxRepository;
+
+	@MockitoBean
+	private RedisQueueService redisQueueService;
+
+	@Test
+	void reconcile_shouldRepairMissingWrongScoreAndStaleMembersThroughOutbox() {
+		redisOutboxRepository.deleteAllInBatch();
+		long[] ids = transactionTemplate.execute(status -> {
+			var normal = tipoPriorizacaoRepository.save(TipoPriorizacao.builder().codTipoPriorizacao(0).nomePriorizacao("NORMAL").build());
+			var emergencia = tipoPriorizacaoRepository.save(TipoPriorizacao.builder().codTipoPriorizacao(3).nomePriorizacao("EMERGENCIA").build());
+			var criada = tipoEstadoSenhaRepository.save(TipoEstadoSenha.builder().codTipoEstado(1).nomeStatus("CRIADA").build());
+			var finalizada = tipoEstadoSenhaRepository.save(TipoEstadoSenha.builder().codTipoEstado(6).nomeStatus("FINALIZADO").build());
+			var paciente = cadastroSusRepository.save(CadastroSus.builder().nomePaciente("Paciente").idadePaciente(30).build());
+			return new long[] {
+					salvar(5, paciente, normal, criada),
+					salvar(6, paciente, emergencia, criada),
+					salvar(7, paciente, normal, criada),
+					salvar(8, paciente, normal, finalizada),
+					paciente.getCodCadastroSusPaciente()
+			};
+		});
+		long emDia = ids[0];
+		long ausente = ids[1];
+		long scoreErrado = ids[2];
+		long finalizada = ids[3];
+		// ZSCAN não devolve em ordem
+		List<TypedTuple<String>> fila = List.of(
+				TypedTuple.of("999999999", 3_000_001d),
+				TypedTuple.of(String.valueOf(finalizada), 3_000_008d),
+				// faixa certa; a chegada é a do contador do Redis e não tem relação com o nrSeq
+				TypedTuple.of(String.valueOf(emDia), (double) ((4L << 50) + 3)),
+				// score do layout anterior (prioridade * 1_000_000 + senha), ainda não migrado
+				TypedTuple.of(String.valueOf(scoreErrado), 3_000_007d));
+		doAnswer(invocation -> {
+			Consumer<List<TypedTuple<String>>> pagina = invocation.getArgument(2);
+			pagina.accept(fila);
+			return null;
+		}).when(redisQueueService).scanQueue(eq("UPA1"), anyInt(), any());
+
+		QueueReconciler.Drift drift = queueReconciler.reconcile("und_atd1");
+
+		assertThat(drift.ausentes()).isGreaterThanOrEqualTo(1);
+		assertThat(drift.scoreDivergente()).isEqualTo(1);
+		assertThat(drift.sobras()).isEqualTo(2);
+		assertThat(redisOutboxRepository.findAll())
+				.extracting(RedisOutbox::getOperacao, RedisOutbox::getNrSeqAtendimento, RedisOutbox::getCodCadastroSusPaciente)
+				.contains(
+						tuple(RedisOutbox.Operacao.ENQUEUE, ausente, ids[4]),
+						tuple(RedisOutbox.Operacao.ENQUEUE, scoreErrado, ids[4]),
+						tuple(RedisOutbox.Operacao.REMOVE, finalizada, ids[4]),
+						tuple(RedisOutbox.Operacao.REMOVE, 999999999L, null));
+		assertThat(redisOutboxRepository.findAll()).noneMatch(row -> row.getNrSeqAtendimento() == emDia);
+	}
+
+	private long salvar(int nrSenha, CadastroSus paciente, TipoPriorizacao priorizacao, TipoEstadoSenha estado) {
+		return atendimentosUnidadeRepository.save(AtendimentosUnidade.builder()
+				.nrSenhaAtendimento(nrSenha)
+				.paciente(paciente)
+				.tipoPriorizacao(priorizacao)
+				.estadoSenha(estado)
+				.build()).getNrSeqAtendimento();
+	}
+}
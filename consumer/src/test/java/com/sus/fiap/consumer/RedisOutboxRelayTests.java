@@ -0,0 +1,102 @@
+package com.sus.fiap.consumer;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.CadastroSus;
+import com.sus.fiap.consumer.persistence.entity.RedisOutbox;
+import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
+import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.persistence.repository.RedisOutboxRepository;
+import com.sus.fiap.consumer.service.RedisOutboxRelay;
+import com.sus.fiap.consumer.service.RedisQueueOutbox;
+import com.sus.fiap.consumer.service.RedisQueueService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+class RedisOutboxRelayTests {
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private RedisQueueOutbox redisQueueOutbox;
+
+	@Autowired
+	private RedisOutboxRelay redisOutboxRelay;
+
+	@Autowired
+	private RedisOutboxRepository redisOutboxRepository;
+
+	@MockitoBean
+	private RedisQueueService redisQueueService;
+
+	@BeforeEach
+	void setUp() {
+		redisOutboxRepository.deleteAllInBatch();
+	}
+
+	@Test
+	void drain_shouldApplyCommittedMutationsInWriteOrderAndDeleteThem() {
+		transactionTemplate.executeWithoutResult(status -> {
+			redisQueueOutbox.enqueue("UPA1", atendimento(101L, 7, 3));
+			redisQueueOutbox.removeAll("UPA1", List.of("99", "100"), 10L);
+			// gravadas só no commit
+			assertThat(redisOutboxRepository.count()).isZero();
+		});
+		transactionTemplate.executeWithoutResult(status -> {
+			redisQueueOutbox.enqueue("UPA1", atendimento(102L, 8, 0));
+			status.setRollbackOnly();
+		});
+
+		int aplicadas = redisOutboxRelay.drain("und_atd1");
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<RedisOutbox>> lote = ArgumentCaptor.forClass(List.class);
+		verify(redisQueueService).applyAll(lote.capture());
+		assertThat(aplicadas).isEqualTo(3);
+		assertThat(lote.getValue())
+				.extracting(RedisOutbox::getOperacao, RedisOutbox::getNrSeqAtendimento, RedisOutbox::getCodCadastroSusPaciente)
+				.containsExactly(
+						tuple(RedisOutbox.Operacao.ENQUEUE, 101L, 10L),
+						tuple(RedisOutbox.Operacao.REMOVE, 99L, 10L),
+						tuple(RedisOutbox.Operacao.REMOVE, 100L, 10L));
+		assertThat(lote.getValue().get(0).getCodTipoPriorizacao()).isEqualTo(3);
+		assertThat(lote.getValue().get(0).getNrSenhaAtendimento()).isEqualTo(7);
+		assertThat(redisOutboxRepository.count()).isZero();
+		assertThat(redisOutboxRelay.drain("und_atd1")).isZero();
+	}
+
+	@Test
+	void drain_whenRedisFails_shouldKeepMutationsForRetry() {
+		transactionTemplate.executeWithoutResult(status -> redisQueueOutbox.remove("UPA1", "101", 10L));
+		doThrow(new IllegalStateException("redis fora")).when(redisQueueService).applyAll(any());
+
+		assertThatThrownBy(() -> redisOutboxRelay.drain("und_atd1")).isInstanceOf(IllegalStateException.class);
+
+		assertThat(redisOutboxRepository.count()).isEqualTo(1);
+	}
+
+	private static AtendimentosUnidade atendimento(long nrSeq, int nrSenha, int codPriorizacao) {
+		return AtendimentosUnidade.builder()
+				.nrSeqAtendimento(nrSeq)
+				.nrSenhaAtendimento(nrSenha)
+				.paciente(CadastroSus.builder().codCadastroSusPaciente(10L).build())
+				.tipoPriorizacao(TipoPriorizacao.builder().codTipoPriorizacao(codPriorizacao).build())
+				.estadoSenha(TipoEstadoSenha.builder().codTipoEstado(4).build())
+				.build();
+	}
+}
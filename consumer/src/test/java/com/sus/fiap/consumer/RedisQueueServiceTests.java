@@ -0,0 +1,88 @@
+package com.sus.fiap.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.sus.fiap.consumer.model.AtendimentoSnapshot;
+import com.sus.fiap.consumer.persistence.entity.AtendimentosUnidade;
+import com.sus.fiap.consumer.persistence.entity.CadastroSus;
+import com.sus.fiap.consumer.persistence.entity.TipoEstadoSenha;
+import com.sus.fiap.consumer.persistence.entity.TipoPriorizacao;
+import com.sus.fiap.consumer.service.RedisQueueService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class RedisQueueServiceTests {
+	private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+	private final RedisQueueService service = new RedisQueueService(redis, new ObjectMapper());
+	private final List<Long> inicios = new ArrayList<>();
+
+	@Test
+	void enqueue_shouldSendPriorityBandAndLeaveArrivalOrderToRedis() {
+		doAnswer(invocation -> {
+			List<String> keys = invocation.getArgument(1);
+			assertThat(keys).contains("queue:chegada:UPA1");
+			inicios.add(Long.valueOf((String) invocation.getArgument(2)));
+			return 1L;
+		}).when(redis).execute(ArgumentMatchers.<RedisScript<Object>>any(), anyList(), any(Object[].class));
+
+		long normal = inicioDaFaixa(1_000L, 998, 0);
+		long normalDepoisDaVolta = inicioDaFaixa(7L, 2, 0);
+		long idoso = inicioDaFaixa(1_004L, 3, 1);
+		long gestante = inicioDaFaixa(1_005L, 4, 2);
+		long emergencia = inicioDaFaixa(1_006L, 5, 3);
+
+		// a ordem de chegada sai do contador da unidade no Redis, não do nrSeq (alocado em blocos por instância)
+		assertThat(normalDepoisDaVolta).isEqualTo(normal);
+		assertThat(List.of(emergencia, gestante, idoso, normal)).isSorted().doesNotHaveDuplicates();
+		assertThat(gestante - emergencia).isEqualTo(1L << 50);
+		// inteiro exato no double do ZSET e acima de qualquer score do layout anterior (< 4_000_000)
+		long maior = normal + (1L << 50) - 1;
+		assertThat(maior).isLessThan(1L << 53);
+		assertThat((long) (double) maior).isEqualTo(maior);
+		assertThat(emergencia).isGreaterThan(4_000_000L);
+	}
+
+	@Test
+	void findSnapshot_shouldDecodeBothJsonAndHashReplies() throws Exception {
+		AtendimentoSnapshot esperado = new AtendimentoSnapshot("UPA1", 42L, 7, 10L, 2, 1);
+		String json = new ObjectMapper().writeValueAsString(esperado);
+		doAnswer(invocation -> {
+			List<String> keys = invocation.getArgument(1);
+			return switch (keys.getFirst()) {
+				case "atendimento:UPA1:42" -> List.of("json", json);
+				case "atendimento:UPA1:43" -> List.of("hash", "s", "8", "t", "3", "e", "1");
+				case "atendimento:UPA1:44" -> List.of("json", "{nao-e-json");
+				default -> List.of();
+			};
+		}).when(redis).execute(ArgumentMatchers.<RedisScript<Object>>any(), anyList(), any(Object[].class));
+
+		assertThat(service.findSnapshot("UPA1", 42L)).contains(esperado);
+		// paciente omitido no hash (campo nulo) e unidade/nrSeq vindos da chave
+		assertThat(service.findSnapshot("UPA1", 43L)).contains(new AtendimentoSnapshot("UPA1", 43L, 8, null, 3, 1));
+		assertThat(service.findSnapshot("UPA1", 44L)).isEqualTo(Optional.empty());
+		assertThat(service.findSnapshot("UPA1", 45L)).isEmpty();
+	}
+
+	private long inicioDaFaixa(long nrSeq, int nrSenha, int codPriorizacao) {
+		service.enqueue("UPA1", AtendimentosUnidade.builder()
+				.nrSeqAtendimento(nrSeq)
+				.nrSenhaAtendimento(nrSenha)
+				.paciente(CadastroSus.builder().codCadastroSusPaciente(10L).build())
+				.tipoPriorizacao(TipoPriorizacao.builder().codTipoPriorizacao(codPriorizacao).build())
+				.estadoSenha(TipoEstadoSenha.builder().codTipoEstado(1).build())
+				.build());
+		return inicios.getLast();
+	}
+}
@@ -0,0 +1,56 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.sus.fiap.consumer.persistence.repository.ColaboradorFuncao;
+import com.sus.fiap.consumer.persistence.repository.ColaboradorRepository;
+import com.sus.fiap.consumer.service.ReferenceDataCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReferenceDataCacheTests {
+	@Mock
+	private ColaboradorRepository colaboradorRepository;
+
+	@Test
+	void colaborador_shouldCachePerTenantAndReloadAfterInvalidation() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ReferenceDataCache cache = new ReferenceDataCache(colaboradorRepository, registry, 100, Duration.ofMinutes(10));
+		when(colaboradorRepository.findFuncaoById(1L)).thenReturn(Optional.of(new ColaboradorFuncao(1L, 1, "Médico")));
+
+		assertThat(cache.colaborador("und_atd1", 1L)).get().extracting(ColaboradorFuncao::isMedico).isEqualTo(true);
+		cache.colaborador("und_atd1", 1L);
+		// mesmo id em outro schema é outro colaborador
+		cache.colaborador("und_atd2", 1L);
+		verify(colaboradorRepository, times(2)).findFuncaoById(1L);
+
+		cache.invalidateTenant("und_atd1");
+		cache.colaborador("und_atd1", 1L);
+		cache.colaborador("und_atd2", 1L);
+		verify(colaboradorRepository, times(3)).findFuncaoById(1L);
+
+		assertThat(registry.get("cache.gets").tag("cache", "consumer.reference.colaborador").tag("result", "hit")
+				.functionCounter().count()).isEqualTo(2.0);
+	}
+
+	@Test
+	void colaborador_shouldNotCacheMissingColaborador() {
+		ReferenceDataCache cache = new ReferenceDataCache(colaboradorRepository, new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+		when(colaboradorRepository.findFuncaoById(2L)).thenReturn(Optional.empty());
+
+		assertThat(cache.colaborador("und_atd1", 2L)).isEmpty();
+		assertThat(cache.colaborador("und_atd1", 2L)).isEmpty();
+		verify(colaboradorRepository, times(2)).findFuncaoById(2L);
+	}
+}
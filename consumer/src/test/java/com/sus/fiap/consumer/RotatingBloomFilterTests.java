@@ -0,0 +1,98 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sus.fiap.consumer.service.RotatingBloomFilter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RotatingBloomFilterTests {
+	private final AtomicLong now = new AtomicLong(0L);
+
+	@Test
+	void shouldNeverReturnFalseNegativeWithinWindow() {
+		RotatingBloomFilter filter = new RotatingBloomFilter(Duration.ofDays(7), 7, 10_000, 0.01, now::get);
+		List<UUID> inseridos = new ArrayList<>();
+		for (int dia = 0; dia < 7; dia++) {
+			for (int i = 0; i < 1_000; i++) {
+				UUID id = UUID.randomUUID();
+				filter.put(id);
+				inseridos.add(id);
+			}
+			now.addAndGet(Duration.ofDays(1).toMillis() - 1);
+		}
+
+		assertThat(inseridos).allMatch(filter::mightContain);
+	}
+
+	@Test
+	void shouldKeepFalsePositiveRateNearConfiguredValue() {
+		RotatingBloomFilter filter = new RotatingBloomFilter(Duration.ofDays(7), 7, 70_000, 0.01, now::get);
+		for (int dia = 0; dia < 7; dia++) {
+			for (int i = 0; i < 10_000; i++) {
+				filter.put(UUID.randomUUID());
+			}
+			now.addAndGet(Duration.ofDays(1).toMillis());
+		}
+
+		int falsosPositivos = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (filter.mightContain(UUID.randomUUID())) {
+				falsosPositivos++;
+			}
+		}
+		assertThat(falsosPositivos / 100_000d).isLessThan(0.02);
+	}
+
+	@Test
+	void shouldForgetEntriesOlderThanWindow() {
+		RotatingBloomFilter filter = new RotatingBloomFilter(Duration.ofDays(7), 7, 10_000, 0.01, now::get);
+		UUID antigo = UUID.randomUUID();
+		filter.put(antigo);
+
+		now.addAndGet(Duration.ofDays(9).toMillis());
+
+		assertThat(filter.mightContain(antigo)).isFalse();
+	}
+
+	@Test
+	void backdatedPutShouldExpireWithTheSegmentOfItsInsertionTime() {
+		RotatingBloomFilter filter = new RotatingBloomFilter(Duration.ofDays(7), 7, 10_000, 0.01, now::get);
+		now.set(Duration.ofHours(156).toMillis()); // dia 6,5
+		UUID id = UUID.randomUUID();
+		filter.put(id, Duration.ofHours(36).toMillis()); // gravado no dia 1,5
+
+		now.set(Duration.ofHours(215).toMillis());
+		assertThat(filter.mightContain(id)).isTrue();
+
+		now.set(Duration.ofHours(217).toMillis());
+		assertThat(filter.mightContain(id)).isFalse();
+	}
+
+	@Test
+	void backdatedPutsShouldNotSaturateTheCurrentSegment() {
+		RotatingBloomFilter filter = new RotatingBloomFilter(Duration.ofDays(7), 7, 70_000, 0.01, now::get);
+		now.set(Duration.ofDays(7).toMillis());
+		List<UUID> inseridos = new ArrayList<>();
+		for (int i = 0; i < 70_000; i++) {
+			UUID id = UUID.randomUUID();
+			filter.put(id, now.get() - (i % 7) * Duration.ofDays(1).toMillis());
+			inseridos.add(id);
+		}
+
+		assertThat(inseridos).allMatch(filter::mightContain);
+		int falsosPositivos = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (filter.mightContain(UUID.randomUUID())) {
+				falsosPositivos++;
+			}
+		}
+		assertThat(falsosPositivos / 100_000d).isLessThan(0.02);
+	}
+}
@@ -0,0 +1,75 @@
+package com.sus.fiap.consumer;
+
+import java.time.Duration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import com.sus.fiap.consumer.service.QueueDepthTracker;
+import com.sus.fiap.consumer.service.RedisQueueService;
+import com.sus.fiap.consumer.service.TempoAtendimentoRedisService;
+import com.sus.fiap.consumer.service.UnidadeSchemaResolver;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TempoAtendimentoRedisServiceTests {
+	@SuppressWarnings("unchecked")
+	private final ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+	private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+	private final QueueDepthTracker queueDepthTracker = mock(QueueDepthTracker.class);
+	private final RedisQueueService redisQueueService = mock(RedisQueueService.class);
+	private final UnidadeSchemaResolver unidadeSchemaResolver = mock(UnidadeSchemaResolver.class);
+
+	@Test
+	void updateTempoMedioPorTipo_shouldPublishOnlyWhenValueChanges() {
+		when(redis.opsForValue()).thenReturn(valueOps);
+		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
+		when(queueDepthTracker.snapshot("und_atd1")).thenReturn(
+				new QueueDepthTracker.QueueDepth(3, 0, 0, 0, 1),
+				new QueueDepthTracker.QueueDepth(3, 0, 0, 0, 1),
+				new QueueDepthTracker.QueueDepth(3, 0, 0, 0, 1),
+				new QueueDepthTracker.QueueDepth(4, 0, 0, 0, 1));
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(1L);
+		TempoAtendimentoRedisService service = service();
+
+		for (int i = 0; i < 4; i++) {
+			service.updateTempoMedioPorTipo("UPA1");
+		}
+
+		// a chave é regravada a cada recálculo (TTL e calculadoEm); o canal só recebe os dois valores distintos
+		verify(valueOps, times(4)).set(eq("metrics:tempoAtendimentoMedio:UPA1"), anyString(), eq(Duration.ofMinutes(2)));
+		verify(redis, times(2)).convertAndSend(eq(TempoAtendimentoRedisService.CHANNEL), anyString());
+		verify(redis, times(1)).convertAndSend(eq(TempoAtendimentoRedisService.CHANNEL), contains("\"senhasAtivas\":4"));
+	}
+
+	@Test
+	void updateTempoMedioPorTipo_shouldCountDoctorsFromThePontoSetLikeThePositionEndpoints() {
+		when(redis.opsForValue()).thenReturn(valueOps);
+		when(unidadeSchemaResolver.resolveSchemaFromUnidade("UPA1")).thenReturn("und_atd1");
+		// duas linhas de ponto abertas no banco para o mesmo médico; o conjunto do Redis tem um colaborador
+		when(queueDepthTracker.snapshot("und_atd1")).thenReturn(new QueueDepthTracker.QueueDepth(3, 0, 0, 0, 2));
+		when(redisQueueService.medicosEmAtendimento("und_atd1")).thenReturn(1L, -1L);
+		TempoAtendimentoRedisService service = service();
+
+		service.updateTempoMedioPorTipo("UPA1");
+		verify(valueOps).set(anyString(), contains("\"medicosEmAtendimento\":1"), any(Duration.class));
+
+		// conjunto ainda não sincronizado: contador do tracker
+		service.updateTempoMedioPorTipo("UPA1");
+		verify(valueOps).set(anyString(), contains("\"medicosEmAtendimento\":2"), any(Duration.class));
+	}
+
+	private TempoAtendimentoRedisService service() {
+		return new TempoAtendimentoRedisService(redis, new ObjectMapper(),
+				queueDepthTracker, redisQueueService, unidadeSchemaResolver, Duration.ofMinutes(2));
+	}
+}
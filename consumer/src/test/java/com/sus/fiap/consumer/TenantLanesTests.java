@@ -0,0 +1,70 @@
+package com.sus.fiap.consumer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sus.fiap.consumer.kafka.TenantLanes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantLanesTests {
+	private final TenantLanes lanes = new TenantLanes(4, 8);
+
+	@AfterEach
+	void tearDown() {
+		lanes.close();
+	}
+
+	@Test
+	void slowTenant_shouldNotBlockOtherTenantsAndKeepOrderWithinTenant() throws Exception {
+		CountDownLatch liberaLenta = new CountDownLatch(1);
+		CountDownLatch rapidaConcluida = new CountDownLatch(3);
+		List<String> ordem = new CopyOnWriteArrayList<>();
+
+		assertThat(lanes.trySubmit("und_atd1", () -> await(liberaLenta))).isTrue();
+		for (int i = 0; i < 3; i++) {
+			int n = i;
+			assertThat(lanes.trySubmit("und_atd2", () -> {
+				ordem.add("und_atd2-" + n);
+				rapidaConcluida.countDown();
+			})).isTrue();
+		}
+
+		assertThat(rapidaConcluida.await(2, TimeUnit.SECONDS)).isTrue();
+		assertThat(ordem).containsExactly("und_atd2-0", "und_atd2-1", "und_atd2-2");
+		liberaLenta.countDown();
+	}
+
+	@Test
+	void fullLane_shouldRejectAndNotifyWhenItDrains() throws Exception {
+		CountDownLatch liberaLenta = new CountDownLatch(1);
+		CountDownLatch comEspaco = new CountDownLatch(1);
+
+		lanes.trySubmit("und_atd1", () -> await(liberaLenta));
+		// a primeira tarefa pode já ter saído da fila; enche até recusar
+		int aceitas = 0;
+		while (lanes.trySubmit("und_atd1", () -> { })) {
+			aceitas++;
+		}
+		assertThat(aceitas).isBetween(3, 4);
+
+		lanes.whenHasRoom("und_atd1", comEspaco::countDown);
+		assertThat(comEspaco.getCount()).isEqualTo(1);
+
+		liberaLenta.countDown();
+		assertThat(comEspaco.await(2, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}